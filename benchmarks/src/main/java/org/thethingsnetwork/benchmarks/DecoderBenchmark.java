@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.thethingsnetwork.data.common.decoding.Decoder;
+import org.thethingsnetwork.data.common.decoding.LazyDecoder;
+import org.thethingsnetwork.data.common.decoding.MapperDecoder;
+import org.thethingsnetwork.data.common.decoding.PooledDecoder;
+import org.thethingsnetwork.data.common.decoding.StreamingDecoder;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+
+/**
+ * Compares the message decoders against the reflective binding of AbstractClient.MAPPER
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+
+    @Param({"mapper", "streaming", "lazy", "pooled"})
+    public String decoder;
+
+    @Param({"uplink.json", "uplink-8gw.json"})
+    public String fixture;
+
+    private Decoder instance;
+    private byte[] uplink;
+    private byte[] activation;
+
+    @Setup
+    public void setup() throws IOException {
+        switch (decoder) {
+            case "mapper":
+                instance = new MapperDecoder();
+                break;
+            case "streaming":
+                instance = new StreamingDecoder();
+                break;
+            case "lazy":
+                instance = new LazyDecoder();
+                break;
+            case "pooled":
+                instance = new PooledDecoder();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown decoder " + decoder);
+        }
+        uplink = Fixtures.read(fixture);
+        activation = Fixtures.read("activation.json");
+    }
+
+    /**
+     * Decode an uplink and read all of it
+     */
+    @Benchmark
+    public void uplink(Blackhole _hole) throws IOException {
+        UplinkMessage message = instance.decodeUplink(uplink);
+        _hole.consume(message.getCounter());
+        _hole.consume(message.getPayloadFields());
+        _hole.consume(message.getMetadata());
+        instance.release(message);
+    }
+
+    /**
+     * Decode an uplink and only read its headers, as most handlers do
+     */
+    @Benchmark
+    public void uplinkHeaders(Blackhole _hole) throws IOException {
+        UplinkMessage message = instance.decodeUplink(uplink);
+        _hole.consume(message.getDevId());
+        _hole.consume(message.getCounter());
+        _hole.consume(message.getPayloadLength());
+        instance.release(message);
+    }
+
+    @Benchmark
+    public Object activation() throws IOException {
+        return instance.decodeActivation(activation);
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.thethingsnetwork.data.common.dispatch.BoundedDispatcher;
+import org.thethingsnetwork.data.common.dispatch.CachedDispatcher;
+import org.thethingsnetwork.data.common.dispatch.Dispatcher;
+import org.thethingsnetwork.data.common.dispatch.OverflowPolicy;
+import org.thethingsnetwork.data.common.dispatch.StripedDispatcher;
+import org.thethingsnetwork.data.common.metrics.ClientMetrics;
+import org.thethingsnetwork.data.common.metrics.MetricsRegistry;
+
+/**
+ * Handler dispatch: a burst of uplinks from many devices, each running a small handler, from the receiving thread to the last handler
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private static final int BURST = 1000;
+    private static final int DEVICES = 100;
+
+    @Param({"cached", "striped", "bounded"})
+    public String dispatcher;
+
+    /**
+     * Whether the handler calls are timed, like the clients do
+     */
+    @Param({"false", "true"})
+    public boolean timed;
+
+    private Dispatcher instance;
+    private ClientMetrics metrics;
+    private final String[] devIds = new String[DEVICES];
+
+    @Setup
+    public void setup() {
+        switch (dispatcher) {
+            case "cached":
+                instance = new CachedDispatcher();
+                break;
+            case "striped":
+                instance = new StripedDispatcher();
+                break;
+            case "bounded":
+                instance = new BoundedDispatcher(BURST, OverflowPolicy.BLOCK);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown dispatcher " + dispatcher);
+        }
+        metrics = new ClientMetrics(new MetricsRegistry(), instance::getQueueDepth);
+        for (int i = 0; i < DEVICES; i++) {
+            devIds[i] = "dev-" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        instance.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BURST);
+        for (int i = 0; i < BURST; i++) {
+            Runnable task;
+            if (timed) {
+                long received = System.nanoTime();
+                task = () -> {
+                    long start = metrics.started(received);
+                    try {
+                        Blackhole.consumeCPU(100);
+                    } finally {
+                        metrics.handled(start);
+                    }
+                    done.countDown();
+                };
+            } else {
+                task = () -> {
+                    Blackhole.consumeCPU(100);
+                    done.countDown();
+                };
+            }
+            instance.dispatch(devIds[i % DEVICES], task);
+        }
+        done.await();
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.encoding.DownlinkEncoder;
+import org.thethingsnetwork.data.common.messages.DownlinkMessage;
+
+/**
+ * Building and serializing downlinks, by AbstractClient.MAPPER and by the DownlinkEncoder used by the clients
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DownlinkBenchmark {
+
+    @Param({"bytes", "buffer", "fields"})
+    public String payload;
+
+    /**
+     * Size of the raw payloads
+     */
+    @Param({"12", "51"})
+    public int size;
+
+    private final DownlinkEncoder encoder = new DownlinkEncoder("my-app");
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private Map<String, Object> fields;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        buffer = ByteBuffer.allocate(size);
+        buffer.put(bytes).flip();
+        fields = new LinkedHashMap<>();
+        fields.put("led", true);
+        fields.put("interval", 600);
+        fields.put("mode", "eco");
+    }
+
+    private DownlinkMessage message() {
+        switch (payload) {
+            case "bytes":
+                return new DownlinkMessage(1, bytes);
+            case "buffer":
+                return new DownlinkMessage(1, buffer);
+            default:
+                return new DownlinkMessage(1, (Object) fields);
+        }
+    }
+
+    /**
+     * What the clients used to do for every downlink
+     */
+    @Benchmark
+    public byte[] mapper() throws IOException {
+        return AbstractClient.MAPPER.writeValueAsBytes(message());
+    }
+
+    @Benchmark
+    public byte[] encoder() throws IOException {
+        return encoder.encode(message());
+    }
+
+    @Benchmark
+    public String topicConcat() {
+        return "my-app" + "/devices/" + payload + "/down";
+    }
+
+    @Benchmark
+    public String topicCached() {
+        return encoder.topic(payload);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.Metadata;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+
+/**
+ * Reflective deserialization of uplinks and their metadata by AbstractClient.MAPPER, the baseline of the decoders
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+    @Param({"uplink.json", "uplink-8gw.json"})
+    public String fixture;
+
+    private final ObjectReader uplinkReader = AbstractClient.MAPPER.readerFor(UplinkMessage.class);
+    private final ObjectReader metadataReader = AbstractClient.MAPPER.readerFor(Metadata.class);
+    private byte[] uplink;
+    private byte[] metadata;
+
+    @Setup
+    public void setup() throws IOException {
+        uplink = Fixtures.read(fixture);
+        metadata = AbstractClient.MAPPER.writeValueAsBytes(AbstractClient.MAPPER.readTree(uplink).get("metadata"));
+    }
+
+    /**
+     * What the clients used to do for every uplink
+     */
+    @Benchmark
+    public UplinkMessage uplinkMapper() throws IOException {
+        return AbstractClient.MAPPER.readValue(uplink, UplinkMessage.class);
+    }
+
+    @Benchmark
+    public UplinkMessage uplinkReader() throws IOException {
+        return uplinkReader.readValue(uplink);
+    }
+
+    @Benchmark
+    public Metadata metadataMapper() throws IOException {
+        return AbstractClient.MAPPER.readValue(metadata, Metadata.class);
+    }
+
+    @Benchmark
+    public Metadata metadataReader() throws IOException {
+        return metadataReader.readValue(metadata);
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thethingsnetwork.data.common.messages.RawMessage;
+
+/**
+ * Conversions of the field values received by field handlers. Every call wraps fresh bytes, as every message does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RawMessageBenchmark {
+
+    private final byte[] integer = "1234567".getBytes(StandardCharsets.UTF_8);
+    private final byte[] decimal = "1009.625".getBytes(StandardCharsets.UTF_8);
+    private final byte[] bool = "true".getBytes(StandardCharsets.UTF_8);
+    private final byte[] object = "{\"latitude\":52.37403,\"longitude\":4.88969,\"altitude\":2}".getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public String asString() {
+        return RawMessage.wrap(decimal).asString();
+    }
+
+    @Benchmark
+    public int asInt() {
+        return RawMessage.wrap(integer).asInt();
+    }
+
+    /**
+     * What asInt used to do
+     */
+    @Benchmark
+    public int asIntBaseline() {
+        return Integer.parseInt(new String(integer, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public double asDouble() {
+        return RawMessage.wrap(decimal).asDouble();
+    }
+
+    /**
+     * What asDouble used to do
+     */
+    @Benchmark
+    public double asDoubleBaseline() {
+        return Double.parseDouble(new String(decimal, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public boolean asBoolean() {
+        return RawMessage.wrap(bool).asBoolean();
+    }
+
+    @Benchmark
+    public Location asClass() throws IOException {
+        return RawMessage.wrap(object).as(Location.class);
+    }
+
+    public static class Location {
+
+        private double latitude;
+        private double longitude;
+        private int altitude;
+
+    }
+
+}
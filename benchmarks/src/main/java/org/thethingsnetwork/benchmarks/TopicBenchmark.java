@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thethingsnetwork.data.common.Router;
+import org.thethingsnetwork.data.common.events.AbstractEventHandler;
+import org.thethingsnetwork.data.common.events.ActivationHandler;
+import org.thethingsnetwork.data.common.events.EventHandler;
+import org.thethingsnetwork.data.common.events.UplinkHandler;
+import org.thethingsnetwork.data.common.messages.ActivationMessage;
+import org.thethingsnetwork.data.common.messages.DataMessage;
+import org.thethingsnetwork.data.common.messages.RawMessage;
+
+/**
+ * Topic parsing and handler lookup, as done by the clients for every received message
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicBenchmark {
+
+    @Param({"my-app/devices/dev-17/up", "my-app/devices/dev-17/up/temperature", "my-app/devices/dev-17/events/activations", "my-app/devices/dev-17/events/down/scheduled"})
+    public String topic;
+
+    /**
+     * Number of devices having their own handlers, on top of the wildcard ones
+     */
+    @Param({"100"})
+    public int devices;
+
+    private final Router router = new Router();
+
+    @Setup
+    public void setup() {
+        router.add(uplink(null, null));
+        router.add(uplink(null, "temperature"));
+        router.add(activation(null));
+        router.add(event(null, null));
+        for (int i = 0; i < devices; i++) {
+            router.add(uplink("dev-" + i, null));
+            router.add(event("dev-" + i, "down/scheduled"));
+        }
+    }
+
+    @Benchmark
+    public String[] split() {
+        return topic.split("\\/");
+    }
+
+    /**
+     * Split the topic and find its handlers, like the MQTT client does
+     */
+    @Benchmark
+    public List<? extends EventHandler> route() {
+        String[] tokens = topic.split("\\/");
+        if ("up".equals(tokens[3])) {
+            return router.getUplinkHandlers(tokens[2], tokens.length > 4 ? concat(4, tokens) : null);
+        }
+        if ("activations".equals(tokens[4])) {
+            return router.getActivationHandlers(tokens[2]);
+        }
+        return router.getEventHandlers(tokens[2], concat(4, tokens));
+    }
+
+    private static String concat(int _ignore, String[] _tokens) {
+        if (_tokens.length == _ignore + 1) {
+            return _tokens[_ignore];
+        }
+        StringBuilder sb = new StringBuilder(_tokens[_ignore]);
+        for (int i = _ignore + 1; i < _tokens.length; i++) {
+            sb.append('/').append(_tokens[i]);
+        }
+        return sb.toString();
+    }
+
+    private static UplinkHandler uplink(String _devId, String _field) {
+        return new UplinkHandler() {
+            @Override
+            public void handle(String _devId, DataMessage _data) {
+            }
+
+            @Override
+            public String getDevId() {
+                return _devId;
+            }
+
+            @Override
+            public String getField() {
+                return _field;
+            }
+        };
+    }
+
+    private static ActivationHandler activation(String _devId) {
+        return new ActivationHandler() {
+            @Override
+            public void handle(String _devId, ActivationMessage _data) {
+            }
+
+            @Override
+            public String getDevId() {
+                return _devId;
+            }
+        };
+    }
+
+    private static AbstractEventHandler event(String _devId, String _event) {
+        return new AbstractEventHandler() {
+            @Override
+            public void handle(String _devId, String _event, RawMessage _data) {
+            }
+
+            @Override
+            public String getDevId() {
+                return _devId;
+            }
+
+            @Override
+            public String getEvent() {
+                return _event;
+            }
+        };
+    }
+
+}
@@ -25,37 +25,60 @@ package org.thethingsnetwork.data.amqp;
 
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.DefaultConsumer;
 import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import org.thethingsnetwork.data.common.AbstractClient;
-import static org.thethingsnetwork.data.common.AbstractClient.MAPPER;
+import org.thethingsnetwork.data.common.Lazy;
+import org.thethingsnetwork.data.common.Router;
 import org.thethingsnetwork.data.common.Subscribable;
 import org.thethingsnetwork.data.common.TriConsumer;
+import org.thethingsnetwork.data.common.decoding.Decoder;
+import org.thethingsnetwork.data.common.decoding.LazyDecoder;
+import org.thethingsnetwork.data.common.dedup.DuplicateFilter;
+import org.thethingsnetwork.data.common.dispatch.CachedDispatcher;
+import org.thethingsnetwork.data.common.dispatch.Dispatcher;
+import org.thethingsnetwork.data.common.dispatch.ErrorChannel;
+import org.thethingsnetwork.data.common.encoding.DownlinkEncoder;
 import org.thethingsnetwork.data.common.events.AbstractEventHandler;
 import org.thethingsnetwork.data.common.events.ActivationHandler;
+import org.thethingsnetwork.data.common.events.BatchUplinkHandler;
 import org.thethingsnetwork.data.common.events.ConnectHandler;
 import org.thethingsnetwork.data.common.events.ErrorHandler;
 import org.thethingsnetwork.data.common.events.EventHandler;
 import org.thethingsnetwork.data.common.events.UplinkHandler;
+import org.thethingsnetwork.data.common.flow.ActivationPublisher;
+import org.thethingsnetwork.data.common.journal.UplinkJournal;
+import org.thethingsnetwork.data.common.flow.DevicePublisher;
+import org.thethingsnetwork.data.common.flow.MessagePublisher;
+import org.thethingsnetwork.data.common.flow.UplinkPublisher;
 import org.thethingsnetwork.data.common.messages.ActivationMessage;
 import org.thethingsnetwork.data.common.messages.DataMessage;
 import org.thethingsnetwork.data.common.messages.DownlinkMessage;
 import org.thethingsnetwork.data.common.messages.RawMessage;
 import org.thethingsnetwork.data.common.messages.UplinkMessage;
+import org.thethingsnetwork.data.common.metrics.ClientMetrics;
+import org.thethingsnetwork.data.common.metrics.MetricsRegistry;
 
 /**
  *
@@ -66,21 +89,34 @@ public class Client extends AbstractClient {
     /**
      * Connection settings
      */
-    private final String appId;
     private final ConnectionFactory factory;
     private final String exchange;
 
     /**
      * Event settings
      */
-    private final ExecutorService executor = Executors.newCachedThreadPool();
-    private final Map<Class, List<EventHandler>> handlers = new HashMap<>();
+    private Dispatcher dispatcher = new CachedDispatcher();
+    private Decoder decoder = new LazyDecoder();
+    private DuplicateFilter duplicates;
+    private UplinkJournal journal;
+    private final ClientMetrics metrics = new ClientMetrics(new MetricsRegistry(), () -> dispatcher.getQueueDepth());
+    private final RejectedExecutionException dropError = new RejectedExecutionException("Dispatch queue full, a handler call was dropped");
+    private final Runnable reportDropped = this::reportDropped;
+    private final DownlinkEncoder encoder;
+    private final Router router = new Router();
+    private ErrorChannel errors = new ErrorChannel(router.getErrorHandlers());
+    private int maxInflight = 1024;
 
     /**
      * Runtime vars
      */
     private Connection connection;
     private Channel channel;
+    private volatile Channel confirming;
+    private Semaphore inflight;
+    private ExecutorService drains;
+    private final Object publishing = new Object();
+    private final ConcurrentNavigableMap<Long, CompletableFuture<Void>> sending = new ConcurrentSkipListMap<>();
 
     /**
      * Create a new Client from a custom broker
@@ -92,7 +128,7 @@ public class Client extends AbstractClient {
      * @throws java.net.URISyntaxException if the provided broker address is malformed
      */
     public Client(String _broker, String _appId, String _appAccessKey, String _exchange) throws URISyntaxException {
-        appId = _appId;
+        encoder = new DownlinkEncoder(_appId);
         factory = new ConnectionFactory();
         factory.setHost(_broker);
         factory.setUsername(_appId);
@@ -124,6 +160,115 @@ public class Client extends AbstractClient {
         return factory;
     }
 
+    /**
+     * Change the dispatcher running the event handlers. Defaults to a cached thread pool.
+     * Use a StripedDispatcher to keep the messages of each device in order, and a bounded dispatcher to limit memory under load.
+     *
+     * @param _dispatcher A custom dispatcher
+     * @return the Client instance
+     */
+    public Client setDispatcher(Dispatcher _dispatcher) {
+        if (connection != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        if (_dispatcher == null) {
+            throw new NullPointerException();
+        }
+        dispatcher = _dispatcher;
+        return this;
+    }
+
+    /**
+     * Change the decoder turning received json into messages. Defaults to a LazyDecoder.
+     *
+     * @param _decoder A custom decoder
+     * @return the Client instance
+     */
+    public Client setDecoder(Decoder _decoder) {
+        if (connection != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        if (_decoder == null) {
+            throw new NullPointerException();
+        }
+        decoder = _decoder;
+        return this;
+    }
+
+    /**
+     * Drop the uplinks already received, identified by device and frame counter. Disabled by default.
+     * Uplinks of field topics carry no counter and are never dropped.
+     *
+     * @param _filter The filter remembering the received uplinks, or null to disable
+     * @return the Client instance
+     */
+    public Client setDuplicateFilter(DuplicateFilter _filter) {
+        if (connection != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        duplicates = _filter;
+        return this;
+    }
+
+    /**
+     * Append every uplink to a journal as received, before dispatching it. Disabled by default.
+     * The failures of its background commits are reported to the error handlers.
+     *
+     * @param _journal The journal, or null to disable
+     * @return the Client instance
+     */
+    public Client setJournal(UplinkJournal _journal) {
+        if (connection != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        if (_journal != null) {
+            _journal.setErrorHandler(this::notifyError);
+        }
+        journal = _journal;
+        return this;
+    }
+
+    /**
+     * Change the number of downlinks sendAsync can have in flight. Defaults to 1024.
+     *
+     * @param _maxInflight The size of the in-flight window
+     * @return the Client instance
+     */
+    public Client setMaxInflight(int _maxInflight) {
+        if (connection != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        if (_maxInflight < 1) {
+            throw new IllegalArgumentException("The in-flight window must be positive");
+        }
+        maxInflight = _maxInflight;
+        return this;
+    }
+
+    /**
+     * Change how errors are coalesced. By default, identical errors are delivered at most once per second, along with their count.
+     *
+     * @param _window The coalescing window, in ms
+     * @param _capacity The number of errors waiting for delivery
+     * @return the Client instance
+     */
+    public Client setErrorWindow(long _window, int _capacity) {
+        if (connection != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        errors = new ErrorChannel(router.getErrorHandlers(), _window, _capacity);
+        return this;
+    }
+
+    /**
+     * Get the metrics of this client, to export them or register them with JMX
+     *
+     * @return the metrics registry
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics.getRegistry();
+    }
+
     @Override
     public Client start() throws Exception {
         if (connection != null) {
@@ -131,110 +276,152 @@ public class Client extends AbstractClient {
         }
         connection = factory.newConnection();
         channel = connection.createChannel();
+        inflight = new Semaphore(maxInflight);
 
         String queue = channel.queueDeclare().getQueue();
 
-        channel.basicConsume(queue, new DefaultConsumer(channel) {
+        /**
+         * Publishers block this consumer while a subscriber window is full: deliveries are then acked once routed, and the broker stops at the prefetch
+         */
+        int prefetch = 0;
+        for (MessagePublisher<?> publisher : router.getPublishers()) {
+            prefetch = Math.max(prefetch, publisher.getWindow());
+        }
+        boolean flowControl = prefetch > 0;
+        if (flowControl) {
+            channel.basicQos(prefetch);
+        }
+
+        channel.basicConsume(queue, !flowControl, new DefaultConsumer(channel) {
             @Override
             public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
+                long received = System.nanoTime();
+                try {
+                    route(envelope, body, received);
+                } finally {
+                    metrics.received(received);
+                    if (flowControl) {
+                        getChannel().basicAck(envelope.getDeliveryTag(), false);
+                    }
+                }
+            }
+
+            private void route(Envelope envelope, byte[] body, long received) {
                 String[] tokens = envelope.getRoutingKey().split("\\.");
+                metrics.parsed(received);
                 if (tokens.length < 4) {
+                    metrics.ignored();
                     return;
                 }
                 switch (tokens[3]) {
                     case "up":
-                        if (handlers.containsKey(UplinkHandler.class)) {
-                            String field;
-                            if (tokens.length > 4) {
-                                field = concat(4, tokens);
-                            } else {
-                                field = null;
+                        metrics.uplink();
+                        journal(envelope.getRoutingKey(), body);
+                        String field;
+                        if (tokens.length > 4) {
+                            field = concat(4, tokens);
+                        } else {
+                            field = null;
+                        }
+                        List<UplinkHandler> uplinkHandlers = router.getUplinkHandlers(tokens[2], field);
+                        if (uplinkHandlers.isEmpty()) {
+                            break;
+                        }
+                        if (field == null && isDuplicate(tokens[2], body)) {
+                            metrics.duplicate();
+                            break;
+                        }
+                        /**
+                         * Decoded at most once, by the first handler to run, then shared
+                         */
+                        Lazy<DataMessage> uplink;
+                        if (field != null) {
+                            uplink = new Lazy<>(() -> RawMessage.wrap(body));
+                        } else {
+                            uplink = new Lazy<>(() -> {
+                                long decoding = System.nanoTime();
+                                UplinkMessage decoded = decoder.decodeUplink(body);
+                                metrics.decoded(decoding);
+                                return decoded;
+                            });
+                        }
+                        AtomicInteger remaining = new AtomicInteger(uplinkHandlers.size());
+                        Runnable done = () -> {
+                            if (remaining.decrementAndGet() == 0) {
+                                release(uplink);
                             }
-                            handlers.get(UplinkHandler.class).stream()
-                                    .forEach((handler) -> {
-                                        executor.submit(() -> {
-                                            try {
-                                                UplinkHandler uh = (UplinkHandler) handler;
-
-                                                if (uh.matches(tokens[2], field)) {
-                                                    if (uh.isField()) {
-                                                        uh.handle(tokens[2], new RawMessage() {
-                                                            String str = new String(body);
-
-                                                            @Override
-                                                            public String asString() {
-                                                                return str;
-                                                            }
-                                                        });
-                                                    } else {
-                                                        uh.handle(tokens[2], MAPPER.readValue(body, UplinkMessage.class));
-                                                    }
-                                                }
-                                            } catch (Exception ex) {
-                                                if (handlers.containsKey(ErrorHandler.class)) {
-                                                    handlers.get(ErrorHandler.class).stream().forEach((org.thethingsnetwork.data.common.events.EventHandler handler1) -> {
-                                                        executor.submit(() -> {
-                                                            ((ErrorHandler) handler1).safelyHandle(ex);
-                                                        });
-                                                    });
-                                                }
-                                            }
-                                        });
-                                    });
+                        };
+                        for (UplinkHandler handler : uplinkHandlers) {
+                            if (handler instanceof BatchUplinkHandler) {
+                                ((BatchUplinkHandler) handler).add(tokens[2], uplink, done);
+                                continue;
+                            }
+                            if (handler instanceof UplinkPublisher) {
+                                ((UplinkPublisher) handler).add(tokens[2], uplink, done);
+                                continue;
+                            }
+                            dispatch(tokens[2], () -> {
+                                long start = metrics.started(received);
+                                try {
+                                    handler.handle(tokens[2], uplink.get());
+                                } catch (Exception ex) {
+                                    notifyError(ex);
+                                } finally {
+                                    metrics.handled(start);
+                                    done.run();
+                                }
+                            }, done);
                         }
                         break;
                     case "events":
                         if (tokens.length > 5) {
                             switch (tokens[4]) {
                                 case "activations":
-                                    if (handlers.containsKey(ActivationHandler.class)) {
-                                        handlers.get(ActivationHandler.class).stream().forEach((handler) -> {
-                                            executor.submit(() -> {
-                                                try {
-                                                    ActivationHandler ah = (ActivationHandler) handler;
-                                                    if (ah.matches(tokens[2])) {
-                                                        ah.handle(tokens[2], MAPPER.readValue(body, ActivationMessage.class));
-                                                    }
-                                                } catch (Exception ex) {
-                                                    if (handlers.containsKey(ErrorHandler.class)) {
-                                                        handlers.get(ErrorHandler.class).stream().forEach((org.thethingsnetwork.data.common.events.EventHandler handler1) -> {
-                                                            executor.submit(() -> {
-                                                                ((ErrorHandler) handler1).safelyHandle(ex);
-                                                            });
-                                                        });
-                                                    }
-                                                }
-                                            });
+                                    metrics.activation();
+                                    if (duplicates != null) {
+                                        duplicates.reset(tokens[2]);
+                                    }
+                                    Lazy<ActivationMessage> activation = new Lazy<>(() -> {
+                                        long decoding = System.nanoTime();
+                                        ActivationMessage decoded = decoder.decodeActivation(body);
+                                        metrics.decoded(decoding);
+                                        return decoded;
+                                    });
+                                    for (ActivationHandler handler : router.getActivationHandlers(tokens[2])) {
+                                        if (handler instanceof ActivationPublisher) {
+                                            ((ActivationPublisher) handler).add(tokens[2], activation);
+                                            continue;
+                                        }
+                                        dispatch(tokens[2], () -> {
+                                            long start = metrics.started(received);
+                                            try {
+                                                handler.handle(tokens[2], activation.get());
+                                            } catch (Exception ex) {
+                                                notifyError(ex);
+                                            } finally {
+                                                metrics.handled(start);
+                                            }
                                         });
                                     }
                                     break;
                                 default:
-                                    if (handlers.containsKey(AbstractEventHandler.class)) {
-                                        handlers.get(AbstractEventHandler.class).stream().forEach((handler) -> {
-                                            executor.submit(() -> {
-                                                try {
-                                                    AbstractEventHandler aeh = (AbstractEventHandler) handler;
-                                                    String event = concat(4, tokens);
-                                                    if (aeh.matches(tokens[2], event)) {
-                                                        aeh.handle(tokens[2], event, new RawMessage() {
-                                                            String str = new String(body);
-
-                                                            @Override
-                                                            public String asString() {
-                                                                return str;
-                                                            }
-                                                        });
-                                                    }
-                                                } catch (Exception ex) {
-                                                    if (handlers.containsKey(ErrorHandler.class)) {
-                                                        handlers.get(ErrorHandler.class).stream().forEach((org.thethingsnetwork.data.common.events.EventHandler handler1) -> {
-                                                            executor.submit(() -> {
-                                                                ((ErrorHandler) handler1).safelyHandle(ex);
-                                                            });
-                                                        });
-                                                    }
-                                                }
-                                            });
+                                    metrics.event();
+                                    String event = concat(4, tokens);
+                                    RawMessage raw = RawMessage.wrap(body);
+                                    for (AbstractEventHandler handler : router.getEventHandlers(tokens[2], event)) {
+                                        if (handler instanceof DevicePublisher) {
+                                            handler.handle(tokens[2], event, raw);
+                                            continue;
+                                        }
+                                        dispatch(tokens[2], () -> {
+                                            long start = metrics.started(received);
+                                            try {
+                                                handler.handle(tokens[2], event, raw);
+                                            } catch (Exception ex) {
+                                                notifyError(ex);
+                                            } finally {
+                                                metrics.handled(start);
+                                            }
                                         });
                                     }
                             }
@@ -244,52 +431,60 @@ public class Client extends AbstractClient {
             }
         });
 
-        for (List<EventHandler> ehl : handlers.values()) {
-            for (EventHandler eh : ehl) {
-                eh.subscribe(new Subscribable() {
+        /**
+         * Publishers drain on their own threads: a drain queued behind, or dropped by, the dispatcher would keep the receiving thread blocked
+         */
+        if (!router.getPublishers().isEmpty()) {
+            drains = Executors.newCachedThreadPool((Runnable _task) -> {
+                Thread thread = new Thread(_task, "ttn-publisher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        for (MessagePublisher<?> publisher : router.getPublishers()) {
+            publisher.start(drains, this::notifyError);
+        }
 
-                    private static final String WILDCARD_WORD = "*";
-                    private static final String WILDCARD_PATH = "#";
+        for (BatchUplinkHandler handler : router.getBatchHandlers()) {
+            handler.start((Runnable _task, Runnable _release) -> dispatch(handler.getDevId(), metrics.timed(_task), _release), this::notifyError);
+        }
 
-                    @Override
-                    public void subscribe(String[] _key) throws Exception {
-                        StringJoiner sj = new StringJoiner(".");
-                        for (String key : _key) {
-                            sj.add(key);
-                        }
-                        channel.queueBind(queue, exchange, sj.toString());
-                    }
+        for (EventHandler eh : router.getHandlers()) {
+            eh.subscribe(new Subscribable() {
 
-                    @Override
-                    public String getWordWildcard() {
-                        return WILDCARD_WORD;
-                    }
+                private static final String WILDCARD_WORD = "*";
+                private static final String WILDCARD_PATH = "#";
 
-                    @Override
-                    public String getPathWildcard() {
-                        return WILDCARD_PATH;
+                @Override
+                public void subscribe(String[] _key) throws Exception {
+                    StringJoiner sj = new StringJoiner(".");
+                    for (String key : _key) {
+                        sj.add(key);
                     }
-                });
-            }
-        }
+                    channel.queueBind(queue, exchange, sj.toString());
+                }
 
-        if (handlers.containsKey(ConnectHandler.class)) {
-            handlers.get(ConnectHandler.class).stream().forEach((handler) -> {
-                executor.submit(() -> {
-                    try {
-                        ((ConnectHandler) handler).handle(() -> channel);
-                    } catch (Exception ex) {
-                        if (handlers.containsKey(ErrorHandler.class)) {
-                            handlers.get(ErrorHandler.class).stream().forEach((org.thethingsnetwork.data.common.events.EventHandler handler1) -> {
-                                executor.submit(() -> {
-                                    ((ErrorHandler) handler1).safelyHandle(ex);
-                                });
-                            });
-                        }
-                    }
-                });
+                @Override
+                public String getWordWildcard() {
+                    return WILDCARD_WORD;
+                }
+
+                @Override
+                public String getPathWildcard() {
+                    return WILDCARD_PATH;
+                }
             });
         }
+
+        for (ConnectHandler handler : router.getConnectHandlers()) {
+            dispatch(null, metrics.timed(() -> {
+                try {
+                    handler.handle(() -> channel);
+                } catch (Exception ex) {
+                    notifyError(ex);
+                }
+            }));
+        }
         return this;
     }
 
@@ -301,6 +496,75 @@ public class Client extends AbstractClient {
         return sj.toString();
     }
 
+    private void dispatch(String _devId, Runnable _task) {
+        dispatcher.dispatch(_devId, _task, reportDropped);
+    }
+
+    /**
+     * Dispatch a task holding resources, released by the task itself or in its place if the dispatcher drops it
+     */
+    private void dispatch(String _devId, Runnable _task, Runnable _release) {
+        dispatcher.dispatch(_devId, _task, () -> {
+            reportDropped();
+            _release.run();
+        });
+    }
+
+    /**
+     * Overloaded dispatcher: spill to the error channel, where identical errors are coalesced
+     */
+    private void reportDropped() {
+        metrics.dropped();
+        notifyError(dropError);
+    }
+
+    /**
+     * Check an uplink against the duplicate filter, reading only its counter
+     */
+    private boolean isDuplicate(String _devId, byte[] _uplink) {
+        if (duplicates == null) {
+            return false;
+        }
+        try {
+            long counter = decoder.decodeCounter(_uplink);
+            return counter >= 0 && duplicates.isDuplicate(_devId, counter);
+        } catch (IOException ex) {
+            /**
+             * Let the handlers get the decoding error
+             */
+            return false;
+        }
+    }
+
+    /**
+     * Append an uplink to the journal, if any. A failing journal does not stop the delivery.
+     */
+    private void journal(String _topic, byte[] _uplink) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(_topic, System.currentTimeMillis(), _uplink);
+        } catch (IOException | RuntimeException ex) {
+            notifyError(ex);
+        }
+    }
+
+    /**
+     * Give a decoded uplink back to the decoder, once every handler is done with it
+     */
+    private void release(Lazy<DataMessage> _uplink) {
+        DataMessage message = _uplink.peek();
+        if (message instanceof UplinkMessage) {
+            decoder.release((UplinkMessage) message);
+        }
+    }
+
+    private void notifyError(Throwable _error) {
+        metrics.error();
+        errors.report(_error);
+    }
+
     @Override
     public Client end() throws InterruptedException, IOException {
         if (connection == null) {
@@ -314,10 +578,22 @@ public class Client extends AbstractClient {
         if (connection == null) {
             throw new RuntimeException("Not connected");
         }
-        executor.awaitTermination(_timeout, TimeUnit.MILLISECONDS);
+        for (BatchUplinkHandler handler : router.getBatchHandlers()) {
+            handler.flush();
+        }
+        for (MessagePublisher<?> publisher : router.getPublishers()) {
+            publisher.complete();
+        }
+        dispatcher.awaitTermination(_timeout, TimeUnit.MILLISECONDS);
+        if (drains != null) {
+            drains.shutdown();
+            drains.awaitTermination(_timeout, TimeUnit.MILLISECONDS);
+            drains = null;
+        }
         connection.close((int) _timeout);
         if (!connection.isOpen()) {
             connection = null;
+            confirming = null;
         }
         return this;
     }
@@ -327,31 +603,137 @@ public class Client extends AbstractClient {
         if (connection == null) {
             throw new RuntimeException("Not connected");
         }
+        for (MessagePublisher<?> publisher : router.getPublishers()) {
+            publisher.complete();
+        }
+        if (drains != null) {
+            drains.shutdownNow();
+            drains = null;
+        }
         connection.abort();
         connection = null;
+        confirming = null;
         return this;
     }
 
     @Override
     public void send(String _devId, DownlinkMessage _payload) throws IOException {
-        channel.basicPublish(exchange, appId + "/devices/" + _devId + "/down", null, MAPPER.writeValueAsBytes(_payload));
+        long start = System.nanoTime();
+        try {
+            byte[] body = encoder.encode(_payload);
+            synchronized (publishing) {
+                channel.basicPublish(exchange, encoder.topic(_devId), null, body);
+            }
+            metrics.sent(start, null);
+        } catch (IOException | RuntimeException ex) {
+            metrics.sent(start, ex);
+            throw ex;
+        }
     }
 
     @Override
-    public Client onConnected(Consumer<org.thethingsnetwork.data.common.Connection> _handler) {
-        if (connection != null) {
-            throw new RuntimeException("Already connected");
+    public CompletableFuture<Void> sendAsync(String _devId, DownlinkMessage _payload) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Connection current = connection;
+        if (current == null || channel == null) {
+            future.completeExceptionally(new IllegalStateException("Not connected"));
+            return future;
+        }
+        try {
+            byte[] body = encoder.encode(_payload);
+            Channel confirmed = confirming(current);
+            inflight.acquire();
+            long start = System.nanoTime();
+            future.whenComplete((Void _result, Throwable _error) -> {
+                inflight.release();
+                metrics.sent(start, _error);
+            });
+            /**
+             * The sequence number must be the one of this publish, so publishing is serialized
+             */
+            synchronized (publishing) {
+                long sequence = confirmed.getNextPublishSeqNo();
+                sending.put(sequence, future);
+                try {
+                    confirmed.basicPublish(exchange, encoder.topic(_devId), null, body);
+                } catch (IOException | RuntimeException ex) {
+                    sending.remove(sequence);
+                    throw ex;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(ex);
+        } catch (Exception ex) {
+            future.completeExceptionally(ex);
         }
-        if (!handlers.containsKey(ConnectHandler.class)) {
-            handlers.put(ConnectHandler.class, new LinkedList<>());
+        return future;
+    }
+
+    /**
+     * Open the channel of sendAsync on first use, so that send() and the consumer never pay for publisher confirms
+     */
+    private Channel confirming(Connection _connection) throws IOException {
+        Channel confirmed = confirming;
+        if (confirmed != null) {
+            return confirmed;
         }
-        handlers.get(ConnectHandler.class)
-                .add(new ConnectHandler() {
+        synchronized (publishing) {
+            if (confirming == null) {
+                confirmed = _connection.createChannel();
+                /**
+                 * Downlinks sent by sendAsync complete when the broker confirms them
+                 */
+                confirmed.confirmSelect();
+                confirmed.addConfirmListener(new ConfirmListener() {
                     @Override
-                    public void handle(org.thethingsnetwork.data.common.Connection _client) {
-                        _handler.accept(_client);
+                    public void handleAck(long deliveryTag, boolean multiple) {
+                        completeSending(deliveryTag, multiple, null);
+                    }
+
+                    @Override
+                    public void handleNack(long deliveryTag, boolean multiple) {
+                        completeSending(deliveryTag, multiple, new IOException("Downlink rejected by the broker"));
                     }
                 });
+                confirmed.addShutdownListener((ShutdownSignalException cause) -> completeSending(Long.MAX_VALUE, true, cause));
+                confirming = confirmed;
+            }
+            return confirming;
+        }
+    }
+
+    private void completeSending(long _sequence, boolean _multiple, Throwable _error) {
+        Collection<Long> sequences;
+        if (_multiple) {
+            sequences = sending.headMap(_sequence, true).keySet();
+        } else {
+            sequences = Collections.singleton(_sequence);
+        }
+        for (Long sequence : sequences) {
+            CompletableFuture<Void> future = sending.remove(sequence);
+            if (future == null) {
+                continue;
+            }
+            if (_error != null) {
+                future.completeExceptionally(_error);
+            } else {
+                future.complete(null);
+            }
+        }
+    }
+
+    @Override
+    public Client onConnected(Consumer<org.thethingsnetwork.data.common.Connection> _handler) {
+        if (connection != null) {
+            throw new RuntimeException("Already connected");
+        }
+        router.add(new ConnectHandler() {
+            @Override
+            public void handle(org.thethingsnetwork.data.common.Connection _client) {
+                _handler.accept(_client);
+            }
+        });
         return this;
     }
 
@@ -360,10 +742,7 @@ public class Client extends AbstractClient {
         if (connection != null) {
             throw new RuntimeException("Already connected");
         }
-        if (!handlers.containsKey(ErrorHandler.class)) {
-            handlers.put(ErrorHandler.class, new LinkedList<>());
-        }
-        handlers.get(ErrorHandler.class).add(new ErrorHandler() {
+        router.add(new ErrorHandler() {
             @Override
             public void handle(Throwable _error) {
                 _handler.accept(_error);
@@ -377,10 +756,7 @@ public class Client extends AbstractClient {
         if (connection != null) {
             throw new RuntimeException("Already connected");
         }
-        if (!handlers.containsKey(UplinkHandler.class)) {
-            handlers.put(UplinkHandler.class, new LinkedList<>());
-        }
-        handlers.get(UplinkHandler.class).add(new UplinkHandler() {
+        router.add(new UplinkHandler() {
             @Override
             public void handle(String _devId, DataMessage _data) {
                 _handler.accept(_devId, _data);
@@ -414,10 +790,7 @@ public class Client extends AbstractClient {
         if (connection != null) {
             throw new RuntimeException("Already connected");
         }
-        if (!handlers.containsKey(ActivationHandler.class)) {
-            handlers.put(ActivationHandler.class, new LinkedList<>());
-        }
-        handlers.get(ActivationHandler.class).add(new ActivationHandler() {
+        router.add(new ActivationHandler() {
             @Override
             public void handle(String _devId, ActivationMessage _data) {
                 _handler.accept(_devId, _data);
@@ -441,10 +814,7 @@ public class Client extends AbstractClient {
         if (connection != null) {
             throw new RuntimeException("Already connected");
         }
-        if (!handlers.containsKey(AbstractEventHandler.class)) {
-            handlers.put(AbstractEventHandler.class, new LinkedList<>());
-        }
-        handlers.get(AbstractEventHandler.class).add(new AbstractEventHandler() {
+        router.add(new AbstractEventHandler() {
             @Override
             public void handle(String _devId, String _event, RawMessage _data) {
                 _handler.accept(_devId, _event, _data);
@@ -472,4 +842,32 @@ public class Client extends AbstractClient {
     public Client onDevice(TriConsumer<String, String, RawMessage> _handler) {
         return onDevice(null, null, _handler);
     }
+
+    @Override
+    protected Client register(UplinkHandler _handler) {
+        if (connection != null) {
+            throw new RuntimeException("Already connected");
+        }
+        router.add(_handler);
+        return this;
+    }
+
+    @Override
+    protected Client register(ActivationHandler _handler) {
+        if (connection != null) {
+            throw new RuntimeException("Already connected");
+        }
+        router.add(_handler);
+        return this;
+    }
+
+    @Override
+    protected Client register(AbstractEventHandler _handler) {
+        if (connection != null) {
+            throw new RuntimeException("Already connected");
+        }
+        router.add(_handler);
+        return this;
+    }
+
 }
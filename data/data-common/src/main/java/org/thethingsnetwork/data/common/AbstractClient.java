@@ -28,15 +28,34 @@ import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import org.reactivestreams.Publisher;
+import org.thethingsnetwork.data.common.events.AbstractEventHandler;
+import org.thethingsnetwork.data.common.events.ActivationHandler;
+import org.thethingsnetwork.data.common.events.BatchUplinkHandler;
+import org.thethingsnetwork.data.common.events.TypedUplinkHandler;
+import org.thethingsnetwork.data.common.events.UplinkHandler;
+import org.thethingsnetwork.data.common.flow.ActivationPublisher;
+import org.thethingsnetwork.data.common.flow.DevicePublisher;
+import org.thethingsnetwork.data.common.flow.UplinkPublisher;
 import org.thethingsnetwork.data.common.messages.ActivationMessage;
 import org.thethingsnetwork.data.common.messages.DataMessage;
+import org.thethingsnetwork.data.common.messages.DeviceMessage;
 import org.thethingsnetwork.data.common.messages.DownlinkMessage;
 import org.thethingsnetwork.data.common.messages.RawMessage;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+import org.thethingsnetwork.data.common.state.DeviceStateStore;
 
 /**
  * This is an abstract representation of the methods any real-time TTN client should provide
+ * <p>
+ * Only the methods needing the transport are abstract. The others are built on them, and on the register() methods,
+ * which a client overrides to route the handlers of the SDK itself: publishers then throttle the transport, and batches are decoded lazily.
  *
  * @author Romain Cambier
  */
@@ -94,6 +113,25 @@ public abstract class AbstractClient {
      */
     public abstract void send(String _devId, DownlinkMessage _payload) throws Exception;
 
+    /**
+     * Send a downlink message without waiting for the broker, blocking only while the in-flight window is full.
+     * Defaults to a send() completing the future before it is returned.
+     *
+     * @param _devId The devId to send the message to
+     * @param _payload The payload to be sent
+     * @return a future completed once the broker accepted the message, or exceptionally if it could not be sent
+     */
+    public CompletableFuture<Void> sendAsync(String _devId, DownlinkMessage _payload) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            send(_devId, _payload);
+            future.complete(null);
+        } catch (Exception ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
     /**
      * Register a connection event handler
      *
@@ -142,6 +180,144 @@ public abstract class AbstractClient {
      */
     public abstract AbstractClient onMessage(BiConsumer<String, DataMessage> _handler) throws Exception;
 
+    /**
+     * Register an uplink event handler receiving batches, using device and field filters.
+     * Batches keep the order in which uplinks were received.
+     *
+     * @param _devId The devId you want to filter on
+     * @param _field the only field you want to get
+     * @param _maxSize The maximum number of uplinks per batch
+     * @param _maxDelay The maximum time an uplink can wait in a batch, in ms, or 0 to only deliver full batches
+     * @param _handler The batch event handler
+     * @return the Client instance
+     * @throws Exception in case something goes wrong
+     */
+    public AbstractClient onMessageBatch(String _devId, String _field, int _maxSize, long _maxDelay, Consumer<List<DeviceMessage>> _handler) throws Exception {
+        if (_maxSize < 1 || _maxDelay < 0) {
+            throw new IllegalArgumentException("Batches need a positive size and delay");
+        }
+        return register(new BatchUplinkHandler() {
+            @Override
+            public void handleBatch(List<DeviceMessage> _batch) {
+                _handler.accept(_batch);
+            }
+
+            @Override
+            public int getMaxSize() {
+                return _maxSize;
+            }
+
+            @Override
+            public long getMaxDelay() {
+                return _maxDelay;
+            }
+
+            @Override
+            public String getDevId() {
+                return _devId;
+            }
+
+            @Override
+            public String getField() {
+                return _field;
+            }
+        });
+    }
+
+    /**
+     * Publish the uplinks of a device and field. The demand of the subscribers throttles the transport.
+     *
+     * @param _devId The devId you want to filter on, or null
+     * @param _field the only field you want to get, or null for full uplinks
+     * @param _window The number of uplinks buffered per subscriber before the transport is throttled
+     * @return the Publisher of the uplinks
+     * @throws Exception in case something goes wrong
+     */
+    public Publisher<DeviceMessage> publishMessages(String _devId, String _field, int _window) throws Exception {
+        UplinkPublisher handler = new UplinkPublisher(_devId, _field, _window);
+        register(handler);
+        return handler.getPublisher();
+    }
+
+    /**
+     * Register an uplink event handler receiving the payload fields bound to a custom class, using device and port filters
+     *
+     * @param <T> the type of the payload fields
+     * @param _devId The devId you want to filter on
+     * @param _port The port you want to filter on, or -1 for any port
+     * @param _type The class to bind the payload fields to
+     * @param _handler The uplink event handler
+     * @return the Client instance
+     * @throws Exception in case something goes wrong
+     */
+    public <T> AbstractClient onPayload(String _devId, int _port, Class<T> _type, BiConsumer<String, T> _handler) throws Exception {
+        if (_type == null) {
+            throw new NullPointerException();
+        }
+        return register(new TypedUplinkHandler<T>() {
+            @Override
+            public void handlePayload(String _devId, T _payload) {
+                _handler.accept(_devId, _payload);
+            }
+
+            @Override
+            public Class<T> getType() {
+                return _type;
+            }
+
+            @Override
+            public int getPort() {
+                return _port;
+            }
+
+            @Override
+            public String getDevId() {
+                return _devId;
+            }
+        });
+    }
+
+    /**
+     * Register an uplink event handler receiving the payload fields bound to a custom class, using device filter
+     *
+     * @param <T> the type of the payload fields
+     * @param _devId The devId you want to filter on
+     * @param _type The class to bind the payload fields to
+     * @param _handler The uplink event handler
+     * @return the Client instance
+     * @throws Exception in case something goes wrong
+     */
+    public <T> AbstractClient onPayload(String _devId, Class<T> _type, BiConsumer<String, T> _handler) throws Exception {
+        return onPayload(_devId, -1, _type, _handler);
+    }
+
+    /**
+     * Register an uplink event handler receiving the payload fields bound to a custom class
+     *
+     * @param <T> the type of the payload fields
+     * @param _type The class to bind the payload fields to
+     * @param _handler The uplink event handler
+     * @return the Client instance
+     * @throws Exception in case something goes wrong
+     */
+    public <T> AbstractClient onPayload(Class<T> _type, BiConsumer<String, T> _handler) throws Exception {
+        return onPayload(null, -1, _type, _handler);
+    }
+
+    /**
+     * Publish the activations of a device. The demand of the subscribers throttles the transport.
+     *
+     * @param _devId The devId you want to filter on, or null
+     * @param _window The number of activations buffered per subscriber before the transport is throttled
+     * @return the Publisher of the activations
+     * @throws Exception in case something goes wrong
+     */
+    public Publisher<DeviceMessage> publishActivations(String _devId, int _window) throws Exception {
+        ActivationPublisher handler = new ActivationPublisher(_devId, _window);
+        register(handler);
+        return handler.getPublisher();
+    }
+
     /**
      * Register an activation event handler using device filter
      *
@@ -161,6 +337,50 @@ public abstract class AbstractClient {
      */
     public abstract AbstractClient onActivation(BiConsumer<String, ActivationMessage> _handler) throws Exception;
 
+    /**
+     * Keep the state of every device in a store, updated by the uplinks and activations
+     *
+     * @param _store The device state store
+     * @return the Client instance
+     * @throws Exception in case something goes wrong
+     */
+    public AbstractClient trackDevices(DeviceStateStore _store) throws Exception {
+        if (_store == null) {
+            throw new NullPointerException();
+        }
+        register(new UplinkHandler() {
+            @Override
+            public void handle(String _devId, DataMessage _data) {
+                try {
+                    _store.update(_devId, (UplinkMessage) _data);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            @Override
+            public String getDevId() {
+                return null;
+            }
+
+            @Override
+            public String getField() {
+                return null;
+            }
+        });
+        return register(new ActivationHandler() {
+            @Override
+            public void handle(String _devId, ActivationMessage _data) {
+                _store.update(_devId, _data);
+            }
+
+            @Override
+            public String getDevId() {
+                return null;
+            }
+        });
+    }
+
     /**
      * Register a default event handler using device and event filters
      *
@@ -191,4 +411,52 @@ public abstract class AbstractClient {
      */
     public abstract AbstractClient onDevice(TriConsumer<String, String, RawMessage> _handler) throws Exception;
 
+    /**
+     * Publish the events of a device. The demand of the subscribers throttles the transport.
+     *
+     * @param _devId The devId you want to filter on, or null
+     * @param _event The event you want to filter on, or null
+     * @param _window The number of events buffered per subscriber before the transport is throttled
+     * @return the Publisher of the events
+     * @throws Exception in case something goes wrong
+     */
+    public Publisher<DeviceMessage> publishDeviceEvents(String _devId, String _event, int _window) throws Exception {
+        DevicePublisher handler = new DevicePublisher(_devId, _event, _window);
+        register(handler);
+        return handler.getPublisher();
+    }
+
+    /**
+     * Register an uplink handler. Defaults to onMessage(), which runs it like any other handler.
+     *
+     * @param _handler The uplink handler
+     * @return the Client instance
+     * @throws Exception in case something goes wrong
+     */
+    protected AbstractClient register(UplinkHandler _handler) throws Exception {
+        return onMessage(_handler.getDevId(), _handler.getField(), _handler::handle);
+    }
+
+    /**
+     * Register an activation handler. Defaults to onActivation(), which runs it like any other handler.
+     *
+     * @param _handler The activation handler
+     * @return the Client instance
+     * @throws Exception in case something goes wrong
+     */
+    protected AbstractClient register(ActivationHandler _handler) throws Exception {
+        return onActivation(_handler.getDevId(), _handler::handle);
+    }
+
+    /**
+     * Register a default event handler. Defaults to onDevice(), which runs it like any other handler.
+     *
+     * @param _handler The default event handler
+     * @return the Client instance
+     * @throws Exception in case something goes wrong
+     */
+    protected AbstractClient register(AbstractEventHandler _handler) throws Exception {
+        return onDevice(_handler.getDevId(), _handler.getEvent(), _handler::handle);
+    }
+
 }
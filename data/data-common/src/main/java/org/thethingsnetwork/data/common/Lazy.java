@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common;
+
+/**
+ * Thread-safe memoized value, computed on first access.
+ * Used to decode a delivery at most once, no matter how many handlers it reaches.
+ * A failed computation is memoized as well and rethrown to every caller.
+ *
+ * @param <T> the type of the value
+ */
+public class Lazy<T> {
+
+    private Loader<T> loader;
+    private volatile boolean loaded;
+    private T value;
+    private Exception error;
+
+    /**
+     * Create a new Lazy value
+     *
+     * @param _loader The function computing the value
+     */
+    public Lazy(Loader<T> _loader) {
+        if (_loader == null) {
+            throw new NullPointerException();
+        }
+        loader = _loader;
+    }
+
+    /**
+     * Get the value, computing it if needed
+     *
+     * @return the value
+     * @throws Exception if the computation failed
+     */
+    public T get() throws Exception {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    try {
+                        value = loader.load();
+                    } catch (Exception ex) {
+                        error = ex;
+                    }
+                    loader = null;
+                    loaded = true;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return value;
+    }
+
+    /**
+     * Get the value only if it was already computed successfully
+     *
+     * @return the value, or null if it was not computed or failed
+     */
+    public T peek() {
+        if (!loaded || error != null) {
+            return null;
+        }
+        return value;
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+
+        public T load() throws Exception;
+    }
+
+}
@@ -23,6 +23,13 @@
  */
 package org.thethingsnetwork.data.common;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -39,6 +46,8 @@ public class Metadata {
     private String bitRate;
     private String codingRate;
     private List<Gateway> gateways;
+    @JsonIgnore
+    private List<Gateway> spares;
 
     private Metadata() {
 
@@ -110,6 +119,167 @@ public class Metadata {
         return Collections.unmodifiableList(gateways);
     }
 
+    /**
+     * Hand-written streaming deserializer, equivalent to the reflective binding of AbstractClient.MAPPER
+     */
+    public static class Deserializer extends StdDeserializer<Metadata> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Deserializer() {
+            super(Metadata.class);
+        }
+
+        @Override
+        public Metadata deserialize(JsonParser _parser, DeserializationContext _ctxt) throws IOException {
+            return deserialize(_parser, _ctxt, new Metadata());
+        }
+
+        /**
+         * Fill an existing Metadata in place. Fields missing from the json are reset, and the Gateway instances are reused.
+         */
+        @Override
+        public Metadata deserialize(JsonParser _parser, DeserializationContext _ctxt, Metadata _metadata) throws IOException {
+            JsonToken token = _parser.getCurrentToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = _parser.nextToken();
+            }
+            if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+                return (Metadata) _ctxt.handleUnexpectedToken(Metadata.class, _parser);
+            }
+            List<Gateway> previous = _metadata.gateways;
+            _metadata.time = null;
+            _metadata.frequency = 0;
+            _metadata.modulation = null;
+            _metadata.dataRate = null;
+            _metadata.bitRate = null;
+            _metadata.codingRate = null;
+            _metadata.gateways = null;
+            for (; token == JsonToken.FIELD_NAME; token = _parser.nextToken()) {
+                String name = _parser.getCurrentName();
+                token = _parser.nextToken();
+                switch (name) {
+                    case "time":
+                        _metadata.time = _parser.getValueAsString();
+                        break;
+                    case "frequency":
+                        _metadata.frequency = _parser.getValueAsDouble();
+                        break;
+                    case "modulation":
+                        _metadata.modulation = _parser.getValueAsString();
+                        break;
+                    case "data_rate":
+                        _metadata.dataRate = _parser.getValueAsString();
+                        break;
+                    case "bit_rate":
+                        _metadata.bitRate = _parser.getValueAsString();
+                        break;
+                    case "coding_rate":
+                        _metadata.codingRate = _parser.getValueAsString();
+                        break;
+                    case "gateways":
+                        if (token == JsonToken.START_ARRAY) {
+                            _metadata.gateways = readGateways(_parser, _ctxt, _metadata, (previous == null) ? new ArrayList<>() : previous);
+                        } else if (token != JsonToken.VALUE_NULL) {
+                            _ctxt.handleUnexpectedToken(List.class, _parser);
+                        }
+                        break;
+                }
+                _parser.skipChildren();
+            }
+            return _metadata;
+        }
+
+        private List<Gateway> readGateways(JsonParser _parser, DeserializationContext _ctxt, Metadata _metadata, List<Gateway> _gateways) throws IOException {
+            int count = 0;
+            while (_parser.nextToken() != JsonToken.END_ARRAY) {
+                Gateway gateway = null;
+                if (_parser.getCurrentToken() != JsonToken.VALUE_NULL) {
+                    if (count < _gateways.size()) {
+                        gateway = _gateways.get(count);
+                    }
+                    if (gateway == null && _metadata.spares != null && !_metadata.spares.isEmpty()) {
+                        gateway = _metadata.spares.remove(_metadata.spares.size() - 1);
+                    }
+                    if (gateway == null) {
+                        gateway = new Gateway();
+                    }
+                    readGateway(_parser, _ctxt, gateway);
+                }
+                if (count < _gateways.size()) {
+                    _gateways.set(count, gateway);
+                } else {
+                    _gateways.add(gateway);
+                }
+                count++;
+            }
+            while (_gateways.size() > count) {
+                Gateway spare = _gateways.remove(_gateways.size() - 1);
+                if (spare != null) {
+                    if (_metadata.spares == null) {
+                        _metadata.spares = new ArrayList<>();
+                    }
+                    _metadata.spares.add(spare);
+                }
+            }
+            return _gateways;
+        }
+
+        private void readGateway(JsonParser _parser, DeserializationContext _ctxt, Gateway _gateway) throws IOException {
+            if (_parser.getCurrentToken() != JsonToken.START_OBJECT) {
+                _ctxt.handleUnexpectedToken(Gateway.class, _parser);
+                return;
+            }
+            _gateway.gtwId = null;
+            _gateway.timestamp = 0;
+            _gateway.time = null;
+            _gateway.channel = 0;
+            _gateway.rssi = 0;
+            _gateway.snr = 0;
+            _gateway.rfChain = 0;
+            _gateway.latitude = 0;
+            _gateway.longitude = 0;
+            _gateway.altitude = 0;
+            while (_parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = _parser.getCurrentName();
+                _parser.nextToken();
+                switch (name) {
+                    case "gtw_id":
+                        _gateway.gtwId = _parser.getValueAsString();
+                        break;
+                    case "timestamp":
+                        _gateway.timestamp = _parser.getValueAsLong();
+                        break;
+                    case "time":
+                        _gateway.time = _parser.getValueAsString();
+                        break;
+                    case "channel":
+                        _gateway.channel = _parser.getValueAsInt();
+                        break;
+                    case "rssi":
+                        _gateway.rssi = _parser.getValueAsDouble();
+                        break;
+                    case "snr":
+                        _gateway.snr = _parser.getValueAsDouble();
+                        break;
+                    case "rf_chain":
+                        _gateway.rfChain = _parser.getValueAsInt();
+                        break;
+                    case "latitude":
+                        _gateway.latitude = _parser.getValueAsDouble();
+                        break;
+                    case "longitude":
+                        _gateway.longitude = _parser.getValueAsDouble();
+                        break;
+                    case "altitude":
+                        _gateway.altitude = _parser.getValueAsDouble();
+                        break;
+                }
+                _parser.skipChildren();
+            }
+        }
+    }
+
     public static class Gateway {
 
         private String gtwId;
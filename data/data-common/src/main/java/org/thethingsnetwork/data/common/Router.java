@@ -0,0 +1,359 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.thethingsnetwork.data.common.events.AbstractEventHandler;
+import org.thethingsnetwork.data.common.events.ActivationHandler;
+import org.thethingsnetwork.data.common.events.BatchUplinkHandler;
+import org.thethingsnetwork.data.common.events.ConnectHandler;
+import org.thethingsnetwork.data.common.events.ErrorHandler;
+import org.thethingsnetwork.data.common.events.EventHandler;
+import org.thethingsnetwork.data.common.events.UplinkHandler;
+import org.thethingsnetwork.data.common.flow.MessagePublisher;
+import org.thethingsnetwork.data.common.flow.PublishingHandler;
+
+/**
+ * Index of the registered event handlers, shared by the data clients.
+ * Handlers are indexed by type, devId and field/event so that an incoming topic resolves to the matching handlers with a single hash lookup in the common case.
+ */
+public class Router {
+
+    private final List<EventHandler> handlers = new LinkedList<>();
+    private final List<ConnectHandler> connectHandlers = new LinkedList<>();
+    private final List<ErrorHandler> errorHandlers = new LinkedList<>();
+    private final List<BatchUplinkHandler> batchHandlers = new LinkedList<>();
+    private final List<MessagePublisher<?>> publishers = new LinkedList<>();
+
+    private final Index<UplinkHandler> uplinkHandlers = new Index<UplinkHandler>() {
+        @Override
+        protected String getDevId(UplinkHandler _handler) {
+            return _handler.getDevId();
+        }
+
+        @Override
+        protected String getKey(UplinkHandler _handler) {
+            return _handler.getField();
+        }
+
+        @Override
+        protected boolean matches(UplinkHandler _handler, String _devId, String _key) {
+            return _handler.matches(_devId, _key);
+        }
+    };
+
+    private final Index<ActivationHandler> activationHandlers = new Index<ActivationHandler>() {
+        @Override
+        protected String getDevId(ActivationHandler _handler) {
+            return _handler.getDevId();
+        }
+
+        @Override
+        protected String getKey(ActivationHandler _handler) {
+            return null;
+        }
+
+        @Override
+        protected boolean matches(ActivationHandler _handler, String _devId, String _key) {
+            return _handler.matches(_devId);
+        }
+    };
+
+    private final Index<AbstractEventHandler> eventHandlers = new Index<AbstractEventHandler>() {
+        @Override
+        protected String getDevId(AbstractEventHandler _handler) {
+            return _handler.getDevId();
+        }
+
+        @Override
+        protected String getKey(AbstractEventHandler _handler) {
+            return _handler.getEvent();
+        }
+
+        @Override
+        protected boolean matches(AbstractEventHandler _handler, String _devId, String _key) {
+            return _key != null && _handler.matches(_devId, _key);
+        }
+    };
+
+    /**
+     * Register a handler
+     *
+     * @param _handler The handler to register
+     * @return the Router instance
+     */
+    public synchronized Router add(EventHandler _handler) {
+        if (_handler == null) {
+            throw new NullPointerException();
+        }
+        handlers.add(_handler);
+        if (_handler instanceof BatchUplinkHandler) {
+            batchHandlers.add((BatchUplinkHandler) _handler);
+        }
+        if (_handler instanceof PublishingHandler) {
+            publishers.add(((PublishingHandler) _handler).getPublisher());
+        }
+        if (_handler instanceof UplinkHandler) {
+            uplinkHandlers.add((UplinkHandler) _handler);
+        } else if (_handler instanceof ActivationHandler) {
+            activationHandlers.add((ActivationHandler) _handler);
+        } else if (_handler instanceof AbstractEventHandler) {
+            eventHandlers.add((AbstractEventHandler) _handler);
+        } else if (_handler instanceof ConnectHandler) {
+            connectHandlers.add((ConnectHandler) _handler);
+        } else if (_handler instanceof ErrorHandler) {
+            errorHandlers.add((ErrorHandler) _handler);
+        }
+        return this;
+    }
+
+    /**
+     * Get all registered handlers, in registration order
+     *
+     * @return an unmodifiable List of handlers
+     */
+    public List<EventHandler> getHandlers() {
+        return Collections.unmodifiableList(handlers);
+    }
+
+    /**
+     * Get the connection handlers
+     *
+     * @return an unmodifiable List of connection handlers
+     */
+    public List<ConnectHandler> getConnectHandlers() {
+        return Collections.unmodifiableList(connectHandlers);
+    }
+
+    /**
+     * Get the error handlers
+     *
+     * @return an unmodifiable List of error handlers
+     */
+    public List<ErrorHandler> getErrorHandlers() {
+        return Collections.unmodifiableList(errorHandlers);
+    }
+
+    /**
+     * Get the batch handlers, which are also returned as uplink handlers
+     *
+     * @return an unmodifiable List of batch handlers
+     */
+    public List<BatchUplinkHandler> getBatchHandlers() {
+        return Collections.unmodifiableList(batchHandlers);
+    }
+
+    /**
+     * Get the publishers of the publishing handlers, which are also returned as event handlers
+     *
+     * @return an unmodifiable List of publishers
+     */
+    public List<MessagePublisher<?>> getPublishers() {
+        return Collections.unmodifiableList(publishers);
+    }
+
+    /**
+     * Get the uplink handlers matching a device and field
+     *
+     * @param _devId The devId of the message
+     * @param _field The field of the message, or null for a full uplink
+     * @return an unmodifiable List of matching handlers, possibly empty
+     */
+    public List<UplinkHandler> getUplinkHandlers(String _devId, String _field) {
+        return uplinkHandlers.get(_devId, _field);
+    }
+
+    /**
+     * Get the activation handlers matching a device
+     *
+     * @param _devId The devId of the activation
+     * @return an unmodifiable List of matching handlers, possibly empty
+     */
+    public List<ActivationHandler> getActivationHandlers(String _devId) {
+        return activationHandlers.get(_devId, null);
+    }
+
+    /**
+     * Get the event handlers matching a device and event
+     *
+     * @param _devId The devId of the event
+     * @param _event The event name
+     * @return an unmodifiable List of matching handlers, possibly empty
+     */
+    public List<AbstractEventHandler> getEventHandlers(String _devId, String _event) {
+        return eventHandlers.get(_devId, _event);
+    }
+
+    /**
+     * Per-type handler index.
+     * Matching lists are resolved for every registered (devId, key) pair, plus a wildcard bucket standing for any unregistered devId or key.
+     * Every fallback bucket is a subset of the exact one, so the first hit is always the complete answer.
+     *
+     * @param <H> the handler type
+     */
+    private static abstract class Index<H extends EventHandler> {
+
+        /**
+         * Stands for any devId or key that no handler registered explicitly. Can not collide with a TTN identifier.
+         */
+        private static final String ANY = "\u0000";
+
+        private final List<H> handlers = new ArrayList<>();
+        private volatile Map<Key, List<H>> resolved = Collections.emptyMap();
+
+        protected abstract String getDevId(H _handler);
+
+        protected abstract String getKey(H _handler);
+
+        protected abstract boolean matches(H _handler, String _devId, String _key);
+
+        public synchronized void add(H _handler) {
+            handlers.add(_handler);
+            resolved = null;
+        }
+
+        public List<H> get(String _devId, String _key) {
+            Map<Key, List<H>> index = resolved;
+            if (index == null) {
+                index = resolve();
+            }
+            List<H> match = index.get(new Key(_devId, _key));
+            if (match == null) {
+                match = index.get(new Key(_devId, ANY));
+            }
+            if (match == null) {
+                match = index.get(new Key(ANY, _key));
+            }
+            if (match == null) {
+                match = index.get(new Key(ANY, ANY));
+            }
+            return (match == null) ? Collections.emptyList() : match;
+        }
+
+        private synchronized Map<Key, List<H>> resolve() {
+            if (resolved != null) {
+                return resolved;
+            }
+            Map<String, List<H>> byDevId = new LinkedHashMap<>();
+            Set<String> keys = new LinkedHashSet<>();
+            for (H handler : handlers) {
+                byDevId.computeIfAbsent(getDevId(handler), (String k) -> new ArrayList<>()).add(handler);
+                keys.add(getKey(handler));
+            }
+            keys.add(ANY);
+
+            Map<H, Integer> order = new IdentityHashMap<>();
+            for (H handler : handlers) {
+                order.put(handler, order.size());
+            }
+
+            List<H> wildcard = byDevId.getOrDefault(null, Collections.emptyList());
+            Map<Key, List<H>> index = new HashMap<>();
+            resolve(index, ANY, wildcard, keys);
+            for (Map.Entry<String, List<H>> entry : byDevId.entrySet()) {
+                if (entry.getKey() != null) {
+                    resolve(index, entry.getKey(), merge(entry.getValue(), wildcard, order), keys);
+                }
+            }
+            resolved = index;
+            return index;
+        }
+
+        private void resolve(Map<Key, List<H>> _index, String _devId, List<H> _candidates, Set<String> _keys) {
+            for (String key : _keys) {
+                List<H> match = new ArrayList<>();
+                for (H handler : _candidates) {
+                    if (matches(handler, _devId, key)) {
+                        match.add(handler);
+                    }
+                }
+                if (!match.isEmpty()) {
+                    _index.put(new Key(_devId, key), Collections.unmodifiableList(match));
+                }
+            }
+        }
+
+        /**
+         * Merge two sub-lists of handlers, keeping the registration order
+         */
+        private List<H> merge(List<H> _first, List<H> _second, Map<H, Integer> _order) {
+            if (_second.isEmpty()) {
+                return _first;
+            }
+            List<H> merged = new ArrayList<>(_first.size() + _second.size());
+            int i = 0;
+            int j = 0;
+            while (i < _first.size() && j < _second.size()) {
+                if (_order.get(_first.get(i)) < _order.get(_second.get(j))) {
+                    merged.add(_first.get(i++));
+                } else {
+                    merged.add(_second.get(j++));
+                }
+            }
+            merged.addAll(_first.subList(i, _first.size()));
+            merged.addAll(_second.subList(j, _second.size()));
+            return merged;
+        }
+
+    }
+
+    private static final class Key {
+
+        private final String devId;
+        private final String key;
+        private final int hash;
+
+        public Key(String _devId, String _key) {
+            devId = _devId;
+            key = _key;
+            hash = 31 * Objects.hashCode(_devId) + Objects.hashCode(_key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object _other) {
+            if (!(_other instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) _other;
+            return Objects.equals(devId, other.devId) && Objects.equals(key, other.key);
+        }
+
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.collections;
+
+/**
+ * 64-bit keys of devIds, for primitive maps and filters. Distinct devIds collide with a probability of about n² / 2^65,
+ * negligible below billions of devices.
+ */
+public class DeviceKey {
+
+    private DeviceKey() {
+
+    }
+
+    /**
+     * Hash a devId: 64-bit FNV-1a, finalized like MurmurHash3
+     *
+     * @param _devId The devId
+     * @return the key, never 0
+     */
+    public static long of(String _devId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < _devId.length(); i++) {
+            hash = (hash ^ _devId.charAt(i)) * 0x100000001b3L;
+        }
+        hash = mix(hash);
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreading every bit of the input over the output
+     *
+     * @param _hash The value to mix
+     * @return the mixed value
+     */
+    public static long mix(long _hash) {
+        long hash = _hash;
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb93fe1a85ec3L;
+        return hash ^ (hash >>> 33);
+    }
+
+}
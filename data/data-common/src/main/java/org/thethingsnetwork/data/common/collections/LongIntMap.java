@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.collections;
+
+/**
+ * Open-addressing map from long keys to non-negative ints, without boxing.
+ * Kept at most half full, for 24 to 48 bytes per entry. Key 0 is reserved. Not thread-safe.
+ */
+public class LongIntMap {
+
+    public static final int MISSING = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int shift;
+
+    /**
+     * Create a new LongIntMap
+     *
+     * @param _expected The expected number of entries
+     */
+    public LongIntMap(int _expected) {
+        int capacity = Integer.highestOneBit(Math.max(8, (int) Math.min(1 << 30, _expected * 2L)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Get the value of a key
+     *
+     * @param _key The key
+     * @return the value, or MISSING
+     */
+    public int get(long _key) {
+        int mask = keys.length - 1;
+        for (int i = index(_key); ; i = (i + 1) & mask) {
+            long key = keys[i];
+            if (key == _key) {
+                return values[i];
+            }
+            if (key == 0) {
+                return MISSING;
+            }
+        }
+    }
+
+    /**
+     * Set the value of a key
+     *
+     * @param _key The key, not 0
+     * @param _value The value, not negative
+     * @return the previous value, or MISSING
+     */
+    public int put(long _key, int _value) {
+        if (_key == 0) {
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+        if (_value < 0) {
+            throw new IllegalArgumentException("Values can not be negative");
+        }
+        int mask = keys.length - 1;
+        int i = index(_key);
+        for (; keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == _key) {
+                int previous = values[i];
+                values[i] = _value;
+                return previous;
+            }
+        }
+        keys[i] = _key;
+        values[i] = _value;
+        if (++size > keys.length / 2) {
+            grow();
+        }
+        return MISSING;
+    }
+
+    /**
+     * Remove a key
+     *
+     * @param _key The key
+     * @return the removed value, or MISSING
+     */
+    public int remove(long _key) {
+        int mask = keys.length - 1;
+        int i = index(_key);
+        for (; keys[i] != _key; i = (i + 1) & mask) {
+            if (keys[i] == 0) {
+                return MISSING;
+            }
+        }
+        int removed = values[i];
+        size--;
+        /**
+         * Shift back the next entries of the cluster, so that lookups never stop at a hole
+         */
+        for (int next = (i + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+            int home = index(keys[next]);
+            if (((next - home) & mask) >= ((next - i) & mask)) {
+                keys[i] = keys[next];
+                values[i] = values[next];
+                i = next;
+            }
+        }
+        keys[i] = 0;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int index(long _key) {
+        return (int) ((_key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private void allocate(int _capacity) {
+        keys = new long[_capacity];
+        values = new int[_capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(_capacity);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length * 2);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = index(oldKeys[j]);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,525 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.counters;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.thethingsnetwork.data.common.collections.DeviceKey;
+import org.thethingsnetwork.data.common.collections.LongIntMap;
+
+/**
+ * Tracks the frame counters of each device, to deliver its uplinks in counter order and report the lost ones.
+ * <p>
+ * Uplinks ahead of the next expected counter wait in a reorder window of a few frames, and are delivered once the missing ones arrive,
+ * once the window is exceeded, or about maxDelay ms later. Counters never received are then reported as a gap, and delivered late if they still arrive.
+ * Repeats of a delivered counter are dropped.
+ * <p>
+ * Counters are extended past their rollover: 16-bit counters, unless the device uses 32-bit counters or sends a counter above 65535, and 32-bit ones.
+ * A counter jumping back by more than 64 frames is taken for a reset of the device, as after a (re)join, and so is a counter of the first window
+ * of a session more than the window behind, when it was already delivered. A device rejoining within the window is only seen as sending repeats:
+ * call reset when its activation is received.
+ * <p>
+ * The state of a device is kept in primitive arrays, for 60 to 100 bytes, plus the reorder window while frames wait in it.
+ * Devices are spread over 64 locks; the listener is called under the lock of the device and must return quickly.
+ *
+ * @param <T> the type of the tracked messages
+ */
+public class FrameCounterTracker<T> implements AutoCloseable {
+
+    /**
+     * Receives the uplinks in counter order, and the gaps and resets of the counters
+     *
+     * @param <T> the type of the tracked messages
+     */
+    public interface Listener<T> {
+
+        /**
+         * Called with each uplink, in counter order except for the late ones
+         *
+         * @param _devId The devId
+         * @param _counter The extended counter, which keeps growing past rollovers
+         * @param _message The uplink
+         */
+        public void deliver(String _devId, long _counter, T _message);
+
+        /**
+         * Called when counters were skipped
+         *
+         * @param _devId The devId
+         * @param _first The first extended counter not received
+         * @param _last The last extended counter not received
+         */
+        public default void gap(String _devId, long _first, long _last) {
+
+        }
+
+        /**
+         * Called when the counters of a device restarted
+         *
+         * @param _devId The devId
+         * @param _last The last extended counter of the previous session
+         * @param _counter The first counter of the new session
+         */
+        public default void reset(String _devId, long _last, long _counter) {
+
+        }
+
+        /**
+         * Called when the counter of a device wrapped to 0
+         *
+         * @param _devId The devId
+         * @param _bits The width of the counter, 16 or 32
+         */
+        public default void rollover(String _devId, int _bits) {
+
+        }
+
+        /**
+         * Called when the listener itself failed. Defaults to the uncaught exception handler of the thread.
+         *
+         * @param _error The error
+         */
+        public default void error(Throwable _error) {
+            Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), _error);
+        }
+
+    }
+
+    public static final int DEFAULT_WINDOW = 8;
+    public static final long DEFAULT_MAX_DELAY = 5000;
+
+    private static final int SHARDS = 64;
+    private static final int MAX_GAP = 16384;
+    private static final int HISTORY = 64;
+    private static final byte STARTED = 1;
+    private static final byte WIDE = 2;
+
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, (Runnable _task) -> {
+        Thread thread = new Thread(_task, "ttn-counter-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Listener<T> listener;
+    private final int window;
+    private final long maxDelay;
+    private final Shard[] shards = new Shard[SHARDS];
+    private final ScheduledFuture<?> sweep;
+
+    /**
+     * Create a new FrameCounterTracker
+     *
+     * @param _listener The listener of the uplinks and events
+     * @param _window The number of frames an uplink can wait for the missing ones, 1 to never reorder
+     * @param _maxDelay The time an uplink can wait for the missing ones, in ms, or 0 to only rely on the window
+     * @param _uses32BitFCnt Whether the devices use 32-bit counters by default
+     */
+    public FrameCounterTracker(Listener<T> _listener, int _window, long _maxDelay, boolean _uses32BitFCnt) {
+        if (_window < 1 || _window > HISTORY) {
+            throw new IllegalArgumentException("The window must be between 1 and " + HISTORY);
+        }
+        if (_maxDelay < 0) {
+            throw new IllegalArgumentException("The delay can not be negative");
+        }
+        listener = _listener;
+        window = _window;
+        maxDelay = _maxDelay;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(_uses32BitFCnt);
+        }
+        if (_window > 1 && _maxDelay > 0) {
+            long period = Math.max(1, _maxDelay / 4);
+            sweep = TIMER.scheduleWithFixedDelay(this::expire, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            sweep = null;
+        }
+    }
+
+    /**
+     * Create a new FrameCounterTracker with a window of 8 frames and 5 s, for 16-bit counters by default
+     *
+     * @param _listener The listener of the uplinks and events
+     */
+    public FrameCounterTracker(Listener<T> _listener) {
+        this(_listener, DEFAULT_WINDOW, DEFAULT_MAX_DELAY, false);
+    }
+
+    /**
+     * Track an uplink
+     *
+     * @param _devId The devId
+     * @param _counter The counter, as received
+     * @param _message The uplink, delivered to the listener now or later
+     */
+    public void offer(String _devId, long _counter, T _message) {
+        long key = DeviceKey.of(_devId);
+        Shard shard = shard(key);
+        synchronized (shard) {
+            int slot = shard.slot(key);
+            long counter = _counter & 0xFFFFFFFFL;
+            if (counter > 0xFFFF) {
+                shard.flags[slot] |= WIDE;
+            }
+            if ((shard.flags[slot] & STARTED) == 0) {
+                shard.flags[slot] |= STARTED;
+                shard.expected[slot] = counter;
+                shard.seen[slot] = 0;
+            }
+            int bits = (shard.flags[slot] & WIDE) != 0 ? 32 : 16;
+            long mask = (1L << bits) - 1;
+            long expected = shard.expected[slot];
+            long ahead = (counter - expected) & mask;
+            if (ahead < MAX_GAP) {
+                long extended = expected + ahead;
+                if (ahead >= window) {
+                    advance(shard, slot, _devId, extended - window + 1);
+                    drain(shard, slot, _devId);
+                }
+                if (extended == shard.expected[slot]) {
+                    deliver(shard, slot, _devId, extended, _message);
+                    drain(shard, slot, _devId);
+                } else {
+                    hold(shard, slot, _devId, extended, _message);
+                }
+            } else {
+                long behind = (1L << bits) - ahead;
+                long bit = behind <= HISTORY ? 1L << (behind - 1) : 0;
+                /**
+                 * Late uplinks fill the gaps, while a delivered counter of the first window coming from further back starts a new session
+                 */
+                boolean rejoined = (shard.seen[slot] & bit) != 0 && behind > window && expected - behind < window;
+                if (bit != 0 && behind <= expected && !rejoined) {
+                    long extended = expected - behind;
+                    if ((shard.seen[slot] & bit) == 0) {
+                        shard.seen[slot] |= bit;
+                        notify(() -> listener.deliver(_devId, extended, _message));
+                    }
+                } else {
+                    advance(shard, slot, _devId, maxPending(shard, slot) + 1);
+                    long last = shard.expected[slot] - 1;
+                    notify(() -> listener.reset(_devId, last, counter));
+                    shard.expected[slot] = counter;
+                    shard.seen[slot] = 0;
+                    deliver(shard, slot, _devId, counter, _message);
+                    return;
+                }
+            }
+            if (((expected - 1) >>> bits) < ((shard.expected[slot] - 1) >>> bits) && expected > 0) {
+                notify(() -> listener.rollover(_devId, bits));
+            }
+        }
+    }
+
+    /**
+     * Set the counter width of a device, like LorawanDevice.isUses32BitFCnt
+     *
+     * @param _devId The devId
+     * @param _uses32BitFCnt Whether the device uses 32-bit counters
+     */
+    public void setUses32BitFCnt(String _devId, boolean _uses32BitFCnt) {
+        long key = DeviceKey.of(_devId);
+        Shard shard = shard(key);
+        synchronized (shard) {
+            int slot = shard.slot(key);
+            if (_uses32BitFCnt) {
+                shard.flags[slot] |= WIDE;
+            } else {
+                shard.flags[slot] &= ~WIDE;
+            }
+        }
+    }
+
+    /**
+     * Forget the counters of a device, after it (re)activated. The uplinks waiting in its window are delivered first.
+     *
+     * @param _devId The devId
+     */
+    public void reset(String _devId) {
+        long key = DeviceKey.of(_devId);
+        Shard shard = shard(key);
+        synchronized (shard) {
+            int slot = shard.index.get(key);
+            if (slot == LongIntMap.MISSING) {
+                return;
+            }
+            if (shard.pending[slot] != null) {
+                advance(shard, slot, _devId, maxPending(shard, slot) + 1);
+            }
+            shard.flags[slot] &= ~STARTED;
+        }
+    }
+
+    /**
+     * Get the next counter expected from a device
+     *
+     * @param _devId The devId
+     * @return the extended counter, or -1 if the device is unknown
+     */
+    public long getExpected(String _devId) {
+        long key = DeviceKey.of(_devId);
+        Shard shard = shard(key);
+        synchronized (shard) {
+            int slot = shard.index.get(key);
+            if (slot == LongIntMap.MISSING || (shard.flags[slot] & STARTED) == 0) {
+                return -1;
+            }
+            return shard.expected[slot];
+        }
+    }
+
+    public int getDevices() {
+        int devices = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                devices += shard.index.size();
+            }
+        }
+        return devices;
+    }
+
+    /**
+     * Deliver the uplinks that waited longer than maxDelay, reporting the counters still missing before them as gaps.
+     * Called periodically when a delay is set.
+     */
+    public void expire() {
+        long now = System.currentTimeMillis();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (int slot = 0; shard.waiting > 0 && slot < shard.count; slot++) {
+                    Pending pending = shard.pending[slot];
+                    if (pending != null && now - pending.since >= maxDelay) {
+                        advance(shard, slot, pending.devId, maxPending(shard, slot) + 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the periodic expiration. Uplinks still waiting stay in their window.
+     */
+    @Override
+    public void close() {
+        if (sweep != null) {
+            sweep.cancel(false);
+        }
+    }
+
+    private Shard shard(long _key) {
+        return shards[(int) (_key >>> 58)];
+    }
+
+    /**
+     * Deliver the next expected uplink
+     */
+    private void deliver(Shard _shard, int _slot, String _devId, long _counter, T _message) {
+        _shard.expected[_slot] = _counter + 1;
+        _shard.seen[_slot] = (_shard.seen[_slot] << 1) | 1;
+        notify(() -> listener.deliver(_devId, _counter, _message));
+    }
+
+    /**
+     * Deliver the uplinks waiting right after the expected counter
+     */
+    @SuppressWarnings("unchecked")
+    private void drain(Shard _shard, int _slot, String _devId) {
+        Pending pending = _shard.pending[_slot];
+        if (pending == null) {
+            return;
+        }
+        Object next;
+        while ((next = pending.take(_shard.expected[_slot])) != null) {
+            deliver(_shard, _slot, _devId, _shard.expected[_slot], (T) next);
+        }
+        if (pending.count == 0) {
+            release(_shard, _slot);
+        } else {
+            pending.since = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Move the expected counter to a target, delivering the uplinks waiting before it and reporting the missing ones as gaps
+     */
+    @SuppressWarnings("unchecked")
+    private void advance(Shard _shard, int _slot, String _devId, long _target) {
+        Pending pending = _shard.pending[_slot];
+        long missing = -1;
+        while (_shard.expected[_slot] < _target) {
+            long expected = _shard.expected[_slot];
+            Object next = pending == null ? null : pending.take(expected);
+            if (next != null) {
+                if (missing >= 0) {
+                    long first = missing;
+                    notify(() -> listener.gap(_devId, first, expected - 1));
+                    missing = -1;
+                }
+                deliver(_shard, _slot, _devId, expected, (T) next);
+                continue;
+            }
+            if (missing < 0) {
+                missing = expected;
+            }
+            if (pending == null || pending.count == 0) {
+                long skipped = _target - expected;
+                _shard.seen[_slot] = skipped >= HISTORY ? 0 : _shard.seen[_slot] << skipped;
+                _shard.expected[_slot] = _target;
+            } else {
+                _shard.seen[_slot] <<= 1;
+                _shard.expected[_slot] = expected + 1;
+            }
+        }
+        if (missing >= 0) {
+            long first = missing;
+            notify(() -> listener.gap(_devId, first, _target - 1));
+        }
+        if (pending != null && pending.count == 0) {
+            release(_shard, _slot);
+        }
+    }
+
+    /**
+     * Keep an uplink ahead of the expected counter in the window
+     */
+    private void hold(Shard _shard, int _slot, String _devId, long _counter, T _message) {
+        Pending pending = _shard.pending[_slot];
+        if (pending == null) {
+            pending = new Pending(_devId, window);
+            _shard.pending[_slot] = pending;
+            _shard.waiting++;
+        }
+        pending.put(_counter, _message);
+    }
+
+    private long maxPending(Shard _shard, int _slot) {
+        Pending pending = _shard.pending[_slot];
+        return pending == null ? _shard.expected[_slot] - 1 : pending.max;
+    }
+
+    private void release(Shard _shard, int _slot) {
+        _shard.pending[_slot] = null;
+        _shard.waiting--;
+    }
+
+    private void notify(Runnable _call) {
+        try {
+            _call.run();
+        } catch (Throwable ex) {
+            listener.error(ex);
+        }
+    }
+
+    /**
+     * The devices of a lock, in parallel arrays indexed by slot
+     */
+    private static final class Shard {
+
+        private final boolean wide;
+        private final LongIntMap index = new LongIntMap(16);
+        private long[] expected = new long[16];
+        private long[] seen = new long[16];
+        private byte[] flags = new byte[16];
+        private Pending[] pending = new Pending[16];
+        private int count;
+        private int waiting;
+
+        private Shard(boolean _wide) {
+            wide = _wide;
+        }
+
+        /**
+         * Get the slot of a device, adding it if needed
+         */
+        private int slot(long _key) {
+            int slot = index.get(_key);
+            if (slot != LongIntMap.MISSING) {
+                return slot;
+            }
+            if (count == expected.length) {
+                int capacity = count * 2;
+                expected = Arrays.copyOf(expected, capacity);
+                seen = Arrays.copyOf(seen, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+                pending = Arrays.copyOf(pending, capacity);
+            }
+            slot = count++;
+            index.put(_key, slot);
+            flags[slot] = wide ? WIDE : 0;
+            return slot;
+        }
+
+    }
+
+    /**
+     * The uplinks of a device waiting for the missing ones, in a ring indexed by counter
+     */
+    private static final class Pending {
+
+        private final String devId;
+        private final Object[] frames;
+        private final long[] counters;
+        private int count;
+        private long max = Long.MIN_VALUE;
+        private long since = System.currentTimeMillis();
+
+        private Pending(String _devId, int _window) {
+            devId = _devId;
+            frames = new Object[_window];
+            counters = new long[_window];
+        }
+
+        private void put(long _counter, Object _frame) {
+            int i = (int) (_counter % frames.length);
+            if (frames[i] != null) {
+                /**
+                 * A repeat of a waiting uplink
+                 */
+                return;
+            }
+            frames[i] = _frame;
+            counters[i] = _counter;
+            count++;
+            max = Math.max(max, _counter);
+        }
+
+        private Object take(long _counter) {
+            int i = (int) (_counter % frames.length);
+            Object frame = frames[i];
+            if (frame == null || counters[i] != _counter) {
+                return null;
+            }
+            frames[i] = null;
+            count--;
+            return frame;
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.decoding;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.messages.ActivationMessage;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+
+/**
+ * Turns the json received from the handler into messages.
+ * Implementations must be thread-safe, as a client may decode several deliveries concurrently.
+ */
+public interface Decoder {
+
+    /**
+     * Decode an uplink message
+     *
+     * @param _json The json uplink, as received. Implementations may keep a reference to it.
+     * @return the uplink message
+     * @throws IOException in case the json is malformed
+     */
+    public UplinkMessage decodeUplink(byte[] _json) throws IOException;
+
+    /**
+     * Decode an activation message
+     *
+     * @param _json The json activation, as received
+     * @return the activation message
+     * @throws IOException in case the json is malformed
+     */
+    public ActivationMessage decodeActivation(byte[] _json) throws IOException;
+
+    /**
+     * Read only the frame counter of an uplink, skipping the rest of it
+     *
+     * @param _json The json uplink, as received
+     * @return the frame counter, or -1 if the uplink has none
+     * @throws IOException in case the json is malformed
+     */
+    public default long decodeCounter(byte[] _json) throws IOException {
+        try (JsonParser parser = AbstractClient.MAPPER.getFactory().createParser(_json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("An uplink must be an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("counter".equals(name) && value == JsonToken.VALUE_NUMBER_INT) {
+                    return parser.getLongValue();
+                }
+                parser.skipChildren();
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Give back an uplink once every handler is done with it. Decoders recycling their messages override this.
+     *
+     * @param _message An uplink returned by decodeUplink, which must not be used afterwards
+     */
+    public default void release(UplinkMessage _message) {
+
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.decoding;
+
+import java.io.IOException;
+import org.thethingsnetwork.data.common.messages.LazyUplinkMessage;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+
+/**
+ * StreamingDecoder returning LazyUplinkMessage views.
+ * Only the top-level scalars of an uplink are decoded upfront, payload_fields and metadata are decoded on first access.
+ */
+public class LazyDecoder extends StreamingDecoder {
+
+    @Override
+    public UplinkMessage decodeUplink(byte[] _json) throws IOException {
+        return new LazyUplinkMessage(_json, getFieldsReader(), getMetadataReader());
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.decoding;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.messages.ActivationMessage;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+
+/**
+ * Decoder using the reflective binding of AbstractClient.MAPPER
+ */
+public class MapperDecoder implements Decoder {
+
+    private final ObjectReader uplink;
+    private final ObjectReader activation;
+
+    /**
+     * Create a new MapperDecoder using AbstractClient.MAPPER
+     */
+    public MapperDecoder() {
+        this(AbstractClient.MAPPER.reader());
+    }
+
+    /**
+     * Create a new MapperDecoder
+     *
+     * @param _reader The reader to derive the message readers from
+     */
+    public MapperDecoder(ObjectReader _reader) {
+        uplink = _reader.forType(UplinkMessage.class);
+        activation = _reader.forType(ActivationMessage.class);
+    }
+
+    @Override
+    public UplinkMessage decodeUplink(byte[] _json) throws IOException {
+        return uplink.readValue(_json);
+    }
+
+    @Override
+    public ActivationMessage decodeActivation(byte[] _json) throws IOException {
+        return activation.readValue(_json);
+    }
+
+}
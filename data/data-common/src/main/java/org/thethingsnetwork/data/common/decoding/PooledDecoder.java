@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.decoding;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+
+/**
+ * StreamingDecoder recycling its uplinks.
+ * Released uplinks are kept in a pool and filled in place by the next decoded ones, along with their Metadata, Gateway instances and PayloadFields.
+ * An uplink, and anything obtained from it, is only valid until it is released: handlers must copy what they need before returning.
+ */
+public class PooledDecoder extends StreamingDecoder {
+
+    private final ObjectReader uplink = MAPPER.readerFor(UplinkMessage.class);
+    private final BlockingQueue<UplinkMessage> pool;
+
+    /**
+     * Create a new PooledDecoder keeping up to 256 uplinks
+     */
+    public PooledDecoder() {
+        this(256);
+    }
+
+    /**
+     * Create a new PooledDecoder
+     *
+     * @param _capacity The maximum number of released uplinks to keep. Should be above the number of uplinks handled concurrently.
+     */
+    public PooledDecoder(int _capacity) {
+        pool = new ArrayBlockingQueue<>(_capacity);
+    }
+
+    @Override
+    public UplinkMessage decodeUplink(byte[] _json) throws IOException {
+        UplinkMessage message = pool.poll();
+        if (message == null) {
+            return super.decodeUplink(_json);
+        }
+        try {
+            return uplink.withValueToUpdate(message).readValue(_json);
+        } catch (IOException | RuntimeException ex) {
+            /**
+             * Partially filled, but will be fully reset when reused
+             */
+            pool.offer(message);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void release(UplinkMessage _message) {
+        if (_message != null && _message.getClass() == UplinkMessage.class) {
+            pool.offer(_message);
+        }
+    }
+
+    /**
+     * Get the number of uplinks ready to be reused
+     *
+     * @return the number of pooled uplinks
+     */
+    public int getPoolSize() {
+        return pool.size();
+    }
+
+}
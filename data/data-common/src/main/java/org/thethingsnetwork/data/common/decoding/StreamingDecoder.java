@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.decoding;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.Metadata;
+import org.thethingsnetwork.data.common.messages.ActivationMessage;
+import org.thethingsnetwork.data.common.messages.PayloadFields;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+
+/**
+ * Decoder using the hand-written streaming deserializers of the messages instead of reflection.
+ * Decoded messages hold the same values, and serialize to the same json, as the ones of the MapperDecoder.
+ */
+public class StreamingDecoder extends MapperDecoder {
+
+    /**
+     * AbstractClient.MAPPER, with the streaming deserializers registered
+     */
+    protected static final ObjectMapper MAPPER = AbstractClient.MAPPER.copy()
+            .registerModule(new SimpleModule("ttn-streaming")
+                    .addDeserializer(UplinkMessage.class, new UplinkMessage.Deserializer())
+                    .addDeserializer(ActivationMessage.class, new ActivationMessage.Deserializer())
+                    .addDeserializer(Metadata.class, new Metadata.Deserializer())
+            );
+
+    private final ObjectReader fields = MAPPER.readerFor(PayloadFields.class);
+    private final ObjectReader metadata = MAPPER.readerFor(Metadata.class);
+
+    /**
+     * Create a new StreamingDecoder
+     */
+    public StreamingDecoder() {
+        super(MAPPER.reader());
+    }
+
+    /**
+     * Get the reader used for payload_fields
+     *
+     * @return a reader for a PayloadFields
+     */
+    protected ObjectReader getFieldsReader() {
+        return fields;
+    }
+
+    /**
+     * Get the reader used for metadata
+     *
+     * @return a reader for a Metadata
+     */
+    protected ObjectReader getMetadataReader() {
+        return metadata;
+    }
+
+}
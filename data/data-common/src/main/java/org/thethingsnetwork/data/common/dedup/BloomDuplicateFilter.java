@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dedup;
+
+import java.util.Arrays;
+import org.thethingsnetwork.data.common.collections.DeviceKey;
+import org.thethingsnetwork.data.common.collections.LongIntMap;
+
+/**
+ * Probabilistic duplicate filter for very large fleets, with a fixed memory budget whatever the number of devices.
+ * Uplinks are hashed by device and counter into two Bloom filters: the current one and the previous one, swapped every window,
+ * so that a repeat is dropped if it comes within one window of the original, and maybe up to two.
+ * <p>
+ * A false positive drops an uplink that was never seen. With m bits per filter, n uplinks per window and k hashes,
+ * the rate is about (1 - e^(-kn/m))^k: at 20 bits (2.5 bytes) per uplink it is about 0.01%, for 5 bytes per uplink of a window in total.
+ * <p>
+ * A reset starts a new session of the device, mixed into its hashes, so that the counters of the new session never match the ones of the old.
+ * Each filter has a side table of the sessions started during its window, rotated with it, for 24 to 48 bytes per reset of the last two windows.
+ */
+public class BloomDuplicateFilter implements DuplicateFilter {
+
+    private final long window;
+    private final long bits;
+    private final int hashes;
+    private long[] current;
+    private long[] previous;
+    private LongIntMap currentSessions = new LongIntMap(16);
+    private LongIntMap previousSessions = new LongIntMap(16);
+    private int sessions;
+    private long rotated = System.currentTimeMillis();
+
+    /**
+     * Create a new BloomDuplicateFilter
+     *
+     * @param _bytes The memory budget, shared by the two filters
+     * @param _expected The expected number of uplinks per window, used to choose the number of hashes
+     * @param _window The time after which a filter is replaced, in ms
+     */
+    public BloomDuplicateFilter(long _bytes, long _expected, long _window) {
+        if (_bytes < 16 || _expected < 1 || _window < 1) {
+            throw new IllegalArgumentException("The budget, the expected uplinks and the window must be positive");
+        }
+        long words = _bytes / 16;
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The budget is too large");
+        }
+        window = _window;
+        bits = words * 64;
+        hashes = (int) Math.max(1, Math.min(16, Math.round((double) bits / _expected * Math.log(2))));
+        current = new long[(int) words];
+        previous = new long[(int) words];
+    }
+
+    @Override
+    public synchronized boolean isDuplicate(String _devId, long _counter) {
+        rotate();
+        long key = DeviceKey.of(_devId);
+        int session = currentSessions.get(key);
+        long h1 = hash(key, session, _counter);
+        long h2 = DeviceKey.mix(h1) | 1;
+        /**
+         * After a reset during this window, the previous filter only holds uplinks of older sessions
+         */
+        boolean seenBefore = session == LongIntMap.MISSING;
+        long p1 = h1;
+        long p2 = h2;
+        int before = previousSessions.get(key);
+        if (seenBefore && before != LongIntMap.MISSING) {
+            p1 = hash(key, before, _counter);
+            p2 = DeviceKey.mix(p1) | 1;
+        }
+        boolean seen = true;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((current[word] & mask) == 0) {
+                seen = false;
+                current[word] |= mask;
+            }
+            if (seenBefore) {
+                long previousBit = Math.floorMod(p1 + i * p2, bits);
+                seenBefore = (previous[(int) (previousBit >>> 6)] & (1L << previousBit)) != 0;
+            }
+        }
+        return seen || seenBefore;
+    }
+
+    /**
+     * Start a new session of a device: the counters it sent before are never taken for repeats of the ones it sends after
+     *
+     * @param _devId The devId of the device
+     */
+    @Override
+    public synchronized void reset(String _devId) {
+        rotate();
+        sessions = (sessions + 1) & Integer.MAX_VALUE;
+        currentSessions.put(DeviceKey.of(_devId), sessions);
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    /**
+     * Estimate the false positive rate of a window
+     *
+     * @param _uplinks The number of uplinks recorded during a window
+     * @return the probability that a new uplink is taken for a repeat
+     */
+    public double getFalsePositiveRate(long _uplinks) {
+        double single = Math.pow(1 - Math.exp(-(double) hashes * _uplinks / bits), hashes);
+        return 1 - (1 - single) * (1 - single);
+    }
+
+    private void rotate() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - rotated;
+        if (elapsed >= window) {
+            long[] recycled = previous;
+            Arrays.fill(recycled, 0);
+            if (elapsed >= 2 * window) {
+                Arrays.fill(current, 0);
+                currentSessions = new LongIntMap(16);
+            }
+            previous = current;
+            current = recycled;
+            previousSessions = currentSessions;
+            currentSessions = new LongIntMap(16);
+            rotated = now;
+        }
+    }
+
+    private static long hash(long _key, int _session, long _counter) {
+        long device = _session == LongIntMap.MISSING ? _key : DeviceKey.mix(_key + _session);
+        return DeviceKey.mix(device ^ (_counter * 0x9E3779B97F4A7C15L));
+    }
+
+}
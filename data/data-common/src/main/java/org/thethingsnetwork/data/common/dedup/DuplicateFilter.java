@@ -0,0 +1,49 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dedup;
+
+/**
+ * Remembers the uplinks of each device by frame counter, so that repeats delivered after a reconnect or a broker redelivery can be dropped.
+ * Retries of confirmed uplinks carry the counter of the original, and are dropped as well when the original was received.
+ * Implementations must be thread-safe.
+ */
+public interface DuplicateFilter {
+
+    /**
+     * Record an uplink
+     *
+     * @param _devId The devId the uplink comes from
+     * @param _counter The frame counter of the uplink
+     * @return true if this uplink was already recorded
+     */
+    public boolean isDuplicate(String _devId, long _counter);
+
+    /**
+     * Forget the counters of a device, after it (re)activated and restarted counting
+     *
+     * @param _devId The devId of the device
+     */
+    public void reset(String _devId);
+
+}
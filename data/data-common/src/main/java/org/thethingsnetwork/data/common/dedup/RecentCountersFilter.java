@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dedup;
+
+import java.util.Arrays;
+import org.thethingsnetwork.data.common.collections.DeviceKey;
+import org.thethingsnetwork.data.common.collections.LongIntMap;
+
+/**
+ * Exact duplicate filter keeping the last counters of each device in a small ring.
+ * A repeat is dropped as long as fewer than depth newer uplinks of its device were recorded in between.
+ * Devices are forgotten beyond maxDevices, the ones not seen again since the last sweep first, like a CLOCK cache.
+ * Devices are keyed by DeviceKey in primitive arrays, for about 41 to 65 + 4 * depth bytes per device.
+ * For very large fleets, see BloomDuplicateFilter.
+ */
+public class RecentCountersFilter implements DuplicateFilter {
+
+    public static final int DEFAULT_DEPTH = 8;
+
+    private final int maxDevices;
+    private final int depth;
+    /**
+     * Per device: the ring, followed by the next position and the number of counters held
+     */
+    private final int stride;
+    private final LongIntMap index;
+    private long[] keys;
+    private int[] rings;
+    private boolean[] referenced;
+    private int count;
+    private int hand;
+
+    /**
+     * Create a new RecentCountersFilter
+     *
+     * @param _maxDevices The maximum number of devices remembered
+     * @param _depth The number of counters remembered per device
+     */
+    public RecentCountersFilter(int _maxDevices, int _depth) {
+        if (_maxDevices < 1 || _depth < 1) {
+            throw new IllegalArgumentException("The number of devices and the depth must be positive");
+        }
+        if (_maxDevices > Integer.MAX_VALUE / (_depth + 2)) {
+            throw new IllegalArgumentException("Too many devices for this depth");
+        }
+        maxDevices = _maxDevices;
+        depth = _depth;
+        stride = _depth + 2;
+        int capacity = Math.min(_maxDevices, 1024);
+        index = new LongIntMap(capacity);
+        keys = new long[capacity];
+        rings = new int[capacity * stride];
+        referenced = new boolean[capacity];
+    }
+
+    /**
+     * Create a new RecentCountersFilter remembering the last 8 counters of each device
+     *
+     * @param _maxDevices The maximum number of devices remembered
+     */
+    public RecentCountersFilter(int _maxDevices) {
+        this(_maxDevices, DEFAULT_DEPTH);
+    }
+
+    @Override
+    public synchronized boolean isDuplicate(String _devId, long _counter) {
+        int counter = (int) _counter;
+        long key = DeviceKey.of(_devId);
+        int slot = index.get(key);
+        if (slot == LongIntMap.MISSING) {
+            slot = add(key);
+        } else {
+            referenced[slot] = true;
+        }
+        int ring = slot * stride;
+        int size = rings[ring + depth + 1];
+        for (int i = 0; i < size; i++) {
+            if (rings[ring + i] == counter) {
+                return true;
+            }
+        }
+        int position = rings[ring + depth];
+        rings[ring + position] = counter;
+        rings[ring + depth] = (position + 1) % depth;
+        if (size < depth) {
+            rings[ring + depth + 1] = size + 1;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void reset(String _devId) {
+        int slot = index.remove(DeviceKey.of(_devId));
+        if (slot == LongIntMap.MISSING) {
+            return;
+        }
+        /**
+         * Keep the slots dense: the last device takes the freed one
+         */
+        int last = --count;
+        if (slot != last) {
+            keys[slot] = keys[last];
+            referenced[slot] = referenced[last];
+            System.arraycopy(rings, last * stride, rings, slot * stride, stride);
+            index.put(keys[slot], slot);
+        }
+        if (hand >= count) {
+            hand = 0;
+        }
+    }
+
+    public synchronized int getDevices() {
+        return count;
+    }
+
+    /**
+     * Give a slot to a new device, evicting one when full
+     */
+    private int add(long _key) {
+        int slot;
+        if (count < maxDevices) {
+            if (count == keys.length) {
+                int capacity = (int) Math.min(maxDevices, keys.length * 2L);
+                keys = Arrays.copyOf(keys, capacity);
+                rings = Arrays.copyOf(rings, capacity * stride);
+                referenced = Arrays.copyOf(referenced, capacity);
+            }
+            slot = count++;
+        } else {
+            while (referenced[hand]) {
+                referenced[hand] = false;
+                hand = (hand + 1) % count;
+            }
+            slot = hand;
+            hand = (hand + 1) % count;
+            index.remove(keys[slot]);
+        }
+        keys[slot] = _key;
+        referenced[slot] = false;
+        Arrays.fill(rings, slot * stride, (slot + 1) * stride, 0);
+        index.put(_key, slot);
+        return slot;
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatcher with a single bounded queue shared by a fixed pool of threads.
+ * Tasks run in parallel, with no per-device ordering. See StripedDispatcher for ordered delivery.
+ */
+public class BoundedDispatcher implements Dispatcher {
+
+    private final TaskQueue queue;
+
+    /**
+     * Create a new BoundedDispatcher with one thread per available core
+     *
+     * @param _capacity The max number of queued tasks
+     * @param _policy What to do when the queue is full
+     */
+    public BoundedDispatcher(int _capacity, OverflowPolicy _policy) {
+        this(Runtime.getRuntime().availableProcessors(), _capacity, _policy);
+    }
+
+    /**
+     * Create a new BoundedDispatcher
+     *
+     * @param _threads The number of threads running the tasks
+     * @param _capacity The max number of queued tasks
+     * @param _policy What to do when the queue is full
+     */
+    public BoundedDispatcher(int _threads, int _capacity, OverflowPolicy _policy) {
+        if (_threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        queue = new TaskQueue("ttn-dispatch", _threads, _capacity, _policy);
+    }
+
+    @Override
+    public void dispatch(String _devId, Runnable _task) {
+        queue.offer(_task, null);
+    }
+
+    @Override
+    public void dispatch(String _devId, Runnable _task, Runnable _dropped) {
+        queue.offer(_task, _dropped);
+    }
+
+    @Override
+    public boolean awaitTermination(long _timeout, TimeUnit _unit) throws InterruptedException {
+        return queue.awaitIdle(_timeout, _unit);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.getDepth();
+    }
+
+    /**
+     * Get the number of tasks dropped because of the overflow policy
+     *
+     * @return the number of dropped tasks
+     */
+    public long getDropped() {
+        return queue.getDropped();
+    }
+
+}
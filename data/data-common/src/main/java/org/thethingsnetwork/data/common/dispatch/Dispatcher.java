@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the handler invocations of a data client.
+ * Tasks are keyed by devId so that implementations can decide how work from one device is ordered.
+ */
+public interface Dispatcher {
+
+    /**
+     * Schedule a task
+     *
+     * @param _devId The devId this task relates to, or null if it is not device-bound
+     * @param _task The task to run
+     * @throws java.util.concurrent.RejectedExecutionException if the task was refused because the dispatcher is overloaded
+     */
+    public void dispatch(String _devId, Runnable _task);
+
+    /**
+     * Schedule a task, with a callback run in its place if the dispatcher drops or refuses it.
+     * The callback runs on the calling thread, and is where the resources held by the task get released.
+     *
+     * @param _devId The devId this task relates to, or null if it is not device-bound
+     * @param _task The task to run
+     * @param _dropped Run instead of the task if it will never run
+     */
+    public default void dispatch(String _devId, Runnable _task, Runnable _dropped) {
+        try {
+            dispatch(_devId, _task);
+        } catch (RejectedExecutionException ex) {
+            _dropped.run();
+        }
+    }
+
+    /**
+     * Wait for the scheduled tasks to complete
+     *
+     * @param _timeout The max waiting time
+     * @param _unit The unit of the timeout
+     * @return true if all tasks completed before the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long _timeout, TimeUnit _unit) throws InterruptedException;
+
+    /**
+     * Get the number of tasks queued or running
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth();
+
+}
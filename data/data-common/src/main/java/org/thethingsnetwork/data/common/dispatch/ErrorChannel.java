@@ -0,0 +1,242 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.thethingsnetwork.data.common.events.ErrorHandler;
+
+/**
+ * Bounded channel delivering errors to the error handlers on its own thread, so that an error storm never competes with the dispatch of the uplinks.
+ * Identical errors, of the same class and with the same message, are coalesced: the first one of a window is delivered,
+ * and the others are counted and delivered once the window ends, as a single RepeatedErrorException.
+ * Errors that do not fit in the channel are counted and delivered the same way.
+ * The thread is started on demand, and stops once there is nothing left to deliver.
+ */
+public class ErrorChannel {
+
+    public static final long DEFAULT_WINDOW = 1000;
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final List<ErrorHandler> handlers;
+    private final long window;
+    private final int capacity;
+    private final BlockingQueue<Throwable> queue;
+    private final Map<Key, Occurrences> windows = new ConcurrentHashMap<>();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Create a new ErrorChannel
+     *
+     * @param _handlers The error handlers, read on every delivery
+     * @param _window The coalescing window, in ms
+     * @param _capacity The number of errors waiting for delivery, also bounding the number of distinct errors tracked per window
+     */
+    public ErrorChannel(List<ErrorHandler> _handlers, long _window, int _capacity) {
+        if (_window < 1 || _capacity < 1) {
+            throw new IllegalArgumentException("The window and capacity must be positive");
+        }
+        handlers = _handlers;
+        window = _window;
+        capacity = _capacity;
+        queue = new ArrayBlockingQueue<>(_capacity);
+    }
+
+    public ErrorChannel(List<ErrorHandler> _handlers) {
+        this(_handlers, DEFAULT_WINDOW, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Report an error. Never blocks.
+     *
+     * @param _error The error
+     */
+    public void report(Throwable _error) {
+        if (handlers.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        Key key = new Key(_error);
+        if (windows.size() >= capacity && !windows.containsKey(key)) {
+            dropped.incrementAndGet();
+            wake();
+            return;
+        }
+        Occurrences[] ended = new Occurrences[1];
+        boolean[] fresh = new boolean[1];
+        windows.compute(key, (Key _key, Occurrences _current) -> {
+            if (_current != null && _current.repeat(now, _error)) {
+                return _current;
+            }
+            ended[0] = _current;
+            fresh[0] = true;
+            return new Occurrences(now);
+        });
+        if (!fresh[0]) {
+            return;
+        }
+        if (ended[0] != null) {
+            ended[0].close();
+        }
+        if (!queue.offer(_error)) {
+            dropped.incrementAndGet();
+        }
+        wake();
+    }
+
+    private void wake() {
+        if (running.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::run, "ttn-errors");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                Throwable error = queue.poll(window, TimeUnit.MILLISECONDS);
+                if (error != null) {
+                    deliver(error);
+                }
+            } catch (InterruptedException ex) {
+                running.set(false);
+                return;
+            }
+            sweep(System.nanoTime());
+            if (queue.isEmpty() && windows.isEmpty() && dropped.get() == 0) {
+                running.set(false);
+                /**
+                 * An error reported after the checks above restarts the thread, unless this one takes it
+                 */
+                if (queue.isEmpty() || !running.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void sweep(long _now) {
+        for (Map.Entry<Key, Occurrences> entry : windows.entrySet()) {
+            Occurrences occurrences = entry.getValue();
+            if (occurrences.isExpired(_now) && windows.remove(entry.getKey(), occurrences)) {
+                occurrences.close();
+            }
+        }
+        int lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            deliver(new RepeatedErrorException(lost, window, null));
+        }
+    }
+
+    private void deliver(Throwable _error) {
+        for (ErrorHandler handler : handlers) {
+            handler.safelyHandle(_error);
+        }
+    }
+
+    private static final class Key {
+
+        private final Class<?> type;
+        private final String message;
+
+        public Key(Throwable _error) {
+            type = _error.getClass();
+            message = _error.getMessage();
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + Objects.hashCode(message);
+        }
+
+        @Override
+        public boolean equals(Object _other) {
+            if (!(_other instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) _other;
+            return type == other.type && Objects.equals(message, other.message);
+        }
+
+    }
+
+    /**
+     * The repeats of an error during one window
+     */
+    private final class Occurrences {
+
+        private final long start;
+        private int count;
+        private Throwable last;
+        private boolean closed;
+
+        public Occurrences(long _start) {
+            start = _start;
+        }
+
+        public synchronized boolean repeat(long _now, Throwable _error) {
+            if (closed || isExpired(_now)) {
+                return false;
+            }
+            count++;
+            last = _error;
+            return true;
+        }
+
+        public boolean isExpired(long _now) {
+            return _now - start >= TimeUnit.MILLISECONDS.toNanos(window);
+        }
+
+        /**
+         * End the window, queueing the summary of its repeats
+         */
+        public void close() {
+            RepeatedErrorException summary;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (count == 0) {
+                    return;
+                }
+                summary = new RepeatedErrorException(count, window, last);
+            }
+            if (!queue.offer(summary)) {
+                dropped.addAndGet(count);
+            }
+        }
+
+    }
+
+}
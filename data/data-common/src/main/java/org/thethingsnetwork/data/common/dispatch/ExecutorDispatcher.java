@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatcher running every task on a provided ExecutorService.
+ * Tasks run as soon as the executor allows, with no ordering guarantee.
+ */
+public class ExecutorDispatcher implements Dispatcher {
+
+    private final ExecutorService executor;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Create a new ExecutorDispatcher
+     *
+     * @param _executor The executor to run the tasks on
+     */
+    public ExecutorDispatcher(ExecutorService _executor) {
+        if (_executor == null) {
+            throw new NullPointerException();
+        }
+        executor = _executor;
+    }
+
+    @Override
+    public void dispatch(String _devId, Runnable _task) {
+        pending.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    _task.run();
+                } finally {
+                    done();
+                }
+            });
+        } catch (RuntimeException ex) {
+            done();
+            throw ex;
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long _timeout, TimeUnit _unit) throws InterruptedException {
+        long deadline = System.nanoTime() + _unit.toNanos(_timeout);
+        synchronized (pending) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(pending, remaining);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return pending.get();
+    }
+
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            synchronized (pending) {
+                pending.notifyAll();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+/**
+ * What a bounded dispatcher does when a task arrives while its queue is full.
+ * Dropped tasks are counted, and their drop callback runs in their place: the clients report them to their error handlers and the dispatch.dropped metric.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Block the calling (transport) thread until there is room. This stalls the MQTT or AMQP reads and pushes back to the broker.
+     */
+    BLOCK,
+    /**
+     * Drop the oldest queued task to make room for the new one
+     */
+    DROP_OLDEST,
+    /**
+     * Refuse the new task. Without drop callback, dispatch throws a RejectedExecutionException.
+     */
+    DROP_NEWEST
+
+}
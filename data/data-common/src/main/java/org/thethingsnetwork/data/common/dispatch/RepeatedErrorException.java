@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+/**
+ * Summary of the errors coalesced by an ErrorChannel: the same error was reported again, getCount() times, during a window
+ */
+public class RepeatedErrorException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int count;
+    private final long window;
+
+    /**
+     * Create a new RepeatedErrorException
+     *
+     * @param _count The number of coalesced occurrences
+     * @param _window The coalescing window, in ms
+     * @param _last The last occurrence, or null when it was dropped
+     */
+    public RepeatedErrorException(int _count, long _window, Throwable _last) {
+        super(_count + " more in " + _window + " ms: " + (_last == null ? "errors dropped" : _last.toString()), _last, false, false);
+        count = _count;
+        window = _window;
+    }
+
+    /**
+     * Get the number of coalesced occurrences
+     *
+     * @return the number of occurrences not delivered on their own
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the coalescing window
+     *
+     * @return the window, in ms
+     */
+    public long getWindow() {
+        return window;
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispatcher striping tasks by devId across a fixed set of single-threaded queues.
+ * All tasks of one device run on the same stripe, in the order they were dispatched, while different devices run in parallel.
+ */
+public class StripedDispatcher implements Dispatcher {
+
+    private final TaskQueue[] stripes;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Create a new unbounded StripedDispatcher with one stripe per available core
+     */
+    public StripedDispatcher() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new unbounded StripedDispatcher
+     *
+     * @param _stripes The number of stripes (threads) to use
+     */
+    public StripedDispatcher(int _stripes) {
+        this(_stripes, Integer.MAX_VALUE, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Create a new bounded StripedDispatcher
+     *
+     * @param _stripes The number of stripes (threads) to use
+     * @param _capacity The max number of queued tasks per stripe
+     * @param _policy What to do when a stripe is full
+     */
+    public StripedDispatcher(int _stripes, int _capacity, OverflowPolicy _policy) {
+        if (_stripes < 1) {
+            throw new IllegalArgumentException("At least one stripe is required");
+        }
+        stripes = new TaskQueue[_stripes];
+        for (int i = 0; i < _stripes; i++) {
+            stripes[i] = new TaskQueue("ttn-dispatch-" + i, 1, _capacity, _policy);
+        }
+    }
+
+    @Override
+    public void dispatch(String _devId, Runnable _task) {
+        stripes[stripe(_devId)].offer(_task, null);
+    }
+
+    @Override
+    public void dispatch(String _devId, Runnable _task, Runnable _dropped) {
+        stripes[stripe(_devId)].offer(_task, _dropped);
+    }
+
+    @Override
+    public boolean awaitTermination(long _timeout, TimeUnit _unit) throws InterruptedException {
+        long deadline = System.nanoTime() + _unit.toNanos(_timeout);
+        for (TaskQueue stripe : stripes) {
+            if (!stripe.awaitIdle(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        int depth = 0;
+        for (TaskQueue stripe : stripes) {
+            depth += stripe.getDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * Get the number of tasks dropped because of the overflow policy
+     *
+     * @return the number of dropped tasks
+     */
+    public long getDropped() {
+        long dropped = 0;
+        for (TaskQueue stripe : stripes) {
+            dropped += stripe.getDropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * Get the number of stripes
+     *
+     * @return the number of stripes
+     */
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    /**
+     * Tasks without devId are spread round-robin since they carry no ordering constraint
+     */
+    private int stripe(String _devId) {
+        if (_devId == null) {
+            return (next.getAndIncrement() & Integer.MAX_VALUE) % stripes.length;
+        }
+        int hash = _devId.hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % stripes.length;
+    }
+
+}
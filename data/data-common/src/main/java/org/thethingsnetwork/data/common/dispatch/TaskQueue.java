@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded task queue consumed by a fixed number of daemon worker threads.
+ * Every task can come with a callback run in its place if the overflow policy drops it.
+ */
+class TaskQueue {
+
+    /**
+     * Stands for a task without drop callback, as ArrayDeque can not hold nulls
+     */
+    private static final Runnable NONE = () -> {
+    };
+
+    private final ArrayDeque<Runnable> tasks;
+    private final ArrayDeque<Runnable> droppedCallbacks;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+    private final Thread[] workers;
+    private int running;
+
+    public TaskQueue(String _name, int _workers, int _capacity, OverflowPolicy _policy) {
+        if (_capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (_policy == null) {
+            throw new NullPointerException();
+        }
+        tasks = new ArrayDeque<>(Math.min(_capacity, 1024));
+        droppedCallbacks = new ArrayDeque<>(Math.min(_capacity, 1024));
+        capacity = _capacity;
+        policy = _policy;
+        workers = new Thread[_workers];
+        for (int i = 0; i < _workers; i++) {
+            workers[i] = new Thread(this::work, (_workers == 1) ? _name : (_name + "-" + i));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queue a task
+     *
+     * @param _task The task
+     * @param _dropped Run in place of the task, on the calling thread, if the task is dropped, or null
+     * @throws RejectedExecutionException if the task is refused by the DROP_NEWEST policy and has no drop callback
+     */
+    public void offer(Runnable _task, Runnable _dropped) {
+        Runnable run = null;
+        Runnable drop = null;
+        lock.lock();
+        try {
+            while (run == null && drop == null && tasks.size() >= capacity) {
+                switch (policy) {
+                    case BLOCK:
+                        if (isWorker()) {
+                            /**
+                             * A worker blocking on its own queue would never be released, run the task in place instead
+                             */
+                            run = _task;
+                        } else {
+                            notFull.awaitUninterruptibly();
+                        }
+                        break;
+                    case DROP_OLDEST:
+                        tasks.poll();
+                        drop = droppedCallbacks.poll();
+                        dropped.incrementAndGet();
+                        break;
+                    case DROP_NEWEST:
+                        dropped.incrementAndGet();
+                        if (_dropped == null) {
+                            throw new RejectedExecutionException("Dispatch queue full (" + capacity + " tasks)");
+                        }
+                        drop = _dropped;
+                        break;
+                }
+            }
+            if (run == null && (drop == null || policy == OverflowPolicy.DROP_OLDEST)) {
+                tasks.add(_task);
+                droppedCallbacks.add((_dropped == null) ? NONE : _dropped);
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        /**
+         * Outside of the lock, as they may dispatch again
+         */
+        if (drop != null) {
+            drop.run();
+        }
+        if (run != null) {
+            run.run();
+        }
+    }
+
+    public boolean awaitIdle(long _timeout, TimeUnit _unit) throws InterruptedException {
+        long remaining = _unit.toNanos(_timeout);
+        lock.lock();
+        try {
+            while (!tasks.isEmpty() || running > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = idle.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getDepth() {
+        lock.lock();
+        try {
+            return tasks.size() + running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private boolean isWorker() {
+        Thread current = Thread.currentThread();
+        for (Thread worker : workers) {
+            if (worker == current) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void work() {
+        while (true) {
+            Runnable task;
+            lock.lock();
+            try {
+                while (tasks.isEmpty()) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                task = tasks.poll();
+                droppedCallbacks.poll();
+                running++;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                task.run();
+            } catch (Throwable ex) {
+                /**
+                 * Tasks report their own errors, this only keeps the worker alive
+                 */
+            } finally {
+                lock.lock();
+                try {
+                    running--;
+                    if (running == 0 && tasks.isEmpty()) {
+                        idle.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Dispatcher running every task on its own virtual thread, when the runtime provides them (Java 21+).
+ * Blocking handlers then only cost a few hundred bytes each instead of a platform thread.
+ * On older runtimes, it falls back to a cached thread pool, like CachedDispatcher.
+ */
+public class VirtualThreadDispatcher extends ExecutorDispatcher {
+
+    private static final ExecutorFactory FALLBACK = Executors::newCachedThreadPool;
+    private static final ExecutorFactory FACTORY = lookup();
+
+    public VirtualThreadDispatcher() {
+        super(FACTORY.create());
+    }
+
+    /**
+     * Check if the current runtime supports virtual threads
+     *
+     * @return true if tasks run on virtual threads, false if they fall back to a cached thread pool
+     */
+    public static boolean isSupported() {
+        return FACTORY != FALLBACK;
+    }
+
+    /**
+     * The SDK targets Java 8, so the Java 21 factory is looked up reflectively.
+     * Java 19 and 20 have the method as a preview, throwing unless preview features are enabled: they use the fallback too.
+     */
+    private static ExecutorFactory lookup() {
+        if (getFeatureVersion() < 21) {
+            return FALLBACK;
+        }
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            /**
+             * Probe once, so that isSupported() tells whether virtual threads actually run
+             */
+            ((ExecutorService) method.invoke(null)).shutdown();
+            return () -> {
+                try {
+                    return (ExecutorService) method.invoke(null);
+                } catch (ReflectiveOperationException ex) {
+                    return FALLBACK.create();
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return FALLBACK;
+        }
+    }
+
+    /**
+     * @return the feature version of the runtime: 8 for "1.8", 21 for "21"
+     */
+    static int getFeatureVersion() {
+        String version = System.getProperty("java.specification.version", "1.8");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException ex) {
+            return 8;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ExecutorFactory {
+
+        public ExecutorService create();
+    }
+
+}
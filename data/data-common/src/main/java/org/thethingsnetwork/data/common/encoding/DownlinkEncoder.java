@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.encoding;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.messages.DownlinkMessage;
+
+/**
+ * Encoder for the downlinks of an application.
+ * The topics of the first devices are cached, up to a limit, and messages are written into a reusable per-thread buffer, base64-encoding raw payloads on the fly.
+ * Only the exact-length json returned to the transport is allocated per message, as neither Paho nor the RabbitMQ client accept a slice of an array.
+ * The output is the same as the one of AbstractClient.MAPPER.
+ */
+public class DownlinkEncoder {
+
+    public static final int DEFAULT_TOPICS = 65536;
+    private static final int MAX_BUFFER = 65536;
+
+    private static final ThreadLocal<ByteArrayBuilder> BUFFERS = new ThreadLocal<>();
+
+    private final String appId;
+    private final int maxTopics;
+    private final Map<String, String> topics = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new DownlinkEncoder caching the topics of 65536 devices
+     *
+     * @param _appId The application sending the downlinks
+     */
+    public DownlinkEncoder(String _appId) {
+        this(_appId, DEFAULT_TOPICS);
+    }
+
+    /**
+     * Create a new DownlinkEncoder
+     *
+     * @param _appId The application sending the downlinks
+     * @param _maxTopics The number of device topics cached. The topics of the devices beyond are built on every downlink.
+     */
+    public DownlinkEncoder(String _appId, int _maxTopics) {
+        if (_maxTopics < 1) {
+            throw new IllegalArgumentException("The number of topics must be positive");
+        }
+        appId = _appId;
+        maxTopics = _maxTopics;
+    }
+
+    /**
+     * Get the topic, or routing key, of the downlinks of a device
+     *
+     * @param _devId The device id
+     * @return the downlink topic
+     */
+    public String topic(String _devId) {
+        String topic = topics.get(_devId);
+        if (topic == null) {
+            topic = appId + "/devices/" + _devId + "/down";
+            /**
+             * The limit may be exceeded by a few concurrent puts, never evicting keeps the cache from thrashing
+             */
+            if (topics.size() < maxTopics) {
+                String cached = topics.putIfAbsent(_devId, topic);
+                if (cached != null) {
+                    topic = cached;
+                }
+            }
+        }
+        return topic;
+    }
+
+    /**
+     * Get the number of cached topics
+     *
+     * @return the number of devices whose topic is cached
+     */
+    public int getCachedTopics() {
+        return topics.size();
+    }
+
+    /**
+     * Encode a downlink
+     *
+     * @param _message The downlink
+     * @return the json bytes
+     * @throws IOException in case the payload object can not be serialized
+     */
+    public byte[] encode(DownlinkMessage _message) throws IOException {
+        ByteArrayBuilder buffer = BUFFERS.get();
+        if (buffer == null) {
+            buffer = new ByteArrayBuilder(256);
+        } else {
+            BUFFERS.set(null);
+        }
+        try (JsonGenerator generator = AbstractClient.MAPPER.getFactory().createGenerator(buffer)) {
+            generator.writeStartObject();
+            generator.writeNumberField("port", _message.getPort());
+            ByteBuffer payloadBuffer = _message.getPayloadBuffer();
+            if (payloadBuffer != null) {
+                generator.writeFieldName("payload_raw");
+                if (payloadBuffer.hasArray()) {
+                    generator.writeBinary(payloadBuffer.array(), payloadBuffer.arrayOffset(), payloadBuffer.limit());
+                } else {
+                    generator.writeBinary(new BufferInputStream(payloadBuffer), payloadBuffer.limit());
+                }
+            } else if (_message.getPayloadRaw() != null) {
+                generator.writeStringField("payload_raw", _message.getPayloadRaw());
+            } else if (_message.getPayloadFields() != null) {
+                generator.writeFieldName("payload_fields");
+                AbstractClient.MAPPER.writeValue(generator, _message.getPayloadFields());
+            }
+            generator.writeEndObject();
+        }
+        /**
+         * The only copy: both transports take the whole array as the message
+         */
+        byte[] json = buffer.toByteArray();
+        /**
+         * Recycled unless a large payload made it grow
+         */
+        if (json.length <= MAX_BUFFER) {
+            buffer.reset();
+            BUFFERS.set(buffer);
+        }
+        return json;
+    }
+
+    /**
+     * Reads a byte buffer from its start, without moving its position
+     */
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+        private int position;
+
+        public BufferInputStream(ByteBuffer _buffer) {
+            buffer = _buffer;
+        }
+
+        @Override
+        public int read() {
+            if (position >= buffer.limit()) {
+                return -1;
+            }
+            return buffer.get(position++) & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] _bytes, int _offset, int _length) {
+            if (position >= buffer.limit()) {
+                return -1;
+            }
+            int length = Math.min(_length, buffer.limit() - position);
+            for (int i = 0; i < length; i++) {
+                _bytes[_offset + i] = buffer.get(position++);
+            }
+            return length;
+        }
+
+    }
+
+}
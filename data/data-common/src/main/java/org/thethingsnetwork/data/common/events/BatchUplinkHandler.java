@@ -0,0 +1,246 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.events;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.thethingsnetwork.data.common.Lazy;
+import org.thethingsnetwork.data.common.messages.DataMessage;
+import org.thethingsnetwork.data.common.messages.DeviceMessage;
+
+/**
+ * Handler protoype for batches of device uplink messages.
+ * Uplinks are buffered in the order they are received, and flushed once getMaxSize() of them are buffered or getMaxDelay() ms after the first one.
+ * Buffered uplinks are only decoded when their batch is flushed.
+ * Batches are delivered one at a time, in order: a batch flushed while the previous one is being delivered waits for it.
+ */
+public abstract class BatchUplinkHandler extends UplinkHandler {
+
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, (Runnable _task) -> {
+        Thread thread = new Thread(_task, "ttn-batch-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private static final int DISPATCHING = 0;
+    private static final int QUEUED = 1;
+    private static final int DROPPED = 2;
+
+    private final Object lock = new Object();
+    private List<Item> pending = new ArrayList<>();
+    private ScheduledFuture<?> timer;
+    private long generation;
+    private final ArrayDeque<List<Item>> waiting = new ArrayDeque<>();
+    private boolean delivering;
+    private BiConsumer<Runnable, Runnable> dispatch = (Runnable _task, Runnable _dropped) -> _task.run();
+    private Consumer<Throwable> errors = (Throwable _error) -> {
+    };
+
+    public abstract void handleBatch(List<DeviceMessage> _batch);
+
+    public abstract int getMaxSize();
+
+    /**
+     * Get the maximum time an uplink can wait in a batch
+     *
+     * @return the delay in ms, or 0 to only flush full batches
+     */
+    public abstract long getMaxDelay();
+
+    /**
+     * Set how batches are delivered. Called by the client before it starts.
+     *
+     * @param _dispatch Runs the delivery of each batch, or the release of its uplinks in its place if the delivery is dropped
+     * @param _errors Receives decoding and handling errors
+     */
+    public void start(BiConsumer<Runnable, Runnable> _dispatch, Consumer<Throwable> _errors) {
+        dispatch = _dispatch;
+        errors = _errors;
+    }
+
+    @Override
+    public void handle(String _devId, DataMessage _data) {
+        add(_devId, new Lazy<>(() -> _data), null);
+    }
+
+    /**
+     * Buffer an uplink. This is cheap and meant to be called from the receiving thread, to keep the order of the uplinks.
+     *
+     * @param _devId The device id
+     * @param _data The uplink, decoded when the batch is flushed
+     * @param _done Run once the batch holding this uplink was handled, or null
+     */
+    public void add(String _devId, Lazy<? extends DataMessage> _data, Runnable _done) {
+        List<Item> full = null;
+        synchronized (lock) {
+            pending.add(new Item(_devId, _data, _done));
+            if (pending.size() >= getMaxSize()) {
+                full = swap();
+            } else if (pending.size() == 1 && getMaxDelay() > 0) {
+                long batch = generation;
+                timer = TIMER.schedule(() -> expire(batch), getMaxDelay(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            submit(full);
+        }
+    }
+
+    /**
+     * Deliver the buffered uplinks now, if any
+     */
+    public void flush() {
+        List<Item> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = swap();
+        }
+        submit(batch);
+    }
+
+    /**
+     * Flush the batch a timer was started for, unless it was flushed meanwhile: cancelling the timer does not stop it once it fired
+     */
+    private void expire(long _generation) {
+        List<Item> batch;
+        synchronized (lock) {
+            if (_generation != generation || pending.isEmpty()) {
+                return;
+            }
+            batch = swap();
+        }
+        submit(batch);
+    }
+
+    private List<Item> swap() {
+        generation++;
+        List<Item> batch = pending;
+        pending = new ArrayList<>(Math.min(getMaxSize(), 1024));
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        return batch;
+    }
+
+    private void submit(List<Item> _batch) {
+        synchronized (lock) {
+            waiting.add(_batch);
+            if (delivering) {
+                return;
+            }
+            delivering = true;
+        }
+        next();
+    }
+
+    /**
+     * Dispatch the next waiting batch, if any. Its delivery, or its drop, dispatches the one after it.
+     */
+    private void next() {
+        while (true) {
+            List<Item> batch;
+            synchronized (lock) {
+                batch = waiting.poll();
+                if (batch == null) {
+                    delivering = false;
+                    return;
+                }
+            }
+            AtomicInteger state = new AtomicInteger(DISPATCHING);
+            dispatch.accept(() -> {
+                deliver(batch);
+                next();
+            }, () -> {
+                release(batch);
+                /**
+                 * Dropped while dispatched, the loop goes on. Dropped later, as the oldest queued task, this goes on instead.
+                 */
+                if (!state.compareAndSet(DISPATCHING, DROPPED)) {
+                    next();
+                }
+            });
+            if (state.compareAndSet(DISPATCHING, QUEUED)) {
+                return;
+            }
+        }
+    }
+
+    private void deliver(List<Item> _batch) {
+        try {
+            List<DeviceMessage> messages = new ArrayList<>(_batch.size());
+            for (Item item : _batch) {
+                try {
+                    messages.add(new DeviceMessage(item.devId, item.data.get()));
+                } catch (Exception ex) {
+                    errors.accept(ex);
+                }
+            }
+            if (!messages.isEmpty()) {
+                handleBatch(Collections.unmodifiableList(messages));
+            }
+        } catch (RuntimeException ex) {
+            errors.accept(ex);
+        } finally {
+            release(_batch);
+        }
+    }
+
+    private void release(List<Item> _batch) {
+        for (Item item : _batch) {
+            if (item.done != null) {
+                item.done.run();
+            }
+        }
+    }
+
+    private static final class Item {
+
+        private final String devId;
+        private final Lazy<? extends DataMessage> data;
+        private final Runnable done;
+
+        public Item(String _devId, Lazy<? extends DataMessage> _data, Runnable _done) {
+            devId = _devId;
+            data = _data;
+            done = _done;
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.events;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import org.thethingsnetwork.data.common.messages.DataMessage;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+
+/**
+ * Handler protoype for device uplink messages, receiving the payload fields bound to a custom class.
+ * Uplinks without payload fields, or received on another port, are ignored.
+ *
+ * @param <T> the type of the payload fields
+ */
+public abstract class TypedUplinkHandler<T> extends UplinkHandler {
+
+    public abstract void handlePayload(String _devId, T _payload);
+
+    public abstract Class<T> getType();
+
+    /**
+     * Get the port to filter on
+     *
+     * @return the port, or -1 to handle uplinks on any port
+     */
+    public int getPort() {
+        return -1;
+    }
+
+    @Override
+    public String getField() {
+        return null;
+    }
+
+    @Override
+    public void handle(String _devId, DataMessage _data) {
+        UplinkMessage uplink = (UplinkMessage) _data;
+        if (getPort() >= 0 && uplink.getPort() != getPort()) {
+            return;
+        }
+        T payload;
+        try {
+            payload = uplink.getPayloadFields(getType());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if (payload != null) {
+            handlePayload(_devId, payload);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.flow;
+
+import org.thethingsnetwork.data.common.Lazy;
+import org.thethingsnetwork.data.common.events.ActivationHandler;
+import org.thethingsnetwork.data.common.messages.ActivationMessage;
+import org.thethingsnetwork.data.common.messages.DeviceMessage;
+
+/**
+ * Activation handler publishing the activations of a device
+ */
+public class ActivationPublisher extends ActivationHandler implements PublishingHandler {
+
+    private static final String EVENT = "activations";
+
+    private final String devId;
+    private final MessagePublisher<DeviceMessage> publisher;
+
+    /**
+     * Create a new ActivationPublisher
+     *
+     * @param _devId The devId to filter on, or null
+     * @param _window The number of activations buffered per subscriber
+     */
+    public ActivationPublisher(String _devId, int _window) {
+        devId = _devId;
+        publisher = new MessagePublisher<>(_window);
+    }
+
+    @Override
+    public MessagePublisher<DeviceMessage> getPublisher() {
+        return publisher;
+    }
+
+    @Override
+    public String getDevId() {
+        return devId;
+    }
+
+    @Override
+    public void handle(String _devId, ActivationMessage _data) {
+        add(_devId, new Lazy<>(() -> _data));
+    }
+
+    /**
+     * Publish an activation, blocking while a subscriber window is full
+     *
+     * @param _devId The device id
+     * @param _data The activation, decoded when it is delivered
+     */
+    public void add(String _devId, Lazy<ActivationMessage> _data) {
+        publisher.offer(new Lazy<>(() -> new DeviceMessage(_devId, EVENT, _data.get())), null);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.flow;
+
+import org.thethingsnetwork.data.common.Lazy;
+import org.thethingsnetwork.data.common.events.AbstractEventHandler;
+import org.thethingsnetwork.data.common.messages.DeviceMessage;
+import org.thethingsnetwork.data.common.messages.RawMessage;
+
+/**
+ * Event handler publishing the events of a device
+ */
+public class DevicePublisher extends AbstractEventHandler implements PublishingHandler {
+
+    private final String devId;
+    private final String event;
+    private final MessagePublisher<DeviceMessage> publisher;
+
+    /**
+     * Create a new DevicePublisher
+     *
+     * @param _devId The devId to filter on, or null
+     * @param _event The event to filter on, or null
+     * @param _window The number of events buffered per subscriber
+     */
+    public DevicePublisher(String _devId, String _event, int _window) {
+        devId = _devId;
+        event = _event;
+        publisher = new MessagePublisher<>(_window);
+    }
+
+    @Override
+    public MessagePublisher<DeviceMessage> getPublisher() {
+        return publisher;
+    }
+
+    @Override
+    public String getDevId() {
+        return devId;
+    }
+
+    @Override
+    public String getEvent() {
+        return event;
+    }
+
+    /**
+     * Publish an event, blocking while a subscriber window is full
+     *
+     * @param _devId The device id
+     * @param _event The event name
+     * @param _data The event payload
+     */
+    @Override
+    public void handle(String _devId, String _event, RawMessage _data) {
+        publisher.offer(new Lazy<>(() -> new DeviceMessage(_devId, _event, _data)), null);
+    }
+
+}
@@ -0,0 +1,347 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.flow;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.thethingsnetwork.data.common.Lazy;
+
+/**
+ * Hot Publisher of received messages, multicast to its subscribers.
+ * Each subscriber has a window of at most getWindow() buffered messages. Once it is full, offer() blocks the receiving thread until the subscriber requests more,
+ * so that a slow subscriber throttles the transport instead of buffering in heap.
+ * Blocking the receiving thread is not a receive window: unless the transport bounds the unacknowledged messages, as AMQP does with basicQos, the broker keeps sending until its own buffers or timeouts give up.
+ * Messages received while there are no subscribers are dropped.
+ *
+ * @param <T> the type of the messages
+ */
+public class MessagePublisher<T> implements Publisher<T> {
+
+    public static final int DEFAULT_WINDOW = 128;
+
+    private final int window;
+    private final List<Channel> channels = new CopyOnWriteArrayList<>();
+    private volatile Executor executor = Runnable::run;
+    private volatile Consumer<Throwable> errors = (Throwable _error) -> {
+    };
+    private volatile boolean completed;
+
+    /**
+     * Create a new MessagePublisher
+     *
+     * @param _window The number of messages buffered per subscriber
+     */
+    public MessagePublisher(int _window) {
+        if (_window < 1) {
+            throw new IllegalArgumentException("The window must be positive");
+        }
+        window = _window;
+    }
+
+    public MessagePublisher() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Set how messages are delivered. Called by the client before it starts.
+     *
+     * @param _executor Runs the delivery to each subscriber, one task at a time per subscriber. It must run every task, or refuse it with a RejectedExecutionException: a task silently dropped stalls its subscriber.
+     * @param _errors Receives decoding and subscriber errors
+     */
+    public void start(Executor _executor, Consumer<Throwable> _errors) {
+        executor = _executor;
+        errors = _errors;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> _subscriber) {
+        if (_subscriber == null) {
+            throw new NullPointerException();
+        }
+        Channel channel = new Channel(_subscriber);
+        _subscriber.onSubscribe(channel);
+        if (completed) {
+            channel.cancel();
+            _subscriber.onComplete();
+            return;
+        }
+        channels.add(channel);
+    }
+
+    /**
+     * Offer a message to every subscriber, blocking while the window of one of them is full
+     *
+     * @param _message The message, decoded when it is delivered
+     * @param _done Run once every subscriber got or dropped the message, or null
+     */
+    public void offer(Lazy<? extends T> _message, Runnable _done) {
+        if (completed || channels.isEmpty()) {
+            if (_done != null) {
+                _done.run();
+            }
+            return;
+        }
+        /**
+         * Held by this offer until every subscriber got it
+         */
+        Item<T> item = new Item<>(_message, _done);
+        for (Channel channel : channels) {
+            item.retain();
+            channel.push(item);
+        }
+        item.release();
+    }
+
+    /**
+     * Signal the end of the stream: blocked offers return, and every subscriber completes once it consumed its window
+     */
+    public void complete() {
+        completed = true;
+        for (Channel channel : channels) {
+            channel.wake();
+        }
+    }
+
+    /**
+     * Get the number of messages waiting for demand, over all subscribers
+     *
+     * @return the number of buffered messages
+     */
+    public int getBuffered() {
+        int buffered = 0;
+        for (Channel channel : channels) {
+            buffered += channel.size();
+        }
+        return buffered;
+    }
+
+    private static final class Item<T> {
+
+        private final Lazy<? extends T> message;
+        private final Runnable done;
+        private final AtomicInteger remaining;
+
+        public Item(Lazy<? extends T> _message, Runnable _done) {
+            message = _message;
+            done = _done;
+            remaining = new AtomicInteger(1);
+        }
+
+        public void retain() {
+            remaining.incrementAndGet();
+        }
+
+        public void release() {
+            if (remaining.decrementAndGet() == 0 && done != null) {
+                done.run();
+            }
+        }
+
+    }
+
+    /**
+     * The window and demand of one subscriber. Signals are serialized by the work-in-progress counter.
+     */
+    private final class Channel implements Subscription {
+
+        private final Subscriber<? super T> subscriber;
+        private final ArrayDeque<Item<T>> buffer = new ArrayDeque<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private long requested;
+        private boolean cancelled;
+        private boolean terminated;
+        private Throwable error;
+
+        public Channel(Subscriber<? super T> _subscriber) {
+            subscriber = _subscriber;
+        }
+
+        public void push(Item<T> _item) {
+            synchronized (this) {
+                while (buffer.size() >= window && !cancelled && !completed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                if (cancelled || completed || buffer.size() >= window) {
+                    _item.release();
+                    return;
+                }
+                buffer.add(_item);
+            }
+            schedule();
+        }
+
+        public synchronized int size() {
+            return buffer.size();
+        }
+
+        public void wake() {
+            synchronized (this) {
+                notifyAll();
+            }
+            schedule();
+        }
+
+        @Override
+        public void request(long _n) {
+            synchronized (this) {
+                if (_n <= 0) {
+                    error = new IllegalArgumentException("Rule 3.9: the requested amount must be positive, got " + _n);
+                } else {
+                    requested += _n;
+                    if (requested < 0) {
+                        requested = Long.MAX_VALUE;
+                    }
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                for (Item<T> item : buffer) {
+                    item.release();
+                }
+                buffer.clear();
+                notifyAll();
+            }
+            channels.remove(this);
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException ex) {
+                    /**
+                     * Overloaded executor: deliver from the calling thread
+                     */
+                    drain();
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            while (true) {
+                while (true) {
+                    Item<T> item;
+                    Throwable failure = null;
+                    boolean complete = false;
+                    synchronized (this) {
+                        if (cancelled || terminated) {
+                            break;
+                        }
+                        if (error != null) {
+                            failure = error;
+                        } else if (buffer.isEmpty()) {
+                            if (!completed) {
+                                break;
+                            }
+                            complete = true;
+                        } else if (requested == 0) {
+                            break;
+                        }
+                        if (failure != null || complete) {
+                            terminated = true;
+                            item = null;
+                        } else {
+                            item = buffer.poll();
+                            if (requested != Long.MAX_VALUE) {
+                                requested--;
+                            }
+                            notifyAll();
+                        }
+                    }
+                    if (failure != null) {
+                        cancel();
+                        subscriber.onError(failure);
+                        break;
+                    }
+                    if (complete) {
+                        channels.remove(this);
+                        subscriber.onComplete();
+                        break;
+                    }
+                    deliver(item);
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void deliver(Item<T> _item) {
+            try {
+                T value;
+                try {
+                    value = _item.message.get();
+                } catch (Exception ex) {
+                    /**
+                     * Undecodable message: skipped, the demand it used is given back
+                     */
+                    synchronized (this) {
+                        if (requested != Long.MAX_VALUE) {
+                            requested++;
+                        }
+                    }
+                    errors.accept(ex);
+                    return;
+                }
+                try {
+                    subscriber.onNext(value);
+                } catch (RuntimeException ex) {
+                    cancel();
+                    errors.accept(ex);
+                }
+            } finally {
+                _item.release();
+            }
+        }
+
+    }
+
+}
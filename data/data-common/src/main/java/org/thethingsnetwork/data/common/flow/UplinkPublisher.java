@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.flow;
+
+import org.thethingsnetwork.data.common.Lazy;
+import org.thethingsnetwork.data.common.events.UplinkHandler;
+import org.thethingsnetwork.data.common.messages.DataMessage;
+import org.thethingsnetwork.data.common.messages.DeviceMessage;
+
+/**
+ * Uplink handler publishing the uplinks of a device and field
+ */
+public class UplinkPublisher extends UplinkHandler implements PublishingHandler {
+
+    private final String devId;
+    private final String field;
+    private final MessagePublisher<DeviceMessage> publisher;
+
+    /**
+     * Create a new UplinkPublisher
+     *
+     * @param _devId The devId to filter on, or null
+     * @param _field The field to filter on, or null for full uplinks
+     * @param _window The number of uplinks buffered per subscriber
+     */
+    public UplinkPublisher(String _devId, String _field, int _window) {
+        devId = _devId;
+        field = _field;
+        publisher = new MessagePublisher<>(_window);
+    }
+
+    @Override
+    public MessagePublisher<DeviceMessage> getPublisher() {
+        return publisher;
+    }
+
+    @Override
+    public String getDevId() {
+        return devId;
+    }
+
+    @Override
+    public String getField() {
+        return field;
+    }
+
+    @Override
+    public void handle(String _devId, DataMessage _data) {
+        add(_devId, new Lazy<>(() -> _data), null);
+    }
+
+    /**
+     * Publish an uplink, blocking while a subscriber window is full
+     *
+     * @param _devId The device id
+     * @param _data The uplink, decoded when it is delivered
+     * @param _done Run once every subscriber got the uplink, or null
+     */
+    public void add(String _devId, Lazy<? extends DataMessage> _data, Runnable _done) {
+        publisher.offer(new Lazy<>(() -> new DeviceMessage(_devId, _data.get())), _done);
+    }
+
+}
@@ -0,0 +1,538 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only record of the received deliveries, in memory-mapped segment files.
+ * <p>
+ * Appending copies the delivery into the mapped segment, so it survives a crash of the process as soon as append() returns.
+ * A background commit forces the appended deliveries to disk every commit interval, in a single write for all of them.
+ * Segments are rolled over once full, and the segments older than the retention, or beyond the size limit, are deleted.
+ * <p>
+ * Every delivery gets a sequence number, increasing across segments. A segment is named after the sequence of its first delivery.
+ * A restart continues the sequence in a new segment.
+ * <p>
+ * A failing background commit or retention is reported to the error handler, or without one, thrown by the next commit().
+ */
+public class UplinkJournal implements AutoCloseable {
+
+    /**
+     * Receive the deliveries of a journal
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called for every delivery, in sequence order
+         *
+         * @param _sequence The sequence of the delivery
+         * @param _topic The topic the delivery was received on
+         * @param _timestamp The time the delivery was received, in ms since the epoch
+         * @param _payload The payload
+         */
+        public void entry(long _sequence, String _topic, long _timestamp, byte[] _payload);
+
+    }
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_RETENTION = 24 * 3600 * 1000L;
+    public static final long DEFAULT_COMMIT_INTERVAL = 100;
+
+    private static final String SUFFIX = ".journal";
+    private static final int MAGIC = 0x54544E4A;
+    private static final int VERSION = 1;
+
+    /**
+     * Segment header: magic, version, first sequence, creation time
+     */
+    private static final int SEGMENT_HEADER = 24;
+
+    /**
+     * Entry header: length of the whole entry, CRC32 of the rest, timestamp, topic length. The length is written last.
+     */
+    private static final int LENGTH = 0;
+    private static final int CRC = 4;
+    private static final int TIMESTAMP = 8;
+    private static final int TOPIC_LENGTH = 16;
+    private static final int ENTRY_HEADER = 18;
+
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, (Runnable _task) -> {
+        Thread thread = new Thread(_task, "ttn-journal-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long retention;
+    private final long maxBytes;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private final Object commitLock = new Object();
+    private final ScheduledFuture<?> committer;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private volatile Consumer<Throwable> errorHandler;
+    private Segment current;
+    private long sequence;
+    private volatile long committed;
+    private boolean closed;
+
+    /**
+     * Create a journal with segments of 64 MB, kept for 24 hours, committed every 100 ms
+     *
+     * @param _directory The directory of the segment files, created if needed
+     * @throws IOException in case the directory can not be used
+     */
+    public UplinkJournal(Path _directory) throws IOException {
+        this(_directory, DEFAULT_SEGMENT_SIZE, DEFAULT_RETENTION, 0, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    /**
+     * Create a journal
+     *
+     * @param _directory The directory of the segment files, created if needed
+     * @param _segmentSize The size of a segment file, in bytes
+     * @param _retention The time a segment is kept after its last delivery, in ms, or 0 to keep them regardless of their age
+     * @param _maxBytes The maximum size of all segments, in bytes, or 0 for no limit
+     * @param _commitInterval The time between two commits, in ms, or 0 to only commit on commit() and on roll-over
+     * @throws IOException in case the directory can not be used
+     */
+    public UplinkJournal(Path _directory, int _segmentSize, long _retention, long _maxBytes, long _commitInterval) throws IOException {
+        if (_segmentSize < 4096) {
+            throw new IllegalArgumentException("Segments must be at least 4096 bytes");
+        }
+        if (_retention < 0 || _maxBytes < 0 || _commitInterval < 0) {
+            throw new IllegalArgumentException("The retention, size limit and commit interval can not be negative");
+        }
+        directory = _directory;
+        segmentSize = _segmentSize;
+        retention = _retention;
+        maxBytes = _maxBytes;
+        Files.createDirectories(_directory);
+        recover();
+        committed = sequence;
+        roll(System.currentTimeMillis());
+        if (_commitInterval > 0) {
+            committer = TIMER.scheduleWithFixedDelay(this::maintain, _commitInterval, _commitInterval, TimeUnit.MILLISECONDS);
+        } else {
+            committer = null;
+        }
+    }
+
+    /**
+     * Append a delivery
+     *
+     * @param _topic The topic the delivery was received on
+     * @param _timestamp The time the delivery was received, in ms since the epoch
+     * @param _payload The payload
+     * @return the sequence of the delivery
+     * @throws IOException in case a new segment can not be created
+     */
+    public synchronized long append(String _topic, long _timestamp, byte[] _payload) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The journal is closed");
+        }
+        byte[] topic = _topic.getBytes(StandardCharsets.UTF_8);
+        if (topic.length > 0xFFFF) {
+            throw new IllegalArgumentException("The topic is too long");
+        }
+        int length = ENTRY_HEADER + topic.length + _payload.length;
+        if (length > segmentSize - SEGMENT_HEADER) {
+            throw new IllegalArgumentException("The delivery does not fit in a segment");
+        }
+        if (current.buffer.remaining() < length) {
+            roll(_timestamp);
+        }
+        ByteBuffer buffer = current.buffer;
+        int position = buffer.position();
+        buffer.position(position + TIMESTAMP);
+        buffer.putLong(_timestamp);
+        buffer.putShort((short) topic.length);
+        buffer.put(topic);
+        buffer.put(_payload);
+        crc.reset();
+        ByteBuffer checked = buffer.duplicate();
+        checked.flip();
+        checked.position(position + TIMESTAMP);
+        crc.update(checked);
+        buffer.putInt(position + CRC, (int) crc.getValue());
+        buffer.putInt(position + LENGTH, length);
+        current.last = _timestamp;
+        return sequence++;
+    }
+
+    /**
+     * Report the failures of the background commits and retention to a handler, instead of the next commit()
+     *
+     * @param _handler The handler, or null
+     */
+    public void setErrorHandler(Consumer<Throwable> _handler) {
+        errorHandler = _handler;
+    }
+
+    /**
+     * Force the appended deliveries to disk
+     *
+     * @throws IOException in case the segment can not be written, or a background commit or retention failed since the previous call without error handler
+     */
+    public void commit() throws IOException {
+        Exception failed = failure.getAndSet(null);
+        if (failed != null) {
+            throw new IOException("Background journal maintenance failed", failed);
+        }
+        force();
+    }
+
+    private void force() throws IOException {
+        /**
+         * Appends go on while the segment is forced
+         */
+        synchronized (commitLock) {
+            MappedByteBuffer buffer;
+            long target;
+            synchronized (this) {
+                if (closed || sequence == committed) {
+                    return;
+                }
+                buffer = current.buffer;
+                target = sequence;
+            }
+            buffer.force();
+            synchronized (this) {
+                if (target > committed) {
+                    committed = target;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the sequence the next delivery will get
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the sequence of the first delivery not forced to disk yet
+     */
+    public long getCommitted() {
+        return committed;
+    }
+
+    /**
+     * @return the sequence of the oldest delivery still kept
+     */
+    public synchronized long getFirstSequence() {
+        return segments.isEmpty() ? current.first : segments.peekFirst().first;
+    }
+
+    /**
+     * Commit the appended deliveries and close the journal. The last segment is truncated to its content.
+     *
+     * @throws IOException in case the segment can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (commitLock) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (committer != null) {
+                    committer.cancel(false);
+                }
+                closed = true;
+                current.buffer.force();
+                try (FileChannel channel = FileChannel.open(current.path, StandardOpenOption.WRITE)) {
+                    channel.truncate(current.buffer.position());
+                }
+                committed = sequence;
+            }
+        }
+    }
+
+    /**
+     * Read the deliveries of a journal directory, from a sequence on. Can be called while a journal appends to the directory.
+     *
+     * @param _directory The directory of the segment files
+     * @param _from The first sequence to read
+     * @param _listener The listener receiving the deliveries
+     * @return the sequence following the last delivery read
+     * @throws IOException in case a segment can not be read
+     */
+    public static long replay(Path _directory, long _from, Listener _listener) throws IOException {
+        List<Long> firsts = list(_directory);
+        long next = _from;
+        for (int i = 0; i < firsts.size(); i++) {
+            if (i + 1 < firsts.size() && firsts.get(i + 1) <= _from) {
+                continue;
+            }
+            long first = firsts.get(i);
+            ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path(_directory, first), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (NoSuchFileException ex) {
+                /**
+                 * Deleted by the retention meanwhile
+                 */
+                continue;
+            }
+            if (!readHeader(buffer)) {
+                continue;
+            }
+            CRC32 crc = new CRC32();
+            long sequence = first;
+            for (int length; (length = valid(buffer, crc)) > 0; sequence++) {
+                if (sequence < _from) {
+                    buffer.position(buffer.position() + length);
+                    continue;
+                }
+                int position = buffer.position();
+                long timestamp = buffer.getLong(position + TIMESTAMP);
+                byte[] topic = new byte[buffer.getShort(position + TOPIC_LENGTH) & 0xFFFF];
+                byte[] payload = new byte[length - ENTRY_HEADER - topic.length];
+                buffer.position(position + ENTRY_HEADER);
+                buffer.get(topic);
+                buffer.get(payload);
+                _listener.entry(sequence, new String(topic, StandardCharsets.UTF_8), timestamp, payload);
+                next = sequence + 1;
+            }
+        }
+        return next;
+    }
+
+    private void maintain() {
+        try {
+            force();
+            synchronized (this) {
+                if (!closed) {
+                    retain(System.currentTimeMillis());
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            /**
+             * Retried on the next run
+             */
+            Consumer<Throwable> handler = errorHandler;
+            if (handler == null) {
+                failure.set(ex);
+                return;
+            }
+            try {
+                handler.accept(ex);
+            } catch (RuntimeException error) {
+                /**
+                 * A throwing task would never be run again
+                 */
+            }
+        }
+    }
+
+    /**
+     * Find the existing segments and the next sequence, truncating the last segment after its last valid delivery.
+     * Segments without any delivery, like the one of a session closed before its first append, are deleted: the new segment would reuse their name.
+     */
+    private void recover() throws IOException {
+        sequence = 0;
+        for (long first : list(directory)) {
+            Path path = path(directory, first);
+            long count = 0;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (!readHeader(buffer)) {
+                    if (buffer.remaining() >= 4 && buffer.getInt(0) != 0) {
+                        continue;
+                    }
+                    /**
+                     * Created, but its header never made it to disk
+                     */
+                } else {
+                    long last = buffer.getLong(16);
+                    CRC32 checker = new CRC32();
+                    for (int length; (length = valid(buffer, checker)) > 0; count++) {
+                        last = buffer.getLong(buffer.position() + TIMESTAMP);
+                        buffer.position(buffer.position() + length);
+                    }
+                    int end = buffer.position();
+                    if (count > 0) {
+                        if (end < channel.size()) {
+                            channel.truncate(end);
+                        }
+                        segments.addLast(new Segment(path, first, end, last));
+                    }
+                }
+            }
+            if (count == 0) {
+                Files.deleteIfExists(path);
+            }
+            /**
+             * Even an empty segment carries on the sequence, the segments before it may have been deleted by the retention
+             */
+            sequence = Math.max(sequence, first + count);
+        }
+    }
+
+    /**
+     * Force the current segment, if any, and start a new one, then apply the retention.
+     * The full segment is not truncated: a commit may still be forcing it.
+     */
+    private void roll(long _now) throws IOException {
+        if (current != null) {
+            current.buffer.force();
+            current.size = current.buffer.position();
+            current.buffer = null;
+            segments.addLast(current);
+        }
+        Path path = path(directory, sequence);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence).putLong(_now);
+            current = new Segment(path, sequence, segmentSize, _now);
+            current.buffer = buffer;
+        }
+        retain(_now);
+    }
+
+    /**
+     * Delete the oldest segments while they are past the retention or beyond the size limit, never the current one
+     */
+    private void retain(long _now) throws IOException {
+        long total = current.size;
+        for (Segment segment : segments) {
+            total += segment.size;
+        }
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.peekFirst();
+            boolean expired = retention > 0 && _now - oldest.last > retention;
+            boolean oversized = maxBytes > 0 && total > maxBytes;
+            if (!expired && !oversized) {
+                break;
+            }
+            Files.deleteIfExists(oldest.path);
+            total -= oldest.size;
+            segments.removeFirst();
+        }
+    }
+
+    /**
+     * @return the length of the delivery at the position of the buffer, or 0 if there is none or it is corrupted
+     */
+    private static int valid(ByteBuffer _buffer, CRC32 _crc) {
+        int position = _buffer.position();
+        if (_buffer.remaining() < ENTRY_HEADER) {
+            return 0;
+        }
+        int length = _buffer.getInt(position + LENGTH);
+        if (length < ENTRY_HEADER || length > _buffer.remaining()) {
+            return 0;
+        }
+        ByteBuffer checked = _buffer.duplicate();
+        checked.limit(position + length);
+        checked.position(position + TIMESTAMP);
+        _crc.reset();
+        _crc.update(checked);
+        return (int) _crc.getValue() == _buffer.getInt(position + CRC) ? length : 0;
+    }
+
+    /**
+     * Check the header of a segment and move the buffer after it
+     */
+    private static boolean readHeader(ByteBuffer _buffer) {
+        if (_buffer.remaining() < SEGMENT_HEADER || _buffer.getInt(0) != MAGIC || _buffer.getInt(4) != VERSION) {
+            return false;
+        }
+        _buffer.position(SEGMENT_HEADER);
+        return true;
+    }
+
+    /**
+     * @return the first sequence of the segments of a directory, in order
+     */
+    private static List<Long> list(Path _directory) throws IOException {
+        List<Long> firsts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    firsts.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    /**
+                     * Not a segment
+                     */
+                }
+            }
+        }
+        Collections.sort(firsts);
+        return firsts;
+    }
+
+    private static Path path(Path _directory, long _first) {
+        return _directory.resolve(String.format("%020d", _first) + SUFFIX);
+    }
+
+    private static class Segment {
+
+        private final Path path;
+        private final long first;
+        private long size;
+        private long last;
+        private MappedByteBuffer buffer;
+
+        private Segment(Path _path, long _first, long _size, long _last) {
+            path = _path;
+            first = _first;
+            size = _size;
+            last = _last;
+        }
+
+    }
+
+}
@@ -23,6 +23,14 @@
  */
 package org.thethingsnetwork.data.common.messages;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import java.io.IOException;
 import org.thethingsnetwork.data.common.Metadata;
 
 /**
@@ -30,7 +38,7 @@ import org.thethingsnetwork.data.common.Metadata;
  *
  * @author Romain Cambier
  */
-public class ActivationMessage {
+public class ActivationMessage implements DataMessage {
 
     private String appEui;
     private String devEui;
@@ -77,4 +85,57 @@ public class ActivationMessage {
         return metadata;
     }
 
+    /**
+     * Hand-written streaming deserializer, equivalent to the reflective binding of AbstractClient.MAPPER
+     */
+    public static class Deserializer extends StdDeserializer<ActivationMessage> implements ResolvableDeserializer {
+
+        private static final long serialVersionUID = 1L;
+
+        private JsonDeserializer<Object> metadata;
+
+        public Deserializer() {
+            super(ActivationMessage.class);
+        }
+
+        @Override
+        public void resolve(DeserializationContext _ctxt) throws JsonMappingException {
+            metadata = _ctxt.findRootValueDeserializer(_ctxt.constructType(Metadata.class));
+        }
+
+        @Override
+        public ActivationMessage deserialize(JsonParser _parser, DeserializationContext _ctxt) throws IOException {
+            JsonToken token = _parser.getCurrentToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = _parser.nextToken();
+            }
+            if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+                return (ActivationMessage) _ctxt.handleUnexpectedToken(ActivationMessage.class, _parser);
+            }
+            ActivationMessage message = new ActivationMessage();
+            for (; token == JsonToken.FIELD_NAME; token = _parser.nextToken()) {
+                String name = _parser.getCurrentName();
+                token = _parser.nextToken();
+                switch (name) {
+                    case "app_eui":
+                        message.appEui = _parser.getValueAsString();
+                        break;
+                    case "dev_eui":
+                        message.devEui = _parser.getValueAsString();
+                        break;
+                    case "dev_addr":
+                        message.devAddr = _parser.getValueAsString();
+                        break;
+                    case "metadata":
+                        if (token != JsonToken.VALUE_NULL) {
+                            message.metadata = (Metadata) metadata.deserialize(_parser, _ctxt);
+                        }
+                        break;
+                }
+                _parser.skipChildren();
+            }
+            return message;
+        }
+    }
+
 }
@@ -0,0 +1,212 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.messages;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.thethingsnetwork.data.common.AbstractClient;
+
+/**
+ * RawMessage over the bytes it was received as.
+ * The String is decoded once and only when needed, and numbers and booleans are parsed straight from the bytes and memoized.
+ * Custom classes are bound to a new instance on every call, so that handlers never share a mutable value.
+ * Instances are thread-safe, so that a single one can be shared by all the handlers of a delivery.
+ */
+final class ByteRawMessage extends RawMessage {
+
+    /**
+     * Powers of ten that are exact as doubles
+     */
+    private static final double[] POWERS = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final byte[] payload;
+    private volatile String string;
+    private volatile boolean intParsed;
+    private int intValue;
+    private volatile boolean doubleParsed;
+    private double doubleValue;
+    private volatile Object[] reader;
+
+    ByteRawMessage(byte[] _payload) {
+        if (_payload == null) {
+            throw new NullPointerException();
+        }
+        payload = _payload;
+    }
+
+    @Override
+    public byte[] asBytes() {
+        return payload.clone();
+    }
+
+    @Override
+    public String asString() {
+        String str = string;
+        if (str == null) {
+            str = new String(payload, StandardCharsets.UTF_8);
+            string = str;
+        }
+        return str;
+    }
+
+    @Override
+    public int asInt() {
+        if (!intParsed) {
+            intValue = parseInt();
+            intParsed = true;
+        }
+        return intValue;
+    }
+
+    @Override
+    public double asDouble() {
+        if (!doubleParsed) {
+            doubleValue = parseDouble();
+            doubleParsed = true;
+        }
+        return doubleValue;
+    }
+
+    @Override
+    public boolean asBoolean() {
+        if (payload.length != 4) {
+            return false;
+        }
+        return (payload[0] | 0x20) == 't' && (payload[1] | 0x20) == 'r' && (payload[2] | 0x20) == 'u' && (payload[3] | 0x20) == 'e';
+    }
+
+    @Override
+    public <T> T as(Class<T> _class) throws IOException {
+        if (_class == null) {
+            throw new NullPointerException();
+        }
+        if (_class.equals(Boolean.class) || _class.equals(Integer.class) || _class.equals(Double.class) || _class.equals(String.class)) {
+            return super.as(_class);
+        }
+        /**
+         * The reader of the last class, paired with it
+         */
+        Object[] last = reader;
+        if (last == null || last[0] != _class) {
+            last = new Object[]{_class, AbstractClient.MAPPER.readerFor(_class)};
+            reader = last;
+        }
+        return ((ObjectReader) last[1]).readValue(payload);
+    }
+
+    /**
+     * Same as Integer.parseInt(asString()), without the String for plain integers
+     */
+    private int parseInt() {
+        int i = 0;
+        boolean negative = false;
+        if (payload.length > 0 && (payload[0] == '-' || payload[0] == '+')) {
+            negative = payload[0] == '-';
+            i++;
+        }
+        if (i == payload.length || payload.length - i > 9) {
+            return Integer.parseInt(asString());
+        }
+        int value = 0;
+        for (; i < payload.length; i++) {
+            int digit = payload[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(asString());
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Same as Double.parseDouble(asString()).
+     * Plain decimals with up to 15 significant digits and a small exponent are computed exactly from the bytes, anything else goes through the String.
+     */
+    private double parseDouble() {
+        int i = 0;
+        int length = payload.length;
+        boolean negative = false;
+        if (length > 0 && (payload[0] == '-' || payload[0] == '+')) {
+            negative = payload[0] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        for (; i < length && payload[i] >= '0' && payload[i] <= '9'; i++) {
+            any = true;
+            if (mantissa != 0 || payload[i] != '0') {
+                mantissa = mantissa * 10 + (payload[i] - '0');
+                digits++;
+            }
+            if (digits > 15) {
+                return Double.parseDouble(asString());
+            }
+        }
+        if (i < length && payload[i] == '.') {
+            for (i++; i < length && payload[i] >= '0' && payload[i] <= '9'; i++) {
+                any = true;
+                if (mantissa != 0 || payload[i] != '0') {
+                    mantissa = mantissa * 10 + (payload[i] - '0');
+                    digits++;
+                }
+                exponent--;
+                if (digits > 15) {
+                    return Double.parseDouble(asString());
+                }
+            }
+        }
+        if (!any) {
+            return Double.parseDouble(asString());
+        }
+        if (i < length && (payload[i] == 'e' || payload[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < length && (payload[i] == '-' || payload[i] == '+')) {
+                negativeExponent = payload[i] == '-';
+                i++;
+            }
+            int start = i;
+            int value = 0;
+            for (; i < length && payload[i] >= '0' && payload[i] <= '9' && i - start < 4; i++) {
+                value = value * 10 + (payload[i] - '0');
+            }
+            if (i == start) {
+                return Double.parseDouble(asString());
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (i != length || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(asString());
+        }
+        double value = (exponent < 0) ? mantissa / POWERS[-exponent] : mantissa * POWERS[exponent];
+        return negative ? -value : value;
+    }
+
+}
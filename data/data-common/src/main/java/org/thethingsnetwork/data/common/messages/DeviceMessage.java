@@ -0,0 +1,72 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.messages;
+
+/**
+ * A message along with the device it comes from, as delivered in batches and by publishers
+ */
+public final class DeviceMessage {
+
+    private final String devId;
+    private final String event;
+    private final DataMessage data;
+
+    public DeviceMessage(String _devId, DataMessage _data) {
+        this(_devId, null, _data);
+    }
+
+    public DeviceMessage(String _devId, String _event, DataMessage _data) {
+        devId = _devId;
+        event = _event;
+        data = _data;
+    }
+
+    /**
+     * Get the device id
+     *
+     * @return the device id
+     */
+    public String getDevId() {
+        return devId;
+    }
+
+    /**
+     * Get the event name
+     *
+     * @return the event name, or null for uplinks
+     */
+    public String getEvent() {
+        return event;
+    }
+
+    /**
+     * Get the message, either an UplinkMessage, a RawMessage for fields and events, or an ActivationMessage
+     *
+     * @return the message
+     */
+    public DataMessage getData() {
+        return data;
+    }
+
+}
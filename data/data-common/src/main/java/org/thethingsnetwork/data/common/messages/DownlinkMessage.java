@@ -23,8 +23,10 @@
  */
 package org.thethingsnetwork.data.common.messages;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import java.nio.ByteBuffer;
 import java.util.Base64;
 
@@ -39,6 +41,8 @@ public class DownlinkMessage {
     private int port;
     private String payloadRaw;
     private Object payloadFields;
+    @JsonIgnore
+    private ByteBuffer payloadBuffer;
 
     /**
      * Constructor for a base64-encoded payload
@@ -63,17 +67,14 @@ public class DownlinkMessage {
     }
 
     /**
-     * Constructor for a byte buffer
+     * Constructor for a byte buffer. The buffer is not copied: its content, from the start up to its limit, is encoded when the message is sent.
      *
      * @param _port the port to be used while encrypting the message
      * @param _payload the actual data
      */
     public DownlinkMessage(int _port, ByteBuffer _payload) {
         port = _port;
-        _payload.rewind();
-        byte[] payload = new byte[_payload.capacity() - _payload.remaining()];
-        _payload.get(payload);
-        payloadRaw = Base64.getEncoder().encodeToString(payload);
+        payloadBuffer = _payload;
     }
 
     /**
@@ -87,4 +88,48 @@ public class DownlinkMessage {
         payloadFields = _payload;
     }
 
+    /**
+     * Get the port
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the base64-encoded payload
+     *
+     * @return the base64-encoded payload, or null if the payload is an object
+     */
+    @JsonProperty("payload_raw")
+    public String getPayloadRaw() {
+        if (payloadRaw == null && payloadBuffer != null) {
+            ByteBuffer payload = payloadBuffer.duplicate();
+            payload.rewind();
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            return Base64.getEncoder().encodeToString(bytes);
+        }
+        return payloadRaw;
+    }
+
+    /**
+     * Get the payload object, serialized by jackson
+     *
+     * @return the payload object, or null if the payload is raw
+     */
+    public Object getPayloadFields() {
+        return payloadFields;
+    }
+
+    /**
+     * Get the payload buffer, shared with the caller
+     *
+     * @return the payload buffer, or null if the payload is not a byte buffer
+     */
+    public ByteBuffer getPayloadBuffer() {
+        return payloadBuffer;
+    }
+
 }
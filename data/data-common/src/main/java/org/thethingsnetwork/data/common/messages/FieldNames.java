@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.messages;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interned table of the payload field names of an application.
+ * Every name gets a stable index, used by PayloadFields to store values in arrays instead of a Map.
+ * The table only grows, up to MAX_NAMES names. Further names are still usable, but are not indexed.
+ */
+public class FieldNames {
+
+    /**
+     * Maximum number of names indexed per application, so that decoders emitting dynamic keys can not grow the table forever
+     */
+    public static final int MAX_NAMES = 256;
+
+    private static final ConcurrentMap<String, FieldNames> APPLICATIONS = new ConcurrentHashMap<>();
+    private static final FieldNames DEFAULT = new FieldNames();
+
+    /**
+     * Get the table of an application
+     *
+     * @param _appId The application id, or null for a table shared by messages without one
+     * @return the table of this application
+     */
+    public static FieldNames forApplication(String _appId) {
+        if (_appId == null) {
+            return DEFAULT;
+        }
+        FieldNames names = APPLICATIONS.get(_appId);
+        if (names == null) {
+            names = APPLICATIONS.computeIfAbsent(_appId, (String k) -> new FieldNames());
+        }
+        return names;
+    }
+
+    private volatile String[] names = new String[0];
+    private volatile Map<String, Integer> index = new HashMap<>();
+
+    FieldNames() {
+
+    }
+
+    /**
+     * Get the index of a name
+     *
+     * @param _name The field name
+     * @return the index of this name, or -1 if it is not in the table
+     */
+    public int indexOf(String _name) {
+        Integer i = index.get(_name);
+        return (i == null) ? -1 : i;
+    }
+
+    /**
+     * Get the index of a name, adding it to the table if needed
+     *
+     * @param _name The field name
+     * @return the index of this name, or -1 if the table is full
+     */
+    public int intern(String _name) {
+        int i = indexOf(_name);
+        if (i >= 0) {
+            return i;
+        }
+        return add(_name);
+    }
+
+    private synchronized int add(String _name) {
+        Integer i = index.get(_name);
+        if (i != null) {
+            return i;
+        }
+        if (names.length >= MAX_NAMES) {
+            return -1;
+        }
+        String[] grown = Arrays.copyOf(names, names.length + 1);
+        grown[names.length] = _name.intern();
+        Map<String, Integer> copy = new HashMap<>(index);
+        copy.put(grown[names.length], names.length);
+        /**
+         * Names first, so that any index read from the map resolves to a name
+         */
+        names = grown;
+        index = copy;
+        return grown.length - 1;
+    }
+
+    /**
+     * Get a name by index
+     *
+     * @param _index The index of the name
+     * @return the interned name
+     */
+    public String getName(int _index) {
+        return names[_index];
+    }
+
+    /**
+     * Get the number of names in the table
+     *
+     * @return the number of names
+     */
+    public int size() {
+        return names.length;
+    }
+
+}
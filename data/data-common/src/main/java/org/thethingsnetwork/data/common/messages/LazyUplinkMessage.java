@@ -0,0 +1,259 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.messages;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.Lazy;
+import org.thethingsnetwork.data.common.Metadata;
+
+/**
+ * An UplinkMessage backed by the raw json it was received as.
+ * The top-level scalars are read in a single streaming scan, which only records where payload_fields and metadata are.
+ * Those are deserialized on first access, so handlers that never read them never pay for them.
+ */
+public class LazyUplinkMessage extends UplinkMessage {
+
+    private static final ObjectReader FIELDS = AbstractClient.MAPPER.readerFor(PayloadFields.class);
+    private static final ObjectReader METADATA = AbstractClient.MAPPER.readerFor(Metadata.class);
+
+    private final byte[] json;
+    private String appId;
+    private String devId;
+    private String hardwareSerial;
+    private boolean isRetry;
+    private int port;
+    private int counter;
+    private String payloadRaw;
+    private final Lazy<PayloadFields> fields;
+    private final int payloadFieldsOffset;
+    private final int payloadFieldsLength;
+    private final int metadataOffset;
+    private final int metadataLength;
+    private final Lazy<Metadata> metadata;
+
+    /**
+     * Create a new LazyUplinkMessage
+     *
+     * @param _json The json uplink, as received from the handler. It is kept as-is and must not be modified afterwards.
+     * @throws IOException in case the json is malformed
+     */
+    public LazyUplinkMessage(byte[] _json) throws IOException {
+        this(_json, FIELDS, METADATA);
+    }
+
+    /**
+     * Create a new LazyUplinkMessage, binding payload_fields and metadata with the provided readers
+     *
+     * @param _json The json uplink, as received from the handler. It is kept as-is and must not be modified afterwards.
+     * @param _fields The reader to bind payload_fields with, for a PayloadFields
+     * @param _metadata The reader to bind metadata with, for a Metadata
+     * @throws IOException in case the json is malformed
+     */
+    public LazyUplinkMessage(byte[] _json, ObjectReader _fields, ObjectReader _metadata) throws IOException {
+        json = _json;
+        int fieldsOffset = -1;
+        int fieldsLength = 0;
+        int metaOffset = -1;
+        int metaLength = 0;
+        try (JsonParser parser = AbstractClient.MAPPER.getFactory().createParser(_json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Uplink message is not a json object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (name) {
+                    case "app_id":
+                        appId = parser.getValueAsString();
+                        break;
+                    case "dev_id":
+                        devId = parser.getValueAsString();
+                        break;
+                    case "hardware_serial":
+                        hardwareSerial = parser.getValueAsString();
+                        break;
+                    case "is_retry":
+                        isRetry = parser.getValueAsBoolean();
+                        break;
+                    case "port":
+                        port = parser.getValueAsInt();
+                        break;
+                    case "counter":
+                        counter = parser.getValueAsInt();
+                        break;
+                    case "payload_raw":
+                        payloadRaw = parser.getValueAsString();
+                        break;
+                    case "payload_fields":
+                        if (token == JsonToken.START_OBJECT) {
+                            fieldsOffset = (int) parser.getTokenLocation().getByteOffset();
+                            parser.skipChildren();
+                            fieldsLength = (int) parser.getCurrentLocation().getByteOffset() - fieldsOffset;
+                        }
+                        break;
+                    case "metadata":
+                        if (token == JsonToken.START_OBJECT) {
+                            metaOffset = (int) parser.getTokenLocation().getByteOffset();
+                            parser.skipChildren();
+                            metaLength = (int) parser.getCurrentLocation().getByteOffset() - metaOffset;
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        fields = new Lazy<>(fields(fieldsOffset, fieldsLength, _fields));
+        payloadFieldsOffset = fieldsOffset;
+        payloadFieldsLength = fieldsLength;
+        metadataOffset = metaOffset;
+        metadataLength = metaLength;
+        metadata = new Lazy<>(slice(metaOffset, metaLength, _metadata));
+    }
+
+    /**
+     * Bind payload_fields to the field names of this application
+     */
+    private Lazy.Loader<PayloadFields> fields(int _offset, int _length, ObjectReader _reader) {
+        if (_offset < 0) {
+            return () -> null;
+        }
+        return () -> _reader.withValueToUpdate(new PayloadFields(FieldNames.forApplication(appId))).readValue(json, _offset, _length);
+    }
+
+    private <T> Lazy.Loader<T> slice(int _offset, int _length, ObjectReader _reader) {
+        if (_offset < 0) {
+            return () -> null;
+        }
+        return () -> _reader.readValue(json, _offset, _length);
+    }
+
+    private static <T> T get(Lazy<T> _value) {
+        try {
+            return _value.get();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Get the json this message was read from
+     *
+     * @return the json, as received. Must not be modified.
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * Get the payload fields as json, copied from the json of the message
+     *
+     * @return the json object, or null if there are none
+     */
+    @Override
+    public byte[] getPayloadFieldsJson() {
+        if (payloadFieldsOffset < 0) {
+            return null;
+        }
+        return Arrays.copyOfRange(json, payloadFieldsOffset, payloadFieldsOffset + payloadFieldsLength);
+    }
+
+    /**
+     * Stream the metadata from the json of the message, without binding it
+     *
+     * @return a parser positioned before the metadata object, to be closed by the caller, or null if there is none
+     * @throws IOException in case the parser can not be created
+     */
+    public JsonParser getMetadataParser() throws IOException {
+        if (metadataOffset < 0) {
+            return null;
+        }
+        return AbstractClient.MAPPER.getFactory().createParser(json, metadataOffset, metadataLength);
+    }
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public int getCounter() {
+        return counter;
+    }
+
+    @Override
+    String getPayloadRawBase64() {
+        return payloadRaw;
+    }
+
+    @Override
+    <T> T bindFields(ObjectReader _reader) throws IOException {
+        if (payloadFieldsOffset < 0) {
+            return null;
+        }
+        return _reader.readValue(json, payloadFieldsOffset, payloadFieldsLength);
+    }
+
+    @Override
+    public PayloadFields getFields() {
+        return get(fields);
+    }
+
+    @Override
+    public Metadata getMetadata() {
+        return get(metadata);
+    }
+
+    @Override
+    public String getAppId() {
+        return appId;
+    }
+
+    @Override
+    public String getDevId() {
+        return devId;
+    }
+
+    @Override
+    public String getHardwareSerial() {
+        return hardwareSerial;
+    }
+
+    @Override
+    public boolean isRetry() {
+        return isRetry;
+    }
+
+}
@@ -0,0 +1,522 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.messages;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * The payload fields of an uplink, without boxing.
+ * Numbers and booleans are stored in primitive arrays, indexed by the FieldNames table of the application. Strings, nested objects and arrays are stored as they would be in a Map.
+ */
+@JsonDeserialize(using = PayloadFields.Deserializer.class)
+@JsonSerialize(using = PayloadFields.Serializer.class)
+public class PayloadFields {
+
+    private static final byte ABSENT = 0;
+    private static final byte NULL = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte OBJECT = 5;
+
+    private FieldNames names;
+    private byte[] types = new byte[0];
+    private long[] longs = new long[0];
+    private double[] doubles = new double[0];
+    private Object[] objects = new Object[0];
+    private int[] order = new int[0];
+    private int count;
+    private Map<String, Object> overflow;
+
+    PayloadFields(FieldNames _names) {
+        names = _names;
+    }
+
+    /**
+     * Build from fields already bound to a Map
+     */
+    static PayloadFields of(FieldNames _names, Map<String, Object> _fields) {
+        PayloadFields fields = new PayloadFields(_names);
+        for (Map.Entry<String, Object> entry : _fields.entrySet()) {
+            fields.put(entry.getKey(), entry.getValue());
+        }
+        return fields;
+    }
+
+    /**
+     * Clear all values, keeping the arrays for the next message
+     */
+    void reset(FieldNames _names) {
+        for (int i = 0; i < count; i++) {
+            types[order[i]] = ABSENT;
+            objects[order[i]] = null;
+        }
+        count = 0;
+        overflow = null;
+        names = _names;
+    }
+
+    void put(String _name, Object _value) {
+        if (_value == null) {
+            putNull(_name);
+        } else if (_value instanceof Integer || _value instanceof Long) {
+            putLong(_name, ((Number) _value).longValue());
+        } else if (_value instanceof Double) {
+            putDouble(_name, (Double) _value);
+        } else if (_value instanceof Boolean) {
+            putBoolean(_name, (Boolean) _value);
+        } else {
+            putObject(_name, _value);
+        }
+    }
+
+    void putLong(String _name, long _value) {
+        int slot = store(_name, LONG);
+        if (slot < 0) {
+            overflow(_name, box(_value));
+        } else {
+            longs[slot] = _value;
+        }
+    }
+
+    void putDouble(String _name, double _value) {
+        int slot = store(_name, DOUBLE);
+        if (slot < 0) {
+            overflow(_name, _value);
+        } else {
+            doubles[slot] = _value;
+        }
+    }
+
+    void putBoolean(String _name, boolean _value) {
+        int slot = store(_name, BOOLEAN);
+        if (slot < 0) {
+            overflow(_name, _value);
+        } else {
+            longs[slot] = _value ? 1 : 0;
+        }
+    }
+
+    void putNull(String _name) {
+        if (store(_name, NULL) < 0) {
+            overflow(_name, null);
+        }
+    }
+
+    void putObject(String _name, Object _value) {
+        int slot = store(_name, OBJECT);
+        if (slot < 0) {
+            overflow(_name, _value);
+        } else {
+            objects[slot] = _value;
+        }
+    }
+
+    private int store(String _name, byte _type) {
+        int slot = names.intern(_name);
+        if (slot < 0) {
+            return -1;
+        }
+        if (slot >= types.length) {
+            int length = Math.min(Math.max(slot + 1, types.length * 2), FieldNames.MAX_NAMES);
+            types = Arrays.copyOf(types, length);
+            longs = Arrays.copyOf(longs, length);
+            doubles = Arrays.copyOf(doubles, length);
+            objects = Arrays.copyOf(objects, length);
+            order = Arrays.copyOf(order, length);
+        }
+        if (types[slot] == ABSENT) {
+            order[count++] = slot;
+        } else {
+            objects[slot] = null;
+        }
+        types[slot] = _type;
+        return slot;
+    }
+
+    private void overflow(String _name, Object _value) {
+        if (overflow == null) {
+            overflow = new LinkedHashMap<>();
+        }
+        overflow.put(_name, _value);
+    }
+
+    private int slotOf(String _name) {
+        int slot = names.indexOf(_name);
+        if (slot < 0 || slot >= types.length || types[slot] == ABSENT) {
+            return -1;
+        }
+        return slot;
+    }
+
+    private Object value(int _slot) {
+        switch (types[_slot]) {
+            case LONG:
+                return box(longs[_slot]);
+            case DOUBLE:
+                return doubles[_slot];
+            case BOOLEAN:
+                return longs[_slot] != 0;
+            case OBJECT:
+                return objects[_slot];
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Box like Jackson does, to the smallest of Integer and Long
+     */
+    private static Object box(long _value) {
+        if (_value >= Integer.MIN_VALUE && _value <= Integer.MAX_VALUE) {
+            return (int) _value;
+        }
+        return _value;
+    }
+
+    private Object require(String _name) {
+        Object value = get(_name);
+        if (value == null) {
+            throw new NoSuchElementException("Field " + _name + " is absent or null");
+        }
+        return value;
+    }
+
+    /**
+     * Check if a field is present, even if null
+     *
+     * @param _name The field name
+     * @return true if the field is present
+     */
+    public boolean has(String _name) {
+        return slotOf(_name) >= 0 || (overflow != null && overflow.containsKey(_name));
+    }
+
+    /**
+     * Get the number of fields
+     *
+     * @return the number of fields
+     */
+    public int size() {
+        return count + ((overflow == null) ? 0 : overflow.size());
+    }
+
+    /**
+     * Get a numeric field as a double
+     *
+     * @param _name The field name
+     * @return the value of the field
+     * @throws NoSuchElementException if the field is absent or null
+     * @throws ClassCastException if the field is not a number
+     */
+    public double getDouble(String _name) {
+        int slot = slotOf(_name);
+        if (slot >= 0 && types[slot] == DOUBLE) {
+            return doubles[slot];
+        }
+        if (slot >= 0 && types[slot] == LONG) {
+            return longs[slot];
+        }
+        Object value = require(_name);
+        if (!(value instanceof Number)) {
+            throw new ClassCastException("Field " + _name + " is not a number");
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    /**
+     * Get a numeric field as a double
+     *
+     * @param _name The field name
+     * @param _default The value to return if the field is absent, null or not a number
+     * @return the value of the field
+     */
+    public double getDouble(String _name, double _default) {
+        int slot = slotOf(_name);
+        if (slot >= 0 && types[slot] == DOUBLE) {
+            return doubles[slot];
+        }
+        if (slot >= 0 && types[slot] == LONG) {
+            return longs[slot];
+        }
+        Object value = get(_name);
+        return (value instanceof Number) ? ((Number) value).doubleValue() : _default;
+    }
+
+    /**
+     * Get an integer field as a long
+     *
+     * @param _name The field name
+     * @return the value of the field
+     * @throws NoSuchElementException if the field is absent or null
+     * @throws ClassCastException if the field is not an integer
+     */
+    public long getLong(String _name) {
+        int slot = slotOf(_name);
+        if (slot >= 0 && types[slot] == LONG) {
+            return longs[slot];
+        }
+        Object value = require(_name);
+        if (!(value instanceof Integer || value instanceof Long)) {
+            throw new ClassCastException("Field " + _name + " is not an integer");
+        }
+        return ((Number) value).longValue();
+    }
+
+    /**
+     * Get an integer field as a long
+     *
+     * @param _name The field name
+     * @param _default The value to return if the field is absent, null or not an integer
+     * @return the value of the field
+     */
+    public long getLong(String _name, long _default) {
+        int slot = slotOf(_name);
+        if (slot >= 0 && types[slot] == LONG) {
+            return longs[slot];
+        }
+        Object value = get(_name);
+        return (value instanceof Integer || value instanceof Long) ? ((Number) value).longValue() : _default;
+    }
+
+    /**
+     * Get a boolean field
+     *
+     * @param _name The field name
+     * @return the value of the field
+     * @throws NoSuchElementException if the field is absent or null
+     * @throws ClassCastException if the field is not a boolean
+     */
+    public boolean getBoolean(String _name) {
+        int slot = slotOf(_name);
+        if (slot >= 0 && types[slot] == BOOLEAN) {
+            return longs[slot] != 0;
+        }
+        Object value = require(_name);
+        if (!(value instanceof Boolean)) {
+            throw new ClassCastException("Field " + _name + " is not a boolean");
+        }
+        return (Boolean) value;
+    }
+
+    /**
+     * Get a boolean field
+     *
+     * @param _name The field name
+     * @param _default The value to return if the field is absent, null or not a boolean
+     * @return the value of the field
+     */
+    public boolean getBoolean(String _name, boolean _default) {
+        int slot = slotOf(_name);
+        if (slot >= 0 && types[slot] == BOOLEAN) {
+            return longs[slot] != 0;
+        }
+        Object value = get(_name);
+        return (value instanceof Boolean) ? (Boolean) value : _default;
+    }
+
+    /**
+     * Get a string field
+     *
+     * @param _name The field name
+     * @return the value of the field, or null if the field is absent or null
+     * @throws ClassCastException if the field is not a string
+     */
+    public String getString(String _name) {
+        Object value = get(_name);
+        if (value != null && !(value instanceof String)) {
+            throw new ClassCastException("Field " + _name + " is not a string");
+        }
+        return (String) value;
+    }
+
+    /**
+     * Get a field, boxed as it would be in getPayloadFields()
+     *
+     * @param _name The field name
+     * @return the value of the field, or null if the field is absent or null
+     */
+    public Object get(String _name) {
+        int slot = slotOf(_name);
+        if (slot >= 0) {
+            return value(slot);
+        }
+        return (overflow == null) ? null : overflow.get(_name);
+    }
+
+    /**
+     * Copy the fields to a Map, in the order they were received. Every number and boolean is boxed.
+     *
+     * @return a new Map where keys are strings, and values are any json-valid entity
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            map.put(names.getName(order[i]), value(order[i]));
+        }
+        if (overflow != null) {
+            map.putAll(overflow);
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    /**
+     * Hand-written streaming deserializer, storing numbers and booleans without boxing
+     */
+    public static class Deserializer extends StdDeserializer<PayloadFields> implements ResolvableDeserializer {
+
+        private static final long serialVersionUID = 1L;
+
+        private JsonDeserializer<Object> untyped;
+
+        public Deserializer() {
+            super(PayloadFields.class);
+        }
+
+        @Override
+        public void resolve(DeserializationContext _ctxt) throws JsonMappingException {
+            untyped = _ctxt.findRootValueDeserializer(_ctxt.constructType(Object.class));
+        }
+
+        @Override
+        public PayloadFields deserialize(JsonParser _parser, DeserializationContext _ctxt) throws IOException {
+            return deserialize(_parser, _ctxt, new PayloadFields(FieldNames.forApplication(null)));
+        }
+
+        /**
+         * Fill an existing PayloadFields in place, replacing all its values
+         */
+        @Override
+        public PayloadFields deserialize(JsonParser _parser, DeserializationContext _ctxt, PayloadFields _fields) throws IOException {
+            JsonToken token = _parser.getCurrentToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = _parser.nextToken();
+            }
+            if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+                return (PayloadFields) _ctxt.handleUnexpectedToken(PayloadFields.class, _parser);
+            }
+            _fields.reset(_fields.names);
+            for (; token == JsonToken.FIELD_NAME; token = _parser.nextToken()) {
+                String name = _parser.getCurrentName();
+                switch (_parser.nextToken()) {
+                    case VALUE_NUMBER_INT:
+                        if (_ctxt.hasSomeOfFeatures(F_MASK_INT_COERCIONS) || _parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                            _fields.putObject(name, untyped.deserialize(_parser, _ctxt));
+                        } else {
+                            _fields.putLong(name, _parser.getLongValue());
+                        }
+                        break;
+                    case VALUE_NUMBER_FLOAT:
+                        if (_ctxt.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)) {
+                            _fields.putObject(name, untyped.deserialize(_parser, _ctxt));
+                        } else {
+                            _fields.putDouble(name, _parser.getDoubleValue());
+                        }
+                        break;
+                    case VALUE_TRUE:
+                        _fields.putBoolean(name, true);
+                        break;
+                    case VALUE_FALSE:
+                        _fields.putBoolean(name, false);
+                        break;
+                    case VALUE_NULL:
+                        _fields.putNull(name);
+                        break;
+                    case VALUE_STRING:
+                        _fields.putObject(name, _parser.getText());
+                        break;
+                    default:
+                        _fields.putObject(name, untyped.deserialize(_parser, _ctxt));
+                }
+            }
+            return _fields;
+        }
+    }
+
+    /**
+     * Serializer writing the fields as a json object, in the order they were received, without boxing numbers and booleans
+     */
+    public static class Serializer extends StdSerializer<PayloadFields> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Serializer() {
+            super(PayloadFields.class);
+        }
+
+        @Override
+        public void serialize(PayloadFields _fields, JsonGenerator _gen, SerializerProvider _provider) throws IOException {
+            _gen.writeStartObject();
+            for (int i = 0; i < _fields.count; i++) {
+                int slot = _fields.order[i];
+                _gen.writeFieldName(_fields.names.getName(slot));
+                switch (_fields.types[slot]) {
+                    case LONG:
+                        _gen.writeNumber(_fields.longs[slot]);
+                        break;
+                    case DOUBLE:
+                        _gen.writeNumber(_fields.doubles[slot]);
+                        break;
+                    case BOOLEAN:
+                        _gen.writeBoolean(_fields.longs[slot] != 0);
+                        break;
+                    case OBJECT:
+                        _provider.defaultSerializeValue(_fields.objects[slot], _gen);
+                        break;
+                    default:
+                        _gen.writeNull();
+                }
+            }
+            if (_fields.overflow != null) {
+                for (Map.Entry<String, Object> entry : _fields.overflow.entrySet()) {
+                    _provider.defaultSerializeField(entry.getKey(), entry.getValue(), _gen);
+                }
+            }
+            _gen.writeEndObject();
+        }
+    }
+
+}
@@ -24,6 +24,7 @@
 package org.thethingsnetwork.data.common.messages;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import org.thethingsnetwork.data.common.AbstractClient;
 
 /**
@@ -33,6 +34,18 @@ import org.thethingsnetwork.data.common.AbstractClient;
  */
 public abstract class RawMessage implements DataMessage {
 
+    /**
+     * Wrap a payload, as received.
+     * The returned RawMessage decodes the payload as UTF-8 at most once, parses and memoizes numbers without building a String when possible, and binds custom classes to a new instance on every call.
+     * It is thread-safe and can be shared by several handlers.
+     *
+     * @param _payload The payload. It is kept as-is and must not be modified afterwards.
+     * @return a RawMessage over the payload
+     */
+    public static RawMessage wrap(byte[] _payload) {
+        return new ByteRawMessage(_payload);
+    }
+
     /**
      * Get the payload as a String
      *
@@ -40,6 +53,15 @@ public abstract class RawMessage implements DataMessage {
      */
     public abstract String asString();
 
+    /**
+     * Get the payload as bytes
+     *
+     * @return the payload as UTF-8 bytes. This is a copy that can be freely modified.
+     */
+    public byte[] asBytes() {
+        return asString().getBytes(StandardCharsets.UTF_8);
+    }
+
     /**
      * Get the payload as an Integer
      *
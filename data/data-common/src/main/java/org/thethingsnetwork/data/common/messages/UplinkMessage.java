@@ -23,9 +23,29 @@
  */
 package org.thethingsnetwork.data.common.messages;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.thethingsnetwork.data.common.AbstractClient;
 import org.thethingsnetwork.data.common.Metadata;
 
 /**
@@ -33,8 +53,11 @@ import org.thethingsnetwork.data.common.Metadata;
  *
  * @author Romain Cambier
  */
+@JsonSerialize(using = UplinkMessage.Serializer.class)
 public class UplinkMessage implements DataMessage {
 
+    private static final ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
     private String appId;
     private String devId;
     private String hardwareSerial;
@@ -44,8 +67,16 @@ public class UplinkMessage implements DataMessage {
     private String payloadRaw;
     private Map<String, Object> payloadFields;
     private Metadata metadata;
+    @JsonIgnore
+    private volatile byte[] payload;
+    @JsonIgnore
+    private volatile PayloadFields fields;
+    @JsonIgnore
+    private volatile Map<String, Object> fieldsView;
+    @JsonIgnore
+    private volatile Bound bound;
 
-    private UplinkMessage() {
+    UplinkMessage() {
 
     }
 
@@ -70,10 +101,183 @@ public class UplinkMessage implements DataMessage {
     /**
      * Get the raw payload
      *
-     * @return the raw payload as a byte array
+     * @return the raw payload as a byte array. This is a copy that can be freely modified.
      */
     public byte[] getPayloadRaw() {
-        return Base64.getDecoder().decode(payloadRaw);
+        return payload().clone();
+    }
+
+    /**
+     * Get the raw payload without copying it
+     *
+     * @return a read-only ByteBuffer over the raw payload
+     */
+    public ByteBuffer getPayloadRawBuffer() {
+        return ByteBuffer.wrap(payload()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Copy the raw payload into a caller-provided buffer
+     *
+     * @param _target The buffer to write the payload to, at its current position
+     * @return the number of bytes written
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public int getPayloadRaw(ByteBuffer _target) {
+        byte[] raw = payload();
+        _target.put(raw);
+        return raw.length;
+    }
+
+    /**
+     * Copy the raw payload into a caller-provided array
+     *
+     * @param _target The array to write the payload to
+     * @param _offset The index of the first byte to write
+     * @return the number of bytes written
+     * @throws IndexOutOfBoundsException if the array is too small
+     */
+    public int getPayloadRaw(byte[] _target, int _offset) {
+        byte[] raw = payload();
+        System.arraycopy(raw, 0, _target, _offset, raw.length);
+        return raw.length;
+    }
+
+    /**
+     * Get the length of the raw payload
+     *
+     * @return the number of bytes in the raw payload
+     */
+    public int getPayloadLength() {
+        return payload().length;
+    }
+
+    /**
+     * Read an unsigned byte from the raw payload
+     *
+     * @param _offset The index of the byte
+     * @return the byte, between 0 and 255
+     */
+    public int getPayloadUInt8(int _offset) {
+        return payload()[_offset] & 0xFF;
+    }
+
+    /**
+     * Read a signed byte from the raw payload
+     *
+     * @param _offset The index of the byte
+     * @return the byte, between -128 and 127
+     */
+    public int getPayloadInt8(int _offset) {
+        return payload()[_offset];
+    }
+
+    /**
+     * Read an unsigned 16-bit integer from the raw payload
+     *
+     * @param _offset The index of the first byte
+     * @param _order The byte order of the payload
+     * @return the integer, between 0 and 65535
+     */
+    public int getPayloadUInt16(int _offset, ByteOrder _order) {
+        return (int) read(_offset, 2, _order);
+    }
+
+    /**
+     * Read a signed 16-bit integer from the raw payload
+     *
+     * @param _offset The index of the first byte
+     * @param _order The byte order of the payload
+     * @return the integer
+     */
+    public int getPayloadInt16(int _offset, ByteOrder _order) {
+        return (short) read(_offset, 2, _order);
+    }
+
+    /**
+     * Read a signed 24-bit integer from the raw payload, as used for coordinates by most GPS trackers
+     *
+     * @param _offset The index of the first byte
+     * @param _order The byte order of the payload
+     * @return the integer
+     */
+    public int getPayloadInt24(int _offset, ByteOrder _order) {
+        return ((int) read(_offset, 3, _order) << 8) >> 8;
+    }
+
+    /**
+     * Read an unsigned 32-bit integer from the raw payload
+     *
+     * @param _offset The index of the first byte
+     * @param _order The byte order of the payload
+     * @return the integer, between 0 and 4294967295
+     */
+    public long getPayloadUInt32(int _offset, ByteOrder _order) {
+        return read(_offset, 4, _order);
+    }
+
+    /**
+     * Read a signed 32-bit integer from the raw payload
+     *
+     * @param _offset The index of the first byte
+     * @param _order The byte order of the payload
+     * @return the integer
+     */
+    public int getPayloadInt32(int _offset, ByteOrder _order) {
+        return (int) read(_offset, 4, _order);
+    }
+
+    /**
+     * Read an IEEE 754 single precision float from the raw payload
+     *
+     * @param _offset The index of the first byte
+     * @param _order The byte order of the payload
+     * @return the float
+     */
+    public float getPayloadFloat(int _offset, ByteOrder _order) {
+        return Float.intBitsToFloat((int) read(_offset, 4, _order));
+    }
+
+    /**
+     * Read an unsigned integer of up to 4 bytes from the decoded payload
+     */
+    private long read(int _offset, int _length, ByteOrder _order) {
+        byte[] raw = payload();
+        if (_offset < 0 || _offset + _length > raw.length) {
+            throw new IndexOutOfBoundsException("Can not read " + _length + " bytes at " + _offset + " in a " + raw.length + " bytes payload");
+        }
+        long value = 0;
+        if (_order == ByteOrder.BIG_ENDIAN) {
+            for (int i = 0; i < _length; i++) {
+                value = (value << 8) | (raw[_offset + i] & 0xFF);
+            }
+        } else {
+            for (int i = _length - 1; i >= 0; i--) {
+                value = (value << 8) | (raw[_offset + i] & 0xFF);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Decode payload_raw once. Concurrent first calls may both decode, which is harmless.
+     */
+    private byte[] payload() {
+        byte[] raw = payload;
+        if (raw == null) {
+            raw = Base64.getDecoder().decode(getPayloadRawBase64());
+            payload = raw;
+        }
+        return raw;
+    }
+
+    /**
+     * Get payload_raw, as received
+     *
+     * @return the base64-encoded payload
+     */
+    String getPayloadRawBase64() {
+        return payloadRaw;
     }
 
     /**
@@ -82,7 +286,86 @@ public class UplinkMessage implements DataMessage {
      * @return the payload fields as a Map where keys are strings, and values are any json-valid entity
      */
     public Map<String, Object> getPayloadFields() {
-        return Collections.unmodifiableMap(payloadFields);
+        Map<String, Object> view = fieldsView;
+        if (view == null) {
+            Map<String, Object> map = payloadFields;
+            if (map == null) {
+                PayloadFields unboxed = getFields();
+                if (unboxed == null) {
+                    return null;
+                }
+                map = unboxed.toMap();
+            }
+            view = Collections.unmodifiableMap(map);
+            fieldsView = view;
+        }
+        return view;
+    }
+
+    /**
+     * Get the payload fields without boxing numbers and booleans. Only if you have a decoder function
+     *
+     * @return the payload fields, or null if there are none
+     */
+    public PayloadFields getFields() {
+        PayloadFields unboxed = fields;
+        if (unboxed == null && payloadFields != null) {
+            unboxed = PayloadFields.of(FieldNames.forApplication(getAppId()), payloadFields);
+            fields = unboxed;
+        }
+        return unboxed;
+    }
+
+    /**
+     * Get the payload fields bound to a custom class, as RawMessage.as() would do for a single field.
+     * The deserializer of each class is built once, and the fields are bound at most once per message for a given class.
+     *
+     * @param <T> the type of the payload fields
+     * @param _type The class to bind the payload fields to
+     * @return the payload fields, or null if there are none
+     * @throws IOException in case the payload fields do not match the class
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getPayloadFields(Class<T> _type) throws IOException {
+        if (_type == null) {
+            throw new NullPointerException();
+        }
+        Bound last = bound;
+        if (last != null && last.type == _type) {
+            return (T) last.value;
+        }
+        T value = bindFields(READERS.computeIfAbsent(_type, AbstractClient.MAPPER::readerFor));
+        bound = new Bound(_type, value);
+        return value;
+    }
+
+    /**
+     * Get the payload fields as json
+     *
+     * @return the json object, or null if there are none
+     * @throws IOException in case the payload fields can not be serialized
+     */
+    public byte[] getPayloadFieldsJson() throws IOException {
+        Map<String, Object> map = getPayloadFields();
+        if (map == null) {
+            return null;
+        }
+        return AbstractClient.MAPPER.writeValueAsBytes(map);
+    }
+
+    /**
+     * Bind the payload fields with a reader, replaying them as tokens instead of building a tree. Subclasses still holding the json should bind from it.
+     */
+    <T> T bindFields(ObjectReader _reader) throws IOException {
+        Object source = (payloadFields != null) ? payloadFields : getFields();
+        if (source == null) {
+            return null;
+        }
+        TokenBuffer tokens = new TokenBuffer(AbstractClient.MAPPER, false);
+        AbstractClient.MAPPER.writeValue(tokens, source);
+        try (JsonParser parser = tokens.asParser()) {
+            return _reader.readValue(parser);
+        }
     }
 
     /**
@@ -130,4 +413,144 @@ public class UplinkMessage implements DataMessage {
         return isRetry;
     }
 
+    /**
+     * Last payload fields bound to a custom class
+     */
+    private static final class Bound {
+
+        private final Class<?> type;
+        private final Object value;
+
+        public Bound(Class<?> _type, Object _value) {
+            type = _type;
+            value = _value;
+        }
+
+    }
+
+    /**
+     * Hand-written streaming deserializer, equivalent to the reflective binding of AbstractClient.MAPPER
+     */
+    public static class Deserializer extends StdDeserializer<UplinkMessage> implements ResolvableDeserializer {
+
+        private static final long serialVersionUID = 1L;
+
+        private JsonDeserializer<Object> fields;
+        private JsonDeserializer<Object> metadata;
+
+        public Deserializer() {
+            super(UplinkMessage.class);
+        }
+
+        @Override
+        public void resolve(DeserializationContext _ctxt) throws JsonMappingException {
+            fields = _ctxt.findRootValueDeserializer(_ctxt.constructType(PayloadFields.class));
+            metadata = _ctxt.findRootValueDeserializer(_ctxt.constructType(Metadata.class));
+        }
+
+        @Override
+        public UplinkMessage deserialize(JsonParser _parser, DeserializationContext _ctxt) throws IOException {
+            return deserialize(_parser, _ctxt, new UplinkMessage());
+        }
+
+        /**
+         * Fill an existing UplinkMessage in place. Fields missing from the json are reset, and the PayloadFields and Metadata are reused.
+         */
+        @Override
+        public UplinkMessage deserialize(JsonParser _parser, DeserializationContext _ctxt, UplinkMessage _message) throws IOException {
+            JsonToken token = _parser.getCurrentToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = _parser.nextToken();
+            }
+            if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+                return (UplinkMessage) _ctxt.handleUnexpectedToken(UplinkMessage.class, _parser);
+            }
+            PayloadFields previousFields = _message.fields;
+            Metadata previousMetadata = _message.metadata;
+            _message.appId = null;
+            _message.devId = null;
+            _message.hardwareSerial = null;
+            _message.isRetry = false;
+            _message.port = 0;
+            _message.counter = 0;
+            _message.payloadRaw = null;
+            _message.payloadFields = null;
+            _message.metadata = null;
+            _message.payload = null;
+            _message.fields = null;
+            _message.fieldsView = null;
+            _message.bound = null;
+            for (; token == JsonToken.FIELD_NAME; token = _parser.nextToken()) {
+                String name = _parser.getCurrentName();
+                token = _parser.nextToken();
+                switch (name) {
+                    case "app_id":
+                        _message.appId = _parser.getValueAsString();
+                        break;
+                    case "dev_id":
+                        _message.devId = _parser.getValueAsString();
+                        break;
+                    case "hardware_serial":
+                        _message.hardwareSerial = _parser.getValueAsString();
+                        break;
+                    case "is_retry":
+                        _message.isRetry = _parser.getValueAsBoolean();
+                        break;
+                    case "port":
+                        _message.port = _parser.getValueAsInt();
+                        break;
+                    case "counter":
+                        _message.counter = _parser.getValueAsInt();
+                        break;
+                    case "payload_raw":
+                        _message.payloadRaw = _parser.getValueAsString();
+                        break;
+                    case "payload_fields":
+                        if (token != JsonToken.VALUE_NULL) {
+                            PayloadFields into = (previousFields == null) ? new PayloadFields(null) : previousFields;
+                            into.reset(FieldNames.forApplication(_message.appId));
+                            _message.fields = (PayloadFields) fields.deserialize(_parser, _ctxt, into);
+                        }
+                        break;
+                    case "metadata":
+                        if (token == JsonToken.START_OBJECT && previousMetadata != null) {
+                            _message.metadata = (Metadata) metadata.deserialize(_parser, _ctxt, previousMetadata);
+                        } else if (token != JsonToken.VALUE_NULL) {
+                            _message.metadata = (Metadata) metadata.deserialize(_parser, _ctxt);
+                        }
+                        break;
+                }
+                _parser.skipChildren();
+            }
+            return _message;
+        }
+    }
+
+    /**
+     * Serializer writing the public view of an uplink, as received, whatever the decoder and subclass
+     */
+    public static class Serializer extends StdSerializer<UplinkMessage> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Serializer() {
+            super(UplinkMessage.class);
+        }
+
+        @Override
+        public void serialize(UplinkMessage _message, JsonGenerator _gen, SerializerProvider _provider) throws IOException {
+            _gen.writeStartObject();
+            _gen.writeStringField("app_id", _message.getAppId());
+            _gen.writeStringField("dev_id", _message.getDevId());
+            _gen.writeStringField("hardware_serial", _message.getHardwareSerial());
+            _gen.writeBooleanField("is_retry", _message.isRetry());
+            _gen.writeNumberField("port", _message.getPort());
+            _gen.writeNumberField("counter", _message.getCounter());
+            _gen.writeStringField("payload_raw", _message.getPayloadRawBase64());
+            _provider.defaultSerializeField("payload_fields", _message.getPayloadFields(), _gen);
+            _provider.defaultSerializeField("metadata", _message.getMetadata(), _gen);
+            _gen.writeEndObject();
+        }
+    }
+
 }
@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of a data client, resolved once so that the hot paths only touch counters and histograms.
+ * Histograms are in ns:
+ * <ul>
+ * <li>receive: handling of a received message by the transport thread, up to the dispatch of its handlers</li>
+ * <li>parse: split of the topic, from the reception of the message</li>
+ * <li>decode: the Decoder call for an uplink or activation. With the LazyDecoder this is only the scan of the top-level fields: payload_fields and metadata are decoded later, by the handlers reading them, and are not timed.</li>
+ * <li>dispatch.wait: time from the reception of a message to the start of a handler call, or from the scheduling of a batch or connection handler call</li>
+ * <li>handler: run time of a handler call</li>
+ * <li>send: time to publish a downlink, or to complete it for sendAsync</li>
+ * </ul>
+ */
+public class ClientMetrics {
+
+    private final MetricsRegistry registry;
+    private final Counter uplinks;
+    private final Counter activations;
+    private final Counter events;
+    private final Counter ignored;
+    private final Counter duplicates;
+    private final Counter dropped;
+    private final Counter sent;
+    private final Counter sendErrors;
+    private final Counter errors;
+    private final Histogram receive;
+    private final Histogram parse;
+    private final Histogram decode;
+    private final Histogram dispatchWait;
+    private final Histogram handler;
+    private final Histogram send;
+
+    /**
+     * Create a new ClientMetrics
+     *
+     * @param _registry The registry holding the metrics
+     * @param _queueDepth The depth of the dispatcher queue
+     */
+    public ClientMetrics(MetricsRegistry _registry, LongSupplier _queueDepth) {
+        registry = _registry;
+        uplinks = registry.counter("received.uplinks");
+        activations = registry.counter("received.activations");
+        events = registry.counter("received.events");
+        ignored = registry.counter("received.ignored");
+        duplicates = registry.counter("received.duplicates");
+        dropped = registry.counter("dispatch.dropped");
+        sent = registry.counter("sent");
+        sendErrors = registry.counter("send.errors");
+        errors = registry.counter("errors");
+        receive = registry.histogram("receive");
+        parse = registry.histogram("parse");
+        decode = registry.histogram("decode");
+        dispatchWait = registry.histogram("dispatch.wait");
+        handler = registry.histogram("handler");
+        send = registry.histogram("send");
+        registry.gauge("dispatch.depth", _queueDepth);
+    }
+
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    public void uplink() {
+        uplinks.increment();
+    }
+
+    public void activation() {
+        activations.increment();
+    }
+
+    public void event() {
+        events.increment();
+    }
+
+    public void ignored() {
+        ignored.increment();
+    }
+
+    public void duplicate() {
+        duplicates.increment();
+    }
+
+    public void dropped() {
+        dropped.increment();
+    }
+
+    public void error() {
+        errors.increment();
+    }
+
+    /**
+     * Record the start of a handler call
+     *
+     * @param _received The reception of the message the call handles
+     * @return the start of the call, for handled()
+     */
+    public long started(long _received) {
+        long start = System.nanoTime();
+        dispatchWait.record(start - _received);
+        return start;
+    }
+
+    /**
+     * Record the end of a handler call
+     *
+     * @param _start The start of the call, as returned by started()
+     */
+    public void handled(long _start) {
+        handler.recordSince(_start);
+    }
+
+    public void received(long _start) {
+        receive.recordSince(_start);
+    }
+
+    public void parsed(long _start) {
+        parse.recordSince(_start);
+    }
+
+    public void decoded(long _start) {
+        decode.recordSince(_start);
+    }
+
+    /**
+     * Time a downlink
+     *
+     * @param _start The start of the publish
+     * @param _error The error, or null if it was sent
+     */
+    public void sent(long _start, Throwable _error) {
+        send.recordSince(_start);
+        if (_error == null) {
+            sent.increment();
+        } else {
+            sendErrors.increment();
+        }
+    }
+
+    /**
+     * Wrap a handler call to time its wait for a thread and its run.
+     * This allocates a wrapper per call: per-message calls use started() and handled() instead, from the reception timestamp.
+     *
+     * @param _task The handler call
+     * @return the timed handler call
+     */
+    public Runnable timed(Runnable _task) {
+        long queued = System.nanoTime();
+        return () -> {
+            long start = started(queued);
+            try {
+                _task.run();
+            } finally {
+                handled(start);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+/**
+ * Named counters, gauges and histograms. Metrics are created on first use and live as long as the registry.
+ * They can be read through JMX, see registerMBean, or pushed to any MetricsExporter.
+ */
+public class MetricsRegistry {
+
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, (Runnable _task) -> {
+        Thread thread = new Thread(_task, "ttn-metrics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private static final String[] PERCENTILES = {"p50", "p90", "p99", "p999"};
+    private static final double[] PERCENTILE_VALUES = {50, 90, 99, 99.9};
+
+    private final Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * Get or create a counter
+     *
+     * @param _name The name of the counter
+     * @return the counter
+     */
+    public Counter counter(String _name) {
+        return get(_name, Counter.class, new Counter());
+    }
+
+    /**
+     * Get or create a histogram
+     *
+     * @param _name The name of the histogram
+     * @return the histogram
+     */
+    public Histogram histogram(String _name) {
+        return get(_name, Histogram.class, new Histogram());
+    }
+
+    /**
+     * Register a gauge, replacing any previous one with the same name
+     *
+     * @param _name The name of the gauge
+     * @param _gauge The function reading the gauge
+     */
+    public void gauge(String _name, LongSupplier _gauge) {
+        metrics.put(_name, _gauge);
+    }
+
+    private <T> T get(String _name, Class<T> _type, T _fresh) {
+        Object metric = metrics.putIfAbsent(_name, _fresh);
+        if (metric == null) {
+            return _fresh;
+        }
+        if (!_type.isInstance(metric)) {
+            throw new IllegalArgumentException(_name + " is not a " + _type.getSimpleName());
+        }
+        return _type.cast(metric);
+    }
+
+    /**
+     * Push the current value of every metric, by name order
+     *
+     * @param _exporter The exporter
+     */
+    public void export(MetricsExporter _exporter) {
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            Object metric = entry.getValue();
+            if (metric instanceof Counter) {
+                _exporter.counter(entry.getKey(), ((Counter) metric).get());
+            } else if (metric instanceof Histogram) {
+                _exporter.histogram(entry.getKey(), (Histogram) metric);
+            } else {
+                _exporter.gauge(entry.getKey(), ((LongSupplier) metric).getAsLong());
+            }
+        }
+    }
+
+    /**
+     * Push the metrics periodically, from a shared daemon thread
+     *
+     * @param _exporter The exporter
+     * @param _period The period, in ms
+     * @return the scheduled export, to cancel to stop it
+     */
+    public ScheduledFuture<?> export(MetricsExporter _exporter, long _period) {
+        return TIMER.scheduleAtFixedRate(() -> {
+            try {
+                export(_exporter);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }, _period, _period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Expose the metrics on the platform MBean server. Histograms expose their count, mean, max and percentiles as separate attributes.
+     *
+     * @param _name The object name, e.g. org.thethingsnetwork.data:type=Client,name=my-app
+     * @return the registered name
+     * @throws JMException in case the name is invalid or already registered
+     */
+    public ObjectName registerMBean(String _name) throws JMException {
+        ObjectName name = new ObjectName(_name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new View(), name);
+        return name;
+    }
+
+    /**
+     * Remove the metrics from the platform MBean server
+     *
+     * @param _name The name returned by registerMBean
+     * @throws JMException in case the name is not registered
+     */
+    public void unregisterMBean(ObjectName _name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(_name);
+    }
+
+    /**
+     * Read-only MBean view of the registry, listing the metrics existing when it is inspected
+     */
+    private final class View implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String _attribute) throws AttributeNotFoundException {
+            Object metric = metrics.get(_attribute);
+            if (metric instanceof Counter) {
+                return ((Counter) metric).get();
+            }
+            if (metric instanceof LongSupplier) {
+                return ((LongSupplier) metric).getAsLong();
+            }
+            int dot = _attribute.lastIndexOf('.');
+            if (dot > 0) {
+                metric = metrics.get(_attribute.substring(0, dot));
+                if (metric instanceof Histogram) {
+                    Histogram histogram = (Histogram) metric;
+                    String field = _attribute.substring(dot + 1);
+                    switch (field) {
+                        case "count":
+                            return histogram.getCount();
+                        case "mean":
+                            return histogram.getMean();
+                        case "max":
+                            return histogram.getMax();
+                        default:
+                            for (int i = 0; i < PERCENTILES.length; i++) {
+                                if (PERCENTILES[i].equals(field)) {
+                                    return histogram.getPercentile(PERCENTILE_VALUES[i]);
+                                }
+                            }
+                    }
+                }
+            }
+            throw new AttributeNotFoundException(_attribute);
+        }
+
+        @Override
+        public void setAttribute(Attribute _attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] _attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : _attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException ex) {
+                    /**
+                     * Skipped, as per the DynamicMBean contract
+                     */
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList _attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String _action, Object[] _params, String[] _signature) {
+            throw new UnsupportedOperationException(_action);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+                String name = entry.getKey();
+                if (entry.getValue() instanceof Histogram) {
+                    attributes.add(new MBeanAttributeInfo(name + ".count", "long", "Recorded values", true, false, false));
+                    attributes.add(new MBeanAttributeInfo(name + ".mean", "double", "Mean, in ns", true, false, false));
+                    attributes.add(new MBeanAttributeInfo(name + ".max", "long", "Max, in ns", true, false, false));
+                    for (String percentile : PERCENTILES) {
+                        attributes.add(new MBeanAttributeInfo(name + "." + percentile, "long", "Percentile, in ns", true, false, false));
+                    }
+                } else {
+                    attributes.add(new MBeanAttributeInfo(name, "long", entry.getValue() instanceof Counter ? "Counter" : "Gauge", true, false, false));
+                }
+            }
+            return new MBeanInfo(MetricsRegistry.class.getName(), "The Things Network data client metrics", attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+        }
+
+    }
+
+}
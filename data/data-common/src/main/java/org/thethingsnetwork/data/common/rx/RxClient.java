@@ -0,0 +1,176 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.rx;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.flow.MessagePublisher;
+import org.thethingsnetwork.data.common.messages.DeviceMessage;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+import rx.Observable;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * RxJava view of a data client, built on its publishers.
+ * Observables must be created before the client starts. They are hot: every subscription gets the messages received while it is subscribed,
+ * the backpressure of the subscribers throttles the client, and unsubscribing cancels the underlying subscription.
+ */
+public class RxClient {
+
+    private final AbstractClient client;
+
+    /**
+     * Create a new RxClient
+     *
+     * @param _client The client to observe, not started yet
+     */
+    public RxClient(AbstractClient _client) {
+        if (_client == null) {
+            throw new NullPointerException();
+        }
+        client = _client;
+    }
+
+    /**
+     * Observe the uplinks of a device
+     *
+     * @param _devId The devId to filter on, or null
+     * @param _window The number of uplinks buffered per subscriber
+     * @return the Observable of the uplinks
+     * @throws Exception in case something goes wrong
+     */
+    public Observable<UplinkMessage> uplinks(String _devId, int _window) throws Exception {
+        return messages(_devId, null, _window).map((DeviceMessage _message) -> (UplinkMessage) _message.getData());
+    }
+
+    public Observable<UplinkMessage> uplinks(String _devId) throws Exception {
+        return uplinks(_devId, MessagePublisher.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Observe the uplinks of a device and field
+     *
+     * @param _devId The devId to filter on, or null
+     * @param _field The field to filter on, or null for full uplinks
+     * @param _window The number of uplinks buffered per subscriber
+     * @return the Observable of the uplinks, holding a RawMessage when a field is provided
+     * @throws Exception in case something goes wrong
+     */
+    public Observable<DeviceMessage> messages(String _devId, String _field, int _window) throws Exception {
+        return toObservable(client.publishMessages(_devId, _field, _window));
+    }
+
+    public Observable<DeviceMessage> messages(String _devId, String _field) throws Exception {
+        return messages(_devId, _field, MessagePublisher.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Observe the activations of a device
+     *
+     * @param _devId The devId to filter on, or null
+     * @param _window The number of activations buffered per subscriber
+     * @return the Observable of the activations
+     * @throws Exception in case something goes wrong
+     */
+    public Observable<DeviceMessage> activations(String _devId, int _window) throws Exception {
+        return toObservable(client.publishActivations(_devId, _window));
+    }
+
+    public Observable<DeviceMessage> activations(String _devId) throws Exception {
+        return activations(_devId, MessagePublisher.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Observe the events of a device
+     *
+     * @param _devId The devId to filter on, or null
+     * @param _event The event to filter on, or null
+     * @param _window The number of events buffered per subscriber
+     * @return the Observable of the events
+     * @throws Exception in case something goes wrong
+     */
+    public Observable<DeviceMessage> devices(String _devId, String _event, int _window) throws Exception {
+        return toObservable(client.publishDeviceEvents(_devId, _event, _window));
+    }
+
+    public Observable<DeviceMessage> devices(String _devId, String _event) throws Exception {
+        return devices(_devId, _event, MessagePublisher.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Bridge a Reactive Streams Publisher to an Observable, forwarding the requests and the unsubscriptions
+     *
+     * @param <T> the type of the items
+     * @param _publisher The Publisher to observe
+     * @return the Observable of the items
+     */
+    public static <T> Observable<T> toObservable(Publisher<T> _publisher) {
+        return Observable.unsafeCreate((Subscriber<? super T> _subscriber) -> _publisher.subscribe(new Bridge<>(_subscriber)));
+    }
+
+    private static final class Bridge<T> implements org.reactivestreams.Subscriber<T> {
+
+        private final Subscriber<? super T> subscriber;
+
+        public Bridge(Subscriber<? super T> _subscriber) {
+            subscriber = _subscriber;
+        }
+
+        @Override
+        public void onSubscribe(Subscription _subscription) {
+            if (subscriber.isUnsubscribed()) {
+                _subscription.cancel();
+                return;
+            }
+            subscriber.add(Subscriptions.create(_subscription::cancel));
+            subscriber.setProducer((long _n) -> {
+                /**
+                 * Rx allows empty requests, Reactive Streams does not
+                 */
+                if (_n > 0) {
+                    _subscription.request(_n);
+                }
+            });
+        }
+
+        @Override
+        public void onNext(T _item) {
+            subscriber.onNext(_item);
+        }
+
+        @Override
+        public void onError(Throwable _error) {
+            subscriber.onError(_error);
+        }
+
+        @Override
+        public void onComplete() {
+            subscriber.onCompleted();
+        }
+
+    }
+
+}
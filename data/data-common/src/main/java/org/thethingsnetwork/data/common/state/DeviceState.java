@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.state;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.IOException;
+import java.util.Map;
+import org.thethingsnetwork.data.common.AbstractClient;
+
+/**
+ * A copy of the state of a device, as kept by a DeviceStateStore
+ */
+public class DeviceState {
+
+    private static final TypeReference<Map<String, Object>> FIELDS = new TypeReference<Map<String, Object>>() {
+    };
+
+    private final String devId;
+    private final long lastSeen;
+    private final long uplinks;
+    private final int counter;
+    private final int port;
+    private final double rssi;
+    private final double snr;
+    private final int gateways;
+    private final byte[] payloadFields;
+    private final long lastActivation;
+    private final int activations;
+    private final String devAddr;
+    private final String devEui;
+
+    DeviceState(String _devId, long _lastSeen, long _uplinks, int _counter, int _port, double _rssi, double _snr, int _gateways, byte[] _payloadFields, long _lastActivation, int _activations, String _devAddr, String _devEui) {
+        devId = _devId;
+        lastSeen = _lastSeen;
+        uplinks = _uplinks;
+        counter = _counter;
+        port = _port;
+        rssi = _rssi;
+        snr = _snr;
+        gateways = _gateways;
+        payloadFields = _payloadFields;
+        lastActivation = _lastActivation;
+        activations = _activations;
+        devAddr = _devAddr;
+        devEui = _devEui;
+    }
+
+    /**
+     * Get the devId, truncated to 52 bytes
+     *
+     * @return the devId
+     */
+    public String getDevId() {
+        return devId;
+    }
+
+    /**
+     * Get the time the last uplink was received
+     *
+     * @return the time in ms since the epoch, or 0 if no uplink was received
+     */
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    /**
+     * Get the number of uplinks received
+     *
+     * @return the number of uplinks
+     */
+    public long getUplinks() {
+        return uplinks;
+    }
+
+    /**
+     * Get the frame counter of the last uplink
+     *
+     * @return the counter
+     */
+    public int getCounter() {
+        return counter;
+    }
+
+    /**
+     * Get the port of the last uplink
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the RSSI of the last uplink, at the gateway receiving it best
+     *
+     * @return the RSSI, in dBm
+     */
+    public double getRssi() {
+        return rssi;
+    }
+
+    /**
+     * Get the SNR of the last uplink, at the gateway receiving it best
+     *
+     * @return the SNR, in dB
+     */
+    public double getSnr() {
+        return snr;
+    }
+
+    /**
+     * Get the number of gateways that received the last uplink
+     *
+     * @return the number of gateways
+     */
+    public int getGateways() {
+        return gateways;
+    }
+
+    /**
+     * Get the payload fields of the last uplink, as json
+     *
+     * @return the json object, or null if there were none or they did not fit in the store
+     */
+    public byte[] getPayloadFieldsJson() {
+        return payloadFields;
+    }
+
+    /**
+     * Get the payload fields of the last uplink
+     *
+     * @return the payload fields, or null if there were none or they did not fit in the store
+     * @throws IOException in case the stored json is malformed
+     */
+    public Map<String, Object> getPayloadFields() throws IOException {
+        if (payloadFields == null) {
+            return null;
+        }
+        return AbstractClient.MAPPER.readValue(payloadFields, FIELDS);
+    }
+
+    /**
+     * Get the time the last activation was received
+     *
+     * @return the time in ms since the epoch, or 0 if no activation was received
+     */
+    public long getLastActivation() {
+        return lastActivation;
+    }
+
+    /**
+     * Get the number of activations received
+     *
+     * @return the number of activations
+     */
+    public int getActivations() {
+        return activations;
+    }
+
+    /**
+     * Get the device address of the last activation
+     *
+     * @return the hex device address, or null
+     */
+    public String getDevAddr() {
+        return devAddr;
+    }
+
+    /**
+     * Get the device EUI of the last activation
+     *
+     * @return the hex device EUI, or null
+     */
+    public String getDevEui() {
+        return devEui;
+    }
+
+}
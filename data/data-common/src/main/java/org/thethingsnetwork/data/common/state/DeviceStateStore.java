@@ -0,0 +1,603 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.state;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import org.thethingsnetwork.data.common.Metadata;
+import org.thethingsnetwork.data.common.collections.DeviceKey;
+import org.thethingsnetwork.data.common.messages.ActivationMessage;
+import org.thethingsnetwork.data.common.messages.LazyUplinkMessage;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+
+/**
+ * The state of every device, in fixed-size records outside of the heap: direct buffers, or a memory-mapped file surviving restarts.
+ * <p>
+ * Records are found by an open-addressing hash of the devId over the records themselves, so lookups are O(1) and reopening a file needs no index rebuild.
+ * A record takes 128 bytes plus the room kept for the payload fields of the last uplink, and the table is kept a quarter empty.
+ * Payload fields that do not fit are not kept, and devIds must fit in 52 bytes of UTF-8.
+ * The signal of lazy uplinks is scanned from their json, without binding their metadata.
+ * <p>
+ * A memory-mapped store is written back by the operating system: call force() or snapshot() for a consistent copy on disk.
+ * Operations are synchronized, and snapshot() blocks the updates while it writes.
+ */
+public class DeviceStateStore implements AutoCloseable {
+
+    public static final int DEFAULT_FIELDS_SIZE = 128;
+
+    private static final int MAGIC = 0x54544E53;
+    private static final int VERSION = 1;
+    private static final int HEADER = 4096;
+    private static final int MAX_SEGMENT = 1 << 30;
+    private static final int MAX_DEV_ID = 52;
+
+    /**
+     * Record layout
+     */
+    private static final int KEY = 0;
+    private static final int LAST_SEEN = 8;
+    private static final int LAST_ACTIVATION = 16;
+    private static final int UPLINKS = 24;
+    private static final int DEV_EUI = 32;
+    private static final int COUNTER = 40;
+    private static final int PORT = 44;
+    private static final int RSSI = 48;
+    private static final int SNR = 52;
+    private static final int GATEWAYS = 56;
+    private static final int DEV_ADDR = 60;
+    private static final int ACTIVATIONS = 64;
+    private static final int FIELDS_LENGTH = 68;
+    private static final int DEV_ID_LENGTH = 72;
+    private static final int DEV_ID = 76;
+    private static final int FIELDS = 128;
+
+    private final int devices;
+    private final int fieldsSize;
+    private final int slots;
+    private final int recordSize;
+    private final int segmentShift;
+    private final ByteBuffer[] segments;
+    private final FileChannel channel;
+    private int size;
+    private boolean closed;
+
+    private DeviceStateStore(int _devices, int _fieldsSize, FileChannel _channel, boolean _create) throws IOException {
+        if (_devices < 1 || _devices > (1 << 29)) {
+            throw new IllegalArgumentException("The number of devices must be between 1 and 2^29");
+        }
+        if (_fieldsSize < 0) {
+            throw new IllegalArgumentException("The room for payload fields can not be negative");
+        }
+        devices = _devices;
+        fieldsSize = _fieldsSize;
+        slots = (int) (_devices * 4L / 3 + 1);
+        recordSize = (FIELDS + _fieldsSize + 7) & ~7;
+        int perSegment = Integer.highestOneBit(MAX_SEGMENT / recordSize);
+        segmentShift = Integer.numberOfTrailingZeros(perSegment);
+        segments = new ByteBuffer[(slots + perSegment - 1) / perSegment];
+        channel = _channel;
+        if (channel != null && _create) {
+            ByteBuffer header = header();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.write(ByteBuffer.wrap(new byte[]{0}), HEADER + (long) slots * recordSize - 1);
+        }
+        for (int i = 0; i < segments.length; i++) {
+            int length = (int) Math.min(perSegment, slots - (long) i * perSegment) * recordSize;
+            if (channel == null) {
+                segments[i] = ByteBuffer.allocateDirect(length);
+            } else {
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER + (long) i * perSegment * recordSize, length);
+            }
+        }
+    }
+
+    /**
+     * Create a store in direct buffers
+     *
+     * @param _devices The maximum number of devices
+     * @param _fieldsSize The room kept for the payload fields of the last uplink, in bytes, or 0 to not keep them
+     * @return the store
+     */
+    public static DeviceStateStore allocate(int _devices, int _fieldsSize) {
+        try {
+            return new DeviceStateStore(_devices, _fieldsSize, null, false);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Open a store mapped to a file, creating the file if needed. An existing file is used as-is, without loading it.
+     *
+     * @param _file The file
+     * @param _devices The maximum number of devices
+     * @param _fieldsSize The room kept for the payload fields of the last uplink, in bytes, or 0 to not keep them
+     * @return the store
+     * @throws IOException in case the file can not be mapped, or was created with another layout
+     */
+    public static DeviceStateStore open(Path _file, int _devices, int _fieldsSize) throws IOException {
+        FileChannel channel = FileChannel.open(_file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean create = channel.size() == 0;
+            if (!create) {
+                int[] layout = readHeader(channel);
+                if (layout[0] != _devices || layout[1] != _fieldsSize) {
+                    throw new IOException("The store was created for " + layout[0] + " devices and " + layout[1] + " bytes of payload fields");
+                }
+            }
+            DeviceStateStore store = new DeviceStateStore(_devices, _fieldsSize, channel, create);
+            store.count();
+            return store;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Load a snapshot, or a copy of a mapped store, into direct buffers
+     *
+     * @param _file The file
+     * @return the store
+     * @throws IOException in case the file can not be read
+     */
+    public static DeviceStateStore load(Path _file) throws IOException {
+        try (FileChannel channel = FileChannel.open(_file, StandardOpenOption.READ)) {
+            int[] layout = readHeader(channel);
+            DeviceStateStore store = new DeviceStateStore(layout[0], layout[1], null, false);
+            long position = HEADER;
+            for (ByteBuffer segment : store.segments) {
+                ByteBuffer target = segment.duplicate();
+                while (target.hasRemaining()) {
+                    if (channel.read(target, position + target.position()) < 0) {
+                        throw new IOException("The snapshot is truncated");
+                    }
+                }
+                position += segment.capacity();
+            }
+            store.count();
+            return store;
+        }
+    }
+
+    /**
+     * Record an uplink of a device
+     *
+     * @param _devId The devId
+     * @param _uplink The uplink
+     * @throws IOException in case the payload fields or the metadata can not be read
+     * @throws IllegalArgumentException if the devId is too long
+     * @throws IllegalStateException if the store is full
+     */
+    public void update(String _devId, UplinkMessage _uplink) throws IOException {
+        byte[] fields = fieldsSize > 0 ? _uplink.getPayloadFieldsJson() : null;
+        Signal signal = new Signal();
+        if (_uplink instanceof LazyUplinkMessage) {
+            try (JsonParser parser = ((LazyUplinkMessage) _uplink).getMetadataParser()) {
+                if (parser != null) {
+                    signal.scan(parser);
+                }
+            }
+        } else {
+            Metadata metadata = _uplink.getMetadata();
+            if (metadata != null && metadata.getGateways() != null) {
+                for (Metadata.Gateway gateway : metadata.getGateways()) {
+                    if (gateway != null) {
+                        signal.add(gateway.getRssi(), gateway.getSnr());
+                    }
+                }
+            }
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            int slot = find(_devId, true);
+            ByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            segment.putLong(offset + LAST_SEEN, now);
+            segment.putLong(offset + UPLINKS, segment.getLong(offset + UPLINKS) + 1);
+            segment.putInt(offset + COUNTER, _uplink.getCounter());
+            segment.putInt(offset + PORT, _uplink.getPort());
+            segment.putFloat(offset + RSSI, (float) signal.rssi);
+            segment.putFloat(offset + SNR, (float) signal.snr);
+            segment.putInt(offset + GATEWAYS, signal.gateways);
+            if (fields == null || fields.length > fieldsSize) {
+                segment.putInt(offset + FIELDS_LENGTH, -1);
+            } else {
+                segment.putInt(offset + FIELDS_LENGTH, fields.length);
+                ByteBuffer target = segment.duplicate();
+                target.position(offset + FIELDS);
+                target.put(fields);
+            }
+        }
+    }
+
+    /**
+     * Record an activation of a device
+     *
+     * @param _devId The devId
+     * @param _activation The activation
+     * @throws IllegalArgumentException if the devId is too long
+     * @throws IllegalStateException if the store is full
+     */
+    public synchronized void update(String _devId, ActivationMessage _activation) {
+        int slot = find(_devId, true);
+        ByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        segment.putLong(offset + LAST_ACTIVATION, System.currentTimeMillis());
+        segment.putInt(offset + ACTIVATIONS, segment.getInt(offset + ACTIVATIONS) + 1);
+        segment.putInt(offset + DEV_ADDR, (int) parseHex(_activation.getDevAddr()));
+        segment.putLong(offset + DEV_EUI, parseHex(_activation.getDevEui()));
+    }
+
+    /**
+     * Get the state of a device
+     *
+     * @param _devId The devId
+     * @return a copy of the state, or null if the device is unknown
+     */
+    public synchronized DeviceState get(String _devId) {
+        int slot = find(_devId, false);
+        return slot < 0 ? null : read(slot);
+    }
+
+    /**
+     * Call a consumer with the state of every device, in no particular order. Updates wait meanwhile.
+     *
+     * @param _consumer The consumer
+     */
+    public synchronized void forEach(Consumer<DeviceState> _consumer) {
+        checkOpen();
+        for (int slot = 0; slot < slots; slot++) {
+            if (segment(slot).getLong(offset(slot) + KEY) != 0) {
+                _consumer.accept(read(slot));
+            }
+        }
+    }
+
+    /**
+     * Forget a device
+     *
+     * @param _devId The devId
+     * @return true if the device was known
+     */
+    public synchronized boolean remove(String _devId) {
+        int hole = find(_devId, false);
+        if (hole < 0) {
+            return false;
+        }
+        /**
+         * Shift back the next records of the cluster, so that lookups never stop at a hole
+         */
+        for (int next = next(hole); key(next) != 0; next = next(next)) {
+            int home = home(key(next));
+            if (distance(home, next) >= distance(hole, next)) {
+                copy(next, hole);
+                hole = next;
+            }
+        }
+        clear(hole);
+        size--;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getDevices() {
+        return devices;
+    }
+
+    public int getFieldsSize() {
+        return fieldsSize;
+    }
+
+    /**
+     * Write a mapped store back to its file. Does nothing for a store in direct buffers.
+     */
+    public synchronized void force() {
+        checkOpen();
+        if (channel != null) {
+            for (ByteBuffer segment : segments) {
+                ((MappedByteBuffer) segment).force();
+            }
+        }
+    }
+
+    /**
+     * Write a consistent copy of the store to a file, atomically replacing it. The copy can be loaded or opened.
+     *
+     * @param _file The file
+     * @throws IOException in case the file can not be written
+     */
+    public synchronized void snapshot(Path _file) throws IOException {
+        checkOpen();
+        Path temp = _file.resolveSibling(_file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            ByteBuffer header = header();
+            while (header.hasRemaining()) {
+                position += out.write(header, position);
+            }
+            position = HEADER;
+            for (ByteBuffer segment : segments) {
+                ByteBuffer source = segment.duplicate();
+                source.clear();
+                while (source.hasRemaining()) {
+                    position += out.write(source, position);
+                }
+            }
+            out.force(true);
+        }
+        Files.move(temp, _file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Write a mapped store back and close its file. Buffers are released by the garbage collector.
+     *
+     * @throws IOException in case the file can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        force();
+        closed = true;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private int find(String _devId, boolean _create) {
+        checkOpen();
+        long key = DeviceKey.of(_devId);
+        for (int slot = home(key); ; slot = next(slot)) {
+            long found = key(slot);
+            if (found == key) {
+                return slot;
+            }
+            if (found == 0) {
+                if (!_create) {
+                    return -1;
+                }
+                byte[] devId = _devId.getBytes(StandardCharsets.UTF_8);
+                if (devId.length > MAX_DEV_ID) {
+                    throw new IllegalArgumentException("The devId " + _devId + " is longer than " + MAX_DEV_ID + " bytes");
+                }
+                if (size >= devices) {
+                    throw new IllegalStateException("The store is full");
+                }
+                clear(slot);
+                ByteBuffer segment = segment(slot);
+                int offset = offset(slot);
+                segment.putLong(offset + KEY, key);
+                segment.putInt(offset + DEV_ID_LENGTH, devId.length);
+                for (int i = 0; i < devId.length; i++) {
+                    segment.put(offset + DEV_ID + i, devId[i]);
+                }
+                segment.putInt(offset + FIELDS_LENGTH, -1);
+                size++;
+                return slot;
+            }
+        }
+    }
+
+    private DeviceState read(int _slot) {
+        ByteBuffer segment = segment(_slot);
+        int offset = offset(_slot);
+        byte[] devId = new byte[segment.getInt(offset + DEV_ID_LENGTH)];
+        for (int i = 0; i < devId.length; i++) {
+            devId[i] = segment.get(offset + DEV_ID + i);
+        }
+        int fieldsLength = segment.getInt(offset + FIELDS_LENGTH);
+        byte[] fields = null;
+        if (fieldsLength >= 0) {
+            fields = new byte[fieldsLength];
+            for (int i = 0; i < fieldsLength; i++) {
+                fields[i] = segment.get(offset + FIELDS + i);
+            }
+        }
+        boolean activated = segment.getInt(offset + ACTIVATIONS) > 0;
+        return new DeviceState(
+                new String(devId, StandardCharsets.UTF_8),
+                segment.getLong(offset + LAST_SEEN),
+                segment.getLong(offset + UPLINKS),
+                segment.getInt(offset + COUNTER),
+                segment.getInt(offset + PORT),
+                segment.getFloat(offset + RSSI),
+                segment.getFloat(offset + SNR),
+                segment.getInt(offset + GATEWAYS),
+                fields,
+                segment.getLong(offset + LAST_ACTIVATION),
+                segment.getInt(offset + ACTIVATIONS),
+                activated ? String.format("%08X", segment.getInt(offset + DEV_ADDR)) : null,
+                activated ? String.format("%016X", segment.getLong(offset + DEV_EUI)) : null
+        );
+    }
+
+    private ByteBuffer segment(int _slot) {
+        return segments[_slot >>> segmentShift];
+    }
+
+    private int offset(int _slot) {
+        return (_slot & ((1 << segmentShift) - 1)) * recordSize;
+    }
+
+    private long key(int _slot) {
+        return segment(_slot).getLong(offset(_slot) + KEY);
+    }
+
+    private int home(long _key) {
+        return (int) (((_key >>> 32) * slots) >>> 32);
+    }
+
+    private int next(int _slot) {
+        return _slot + 1 == slots ? 0 : _slot + 1;
+    }
+
+    private int distance(int _from, int _to) {
+        return _to >= _from ? _to - _from : _to + slots - _from;
+    }
+
+    private void copy(int _from, int _to) {
+        ByteBuffer source = segment(_from);
+        ByteBuffer target = segment(_to);
+        int from = offset(_from);
+        int to = offset(_to);
+        for (int i = 0; i < recordSize; i += 8) {
+            target.putLong(to + i, source.getLong(from + i));
+        }
+    }
+
+    private void clear(int _slot) {
+        ByteBuffer segment = segment(_slot);
+        int offset = offset(_slot);
+        for (int i = 0; i < recordSize; i += 8) {
+            segment.putLong(offset + i, 0);
+        }
+    }
+
+    private void count() {
+        size = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if (key(slot) != 0) {
+                size++;
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The store is closed");
+        }
+    }
+
+    private ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putInt(VERSION).putInt(devices).putInt(fieldsSize);
+        header.clear();
+        return header;
+    }
+
+    /**
+     * @return the number of devices and the room for payload fields of a store file
+     */
+    private static int[] readHeader(FileChannel _channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        while (header.hasRemaining()) {
+            if (_channel.read(header, header.position()) < 0) {
+                throw new IOException("Not a device state store");
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a device state store");
+        }
+        if (header.getInt() != VERSION) {
+            throw new IOException("Unsupported device state store version");
+        }
+        return new int[]{header.getInt(), header.getInt()};
+    }
+
+    /**
+     * The signal of the gateway receiving an uplink best
+     */
+    private static final class Signal {
+
+        private double rssi;
+        private double snr;
+        private int gateways;
+
+        private void add(double _rssi, double _snr) {
+            if (gateways++ == 0 || _rssi > rssi) {
+                rssi = _rssi;
+                snr = _snr;
+            }
+        }
+
+        /**
+         * Read the rssi and snr of the gateways from metadata json, skipping everything else
+         */
+        private void scan(JsonParser _parser) throws IOException {
+            if (_parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (_parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = _parser.getCurrentName();
+                JsonToken token = _parser.nextToken();
+                if (!"gateways".equals(name) || token != JsonToken.START_ARRAY) {
+                    _parser.skipChildren();
+                    continue;
+                }
+                while ((token = _parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                    if (token != JsonToken.START_OBJECT) {
+                        _parser.skipChildren();
+                        continue;
+                    }
+                    double gatewayRssi = 0;
+                    double gatewaySnr = 0;
+                    while (_parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = _parser.getCurrentName();
+                        _parser.nextToken();
+                        if ("rssi".equals(field)) {
+                            gatewayRssi = _parser.getValueAsDouble();
+                        } else if ("snr".equals(field)) {
+                            gatewaySnr = _parser.getValueAsDouble();
+                        } else {
+                            _parser.skipChildren();
+                        }
+                    }
+                    add(gatewayRssi, gatewaySnr);
+                }
+                return;
+            }
+        }
+
+    }
+
+    private static long parseHex(String _hex) {
+        if (_hex == null || _hex.isEmpty() || _hex.length() > 16) {
+            return 0;
+        }
+        try {
+            return Long.parseUnsignedLong(_hex, 16);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.thethingsnetwork.data.common.decoding.StreamingDecoder;
+import org.thethingsnetwork.data.common.messages.ActivationMessage;
+import org.thethingsnetwork.data.common.messages.DataMessage;
+import org.thethingsnetwork.data.common.messages.DeviceMessage;
+import org.thethingsnetwork.data.common.messages.DownlinkMessage;
+import org.thethingsnetwork.data.common.messages.RawMessage;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AbstractClientTest {
+
+    private static final byte[] UPLINK = "{\"app_id\":\"my-app\",\"dev_id\":\"my-uno\",\"port\":1,\"counter\":10,\"payload_raw\":\"AQ==\",\"payload_fields\":{\"led\":true}}".getBytes(StandardCharsets.UTF_8);
+
+    public static class Led {
+
+        private boolean led;
+
+    }
+
+    @Test
+    public void onPayloadBindsThroughOnMessage() throws Exception {
+        StubClient client = new StubClient();
+        List<String> received = new ArrayList<>();
+        client.onPayload("my-uno", 1, Led.class, (String _devId, Led _led) -> received.add(_devId + " " + _led.led));
+        client.onPayload("my-uno", 2, Led.class, (String _devId, Led _led) -> received.add("port 2"));
+        client.uplink("my-uno", new StreamingDecoder().decodeUplink(UPLINK));
+
+        assertEquals(1, received.size());
+        assertEquals("my-uno true", received.get(0));
+    }
+
+    @Test
+    public void publishMessagesRunsThroughOnMessage() throws Exception {
+        StubClient client = new StubClient();
+        List<String> received = new ArrayList<>();
+        client.publishMessages(null, null, 4).subscribe(new Subscriber<DeviceMessage>() {
+            @Override
+            public void onSubscribe(Subscription _subscription) {
+                _subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(DeviceMessage _message) {
+                received.add(_message.getDevId());
+            }
+
+            @Override
+            public void onError(Throwable _error) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        client.uplink("my-uno", new StreamingDecoder().decodeUplink(UPLINK));
+
+        assertEquals(1, received.size());
+        assertEquals("my-uno", received.get(0));
+    }
+
+    @Test
+    public void sendAsyncDefaultsToSend() {
+        StubClient client = new StubClient();
+        assertTrue(client.sendAsync("my-uno", new DownlinkMessage(1, "01")).isDone());
+        assertEquals(1, client.sent);
+        CompletableFuture<Void> failed = client.sendAsync(null, new DownlinkMessage(1, "01"));
+        assertTrue(failed.isCompletedExceptionally());
+    }
+
+    /**
+     * A client implementing only the abstract methods
+     */
+    private static class StubClient extends AbstractClient {
+
+        private final List<BiConsumer<String, DataMessage>> uplinks = new ArrayList<>();
+        private int sent;
+
+        private void uplink(String _devId, UplinkMessage _uplink) {
+            for (BiConsumer<String, DataMessage> handler : uplinks) {
+                handler.accept(_devId, _uplink);
+            }
+        }
+
+        @Override
+        public AbstractClient start() {
+            return this;
+        }
+
+        @Override
+        public AbstractClient end() {
+            return this;
+        }
+
+        @Override
+        public AbstractClient end(long _timeout) {
+            return this;
+        }
+
+        @Override
+        public AbstractClient endNow() {
+            return this;
+        }
+
+        @Override
+        public void send(String _devId, DownlinkMessage _payload) {
+            if (_devId == null) {
+                throw new IllegalArgumentException("No device");
+            }
+            sent++;
+        }
+
+        @Override
+        public AbstractClient onConnected(Consumer<Connection> _handler) {
+            return this;
+        }
+
+        @Override
+        public AbstractClient onError(Consumer<Throwable> _handler) {
+            return this;
+        }
+
+        @Override
+        public AbstractClient onMessage(String _devId, String _field, BiConsumer<String, DataMessage> _handler) {
+            uplinks.add(_handler);
+            return this;
+        }
+
+        @Override
+        public AbstractClient onMessage(String _devId, BiConsumer<String, DataMessage> _handler) {
+            return onMessage(_devId, null, _handler);
+        }
+
+        @Override
+        public AbstractClient onMessage(BiConsumer<String, DataMessage> _handler) {
+            return onMessage(null, null, _handler);
+        }
+
+        @Override
+        public AbstractClient onActivation(String _devId, BiConsumer<String, ActivationMessage> _handler) {
+            return this;
+        }
+
+        @Override
+        public AbstractClient onActivation(BiConsumer<String, ActivationMessage> _handler) {
+            return this;
+        }
+
+        @Override
+        public AbstractClient onDevice(String _devId, String _event, TriConsumer<String, String, RawMessage> _handler) {
+            return this;
+        }
+
+        @Override
+        public AbstractClient onDevice(String _devId, TriConsumer<String, String, RawMessage> _handler) {
+            return this;
+        }
+
+        @Override
+        public AbstractClient onDevice(TriConsumer<String, String, RawMessage> _handler) {
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import org.thethingsnetwork.data.common.events.AbstractEventHandler;
+import org.thethingsnetwork.data.common.events.ActivationHandler;
+import org.thethingsnetwork.data.common.events.UplinkHandler;
+import org.thethingsnetwork.data.common.messages.ActivationMessage;
+import org.thethingsnetwork.data.common.messages.DataMessage;
+import org.thethingsnetwork.data.common.messages.RawMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RouterTest {
+
+    @Test
+    public void uplinkHandlersMatchDeviceAndField() {
+        Router router = new Router();
+        UplinkHandler any = uplink(null, null);
+        UplinkHandler device = uplink("dev-1", null);
+        UplinkHandler field = uplink(null, "led");
+        UplinkHandler deviceField = uplink("dev-1", "led");
+        router.add(any).add(device).add(field).add(deviceField);
+
+        assertEquals(Arrays.asList(any, device), router.getUplinkHandlers("dev-1", null));
+        assertEquals(Arrays.asList(any), router.getUplinkHandlers("dev-2", null));
+        assertEquals(Arrays.asList(field, deviceField), router.getUplinkHandlers("dev-1", "led"));
+        assertEquals(Arrays.asList(field), router.getUplinkHandlers("dev-2", "led"));
+        assertTrue(router.getUplinkHandlers("dev-1", "temperature").isEmpty());
+    }
+
+    @Test
+    public void fallbackBucketsKeepTheRegistrationOrder() {
+        Router router = new Router();
+        UplinkHandler first = uplink("dev-1", null);
+        UplinkHandler second = uplink(null, null);
+        UplinkHandler third = uplink("dev-1", null);
+        router.add(first).add(second).add(third);
+
+        assertEquals(Arrays.asList(first, second, third), router.getUplinkHandlers("dev-1", null));
+        assertEquals(Arrays.asList(second), router.getUplinkHandlers("unknown", null));
+    }
+
+    @Test
+    public void handlersAddedAfterALookupAreIndexed() {
+        Router router = new Router();
+        assertTrue(router.getUplinkHandlers("dev-1", null).isEmpty());
+        UplinkHandler device = uplink("dev-1", null);
+        router.add(device);
+        assertEquals(Collections.singletonList(device), router.getUplinkHandlers("dev-1", null));
+        UplinkHandler any = uplink(null, null);
+        router.add(any);
+        assertEquals(Arrays.asList(device, any), router.getUplinkHandlers("dev-1", null));
+        assertEquals(Collections.singletonList(any), router.getUplinkHandlers("dev-2", null));
+    }
+
+    @Test
+    public void activationHandlersMatchDevice() {
+        Router router = new Router();
+        ActivationHandler any = activation(null);
+        ActivationHandler device = activation("dev-1");
+        router.add(device).add(any);
+
+        assertEquals(Arrays.asList(device, any), router.getActivationHandlers("dev-1"));
+        assertEquals(Arrays.asList(any), router.getActivationHandlers("dev-2"));
+    }
+
+    @Test
+    public void eventHandlersMatchDeviceAndEvent() {
+        Router router = new Router();
+        AbstractEventHandler any = event(null, null);
+        AbstractEventHandler scheduled = event(null, "down/scheduled");
+        AbstractEventHandler device = event("dev-1", "down/sent");
+        router.add(any).add(scheduled).add(device);
+
+        assertEquals(Arrays.asList(any, scheduled), router.getEventHandlers("dev-2", "down/scheduled"));
+        assertEquals(Arrays.asList(any, device), router.getEventHandlers("dev-1", "down/sent"));
+        assertEquals(Arrays.asList(any), router.getEventHandlers("dev-2", "down/sent"));
+        assertEquals(Arrays.asList(any), router.getEventHandlers("dev-2", "activations"));
+    }
+
+    @Test
+    public void handlersAreListedByType() {
+        Router router = new Router();
+        UplinkHandler uplink = uplink(null, null);
+        ActivationHandler activation = activation(null);
+        router.add(uplink).add(activation);
+
+        assertEquals(Arrays.asList(uplink, activation), router.getHandlers());
+        assertTrue(router.getConnectHandlers().isEmpty());
+        assertTrue(router.getErrorHandlers().isEmpty());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullHandlersAreRejected() {
+        new Router().add(null);
+    }
+
+    private static UplinkHandler uplink(String _devId, String _field) {
+        return new UplinkHandler() {
+            @Override
+            public void handle(String _id, DataMessage _data) {
+            }
+
+            @Override
+            public String getDevId() {
+                return _devId;
+            }
+
+            @Override
+            public String getField() {
+                return _field;
+            }
+        };
+    }
+
+    private static ActivationHandler activation(String _devId) {
+        return new ActivationHandler() {
+            @Override
+            public void handle(String _id, ActivationMessage _data) {
+            }
+
+            @Override
+            public String getDevId() {
+                return _devId;
+            }
+        };
+    }
+
+    private static AbstractEventHandler event(String _devId, String _event) {
+        return new AbstractEventHandler() {
+            @Override
+            public void handle(String _id, String _name, RawMessage _data) {
+            }
+
+            @Override
+            public String getDevId() {
+                return _devId;
+            }
+
+            @Override
+            public String getEvent() {
+                return _event;
+            }
+        };
+    }
+
+}
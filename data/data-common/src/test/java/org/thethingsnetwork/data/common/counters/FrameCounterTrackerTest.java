@@ -0,0 +1,166 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.counters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameCounterTrackerTest {
+
+    private final List<String> events = new ArrayList<>();
+    private final FrameCounterTracker<String> tracker = new FrameCounterTracker<>(new FrameCounterTracker.Listener<String>() {
+        @Override
+        public void deliver(String _devId, long _counter, String _message) {
+            events.add(_devId + " " + _counter + " " + _message);
+        }
+
+        @Override
+        public void gap(String _devId, long _first, long _last) {
+            events.add(_devId + " gap " + _first + "-" + _last);
+        }
+
+        @Override
+        public void reset(String _devId, long _last, long _counter) {
+            events.add(_devId + " reset " + _last + " " + _counter);
+        }
+
+        @Override
+        public void rollover(String _devId, int _bits) {
+            events.add(_devId + " rollover " + _bits);
+        }
+    }, 8, 0, false);
+
+    @After
+    public void close() {
+        tracker.close();
+    }
+
+    @Test
+    public void deliversInOrder() {
+        offer("dev", 0, 2, 1, 3);
+        assertEvents("dev 0 a", "dev 1 c", "dev 2 b", "dev 3 d");
+        assertEquals(4, tracker.getExpected("dev"));
+    }
+
+    @Test
+    public void dropsRepeats() {
+        offer("dev", 0, 1, 1, 0, 2);
+        assertEvents("dev 0 a", "dev 1 b", "dev 2 e");
+    }
+
+    @Test
+    public void reportsGapsOnceTheWindowIsExceeded() {
+        offer("dev", 0, 2, 3, 4, 5, 6, 7, 8);
+        assertEvents("dev 0 a");
+        offer("dev", 9);
+        assertEvents("dev 0 a", "dev gap 1-1", "dev 2 b", "dev 3 c", "dev 4 d", "dev 5 e", "dev 6 f", "dev 7 g", "dev 8 h", "dev 9 a");
+    }
+
+    @Test
+    public void deliversLateUplinksOnce() {
+        offer("dev", 10, 12, 13, 14, 15, 16, 17, 18, 19);
+        events.clear();
+        offer("dev", 11, 11);
+        assertEvents("dev 11 a");
+    }
+
+    @Test
+    public void reportsLargeJumpsAsGaps() {
+        offer("dev", 0, 100);
+        assertEvents("dev 0 a", "dev gap 1-92");
+        tracker.expire();
+        assertEvents("dev 0 a", "dev gap 1-92", "dev gap 93-99", "dev 100 b");
+    }
+
+    @Test
+    public void extendsCountersPastTheRollover() {
+        offer("dev", 65534, 65535, 0, 1);
+        assertEvents("dev 65534 a", "dev 65535 b", "dev 65536 c", "dev rollover 16", "dev 65537 d");
+    }
+
+    @Test
+    public void dropsLateRepeatsAfterTheRollover() {
+        for (int counter = 65530; counter < 65536; counter++) {
+            tracker.offer("dev", counter, "old");
+        }
+        for (int counter = 0; counter <= 20; counter++) {
+            tracker.offer("dev", counter, "new");
+        }
+        events.clear();
+        offer("dev", 2, 21);
+        assertEvents("dev 65557 b");
+    }
+
+    @Test
+    public void switchesTo32BitCounters() {
+        tracker.setUses32BitFCnt("dev", true);
+        offer("dev", 65535, 65536);
+        assertEvents("dev 65535 a", "dev 65536 b");
+    }
+
+    @Test
+    public void detectsAnEarlyRejoin() {
+        for (int counter = 0; counter < 10; counter++) {
+            tracker.offer("dev", counter, "old");
+        }
+        events.clear();
+        offer("dev", 0, 1);
+        assertEvents("dev reset 9 0", "dev 0 a", "dev 1 b");
+    }
+
+    @Test
+    public void detectsARestartFarBehind() {
+        for (int counter = 100; counter < 110; counter++) {
+            tracker.offer("dev", counter, "old");
+        }
+        events.clear();
+        offer("dev", 0);
+        assertEvents("dev reset 109 0", "dev 0 a");
+    }
+
+    @Test
+    public void resetStartsOver() {
+        offer("dev", 0, 1, 2, 4);
+        tracker.reset("dev");
+        assertEquals(-1, tracker.getExpected("dev"));
+        offer("dev", 0, 1);
+        assertEvents("dev 0 a", "dev 1 b", "dev 2 c", "dev gap 3-3", "dev 4 d", "dev 0 a", "dev 1 b");
+    }
+
+    private void offer(String _devId, int... _counters) {
+        for (int i = 0; i < _counters.length; i++) {
+            tracker.offer(_devId, _counters[i], String.valueOf((char) ('a' + i)));
+        }
+    }
+
+    private void assertEvents(String... _expected) {
+        assertEquals(Arrays.asList(_expected), events);
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.decoding;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class DecoderEquivalenceTest {
+
+    private static final String[] UPLINKS = {
+        "{\"app_id\":\"my-app\",\"dev_id\":\"my-uno\",\"hardware_serial\":\"0004A30B001B7AD2\",\"port\":1,\"counter\":10,\"is_retry\":true,"
+        + "\"payload_raw\":\"AQID\",\"payload_fields\":{\"led\":true,\"temp\":21.5,\"big\":5000000000,\"name\":\"uno\",\"none\":null,\"n\":{\"x\":[1,2]}},"
+        + "\"metadata\":{\"time\":\"2016-09-07T12:50:07.068771281Z\",\"frequency\":868.1,\"modulation\":\"LORA\",\"data_rate\":\"SF7BW125\",\"coding_rate\":\"4/5\","
+        + "\"gateways\":[{\"gtw_id\":\"eui-0000024b08060112\",\"timestamp\":3955426155,\"time\":\"2016-09-07T12:50:07.053048Z\",\"channel\":4,\"rssi\":-109,"
+        + "\"snr\":5.8,\"rf_chain\":1,\"latitude\":52.1,\"longitude\":4.3,\"altitude\":10},{\"gtw_id\":\"eui-b827ebfffe\",\"rssi\":-90,\"snr\":9.5}]},"
+        + "\"unknown\":{\"a\":[1]}}",
+        "{\"app_id\":\"my-app\",\"dev_id\":\"my-uno\",\"port\":2,\"counter\":11,\"payload_raw\":\"\"}",
+        "{\"app_id\":\"other-app\",\"dev_id\":\"dev-2\",\"port\":3,\"counter\":0,\"payload_raw\":\"AA==\",\"payload_fields\":{\"temp\":1},"
+        + "\"metadata\":{\"frequency\":867.5,\"gateways\":[]}}"
+    };
+
+    private static final String ACTIVATION = "{\"app_eui\":\"70B3D57EF0000001\",\"dev_eui\":\"0004A30B001B7AD2\",\"dev_addr\":\"26012345\","
+            + "\"metadata\":{\"frequency\":868.3,\"gateways\":[{\"gtw_id\":\"eui-1\",\"rssi\":-100}]}}";
+
+    @Test
+    public void uplinksSerializeLikeTheMapperDecoder() throws Exception {
+        Decoder[] decoders = {new StreamingDecoder(), new PooledDecoder(), new LazyDecoder()};
+        for (String uplink : UPLINKS) {
+            JsonNode expected = tree(new MapperDecoder().decodeUplink(bytes(uplink)));
+            for (Decoder decoder : decoders) {
+                assertEquals(decoder.getClass().getSimpleName(), expected, tree(decoder.decodeUplink(bytes(uplink))));
+            }
+        }
+    }
+
+    @Test
+    public void uplinksExposeTheSameValues() throws Exception {
+        Decoder[] decoders = {new StreamingDecoder(), new PooledDecoder(), new LazyDecoder()};
+        for (String uplink : UPLINKS) {
+            UplinkMessage expected = new MapperDecoder().decodeUplink(bytes(uplink));
+            for (Decoder decoder : decoders) {
+                UplinkMessage actual = decoder.decodeUplink(bytes(uplink));
+                assertEquals(expected.getPayloadFields(), actual.getPayloadFields());
+                assertEquals(new String(expected.getPayloadRaw()), new String(actual.getPayloadRaw()));
+                assertEquals(expected.getCounter(), actual.getCounter());
+            }
+        }
+    }
+
+    @Test
+    public void pooledUplinksAreFullyResetWhenReused() throws Exception {
+        PooledDecoder decoder = new PooledDecoder(1);
+        UplinkMessage first = decoder.decodeUplink(bytes(UPLINKS[0]));
+        decoder.release(first);
+        for (int i = 1; i < UPLINKS.length; i++) {
+            UplinkMessage reused = decoder.decodeUplink(bytes(UPLINKS[i]));
+            assertSame(first, reused);
+            assertEquals(tree(new MapperDecoder().decodeUplink(bytes(UPLINKS[i]))), tree(reused));
+            decoder.release(reused);
+        }
+        assertEquals(1, decoder.getPoolSize());
+        assertNotSame(first, new PooledDecoder(1).decodeUplink(bytes(UPLINKS[0])));
+    }
+
+    @Test
+    public void activationsSerializeLikeTheMapperDecoder() throws Exception {
+        JsonNode expected = AbstractClient.MAPPER.valueToTree(new MapperDecoder().decodeActivation(bytes(ACTIVATION)));
+        assertEquals(expected, AbstractClient.MAPPER.valueToTree(new StreamingDecoder().decodeActivation(bytes(ACTIVATION))));
+    }
+
+    private static JsonNode tree(UplinkMessage _message) {
+        return AbstractClient.MAPPER.valueToTree(_message);
+    }
+
+    private static byte[] bytes(String _json) {
+        return _json.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
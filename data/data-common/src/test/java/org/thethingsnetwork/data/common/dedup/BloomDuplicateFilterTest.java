@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dedup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomDuplicateFilterTest {
+
+    private static final long WINDOW = 200;
+
+    @Test
+    public void dropsRepeats() {
+        BloomDuplicateFilter filter = new BloomDuplicateFilter(1 << 16, 1000, 60000);
+        assertFalse(filter.isDuplicate("dev", 0));
+        assertTrue(filter.isDuplicate("dev", 0));
+        assertFalse(filter.isDuplicate("dev", 1));
+        assertFalse(filter.isDuplicate("other", 0));
+        assertFalse(filter.isDuplicate("dev", 1L << 32));
+    }
+
+    @Test
+    public void resetStartsANewSession() {
+        BloomDuplicateFilter filter = new BloomDuplicateFilter(1 << 16, 1000, 60000);
+        for (int counter = 0; counter < 10; counter++) {
+            filter.isDuplicate("dev", counter);
+        }
+        filter.reset("dev");
+        for (int counter = 0; counter < 10; counter++) {
+            assertFalse("Counter " + counter + " of the new session", filter.isDuplicate("dev", counter));
+        }
+        for (int counter = 0; counter < 10; counter++) {
+            assertTrue(filter.isDuplicate("dev", counter));
+        }
+        filter.reset("dev");
+        assertFalse(filter.isDuplicate("dev", 0));
+        assertFalse(filter.isDuplicate("other", 0));
+        assertTrue("Only the reset device starts over", filter.isDuplicate("other", 0));
+    }
+
+    @Test
+    public void remembersThePreviousWindow() throws InterruptedException {
+        BloomDuplicateFilter filter = new BloomDuplicateFilter(1 << 16, 1000, WINDOW);
+        assertFalse(filter.isDuplicate("dev", 0));
+        Thread.sleep(WINDOW + 50);
+        assertTrue(filter.isDuplicate("dev", 0));
+    }
+
+    @Test
+    public void forgetsAfterTwoWindows() throws InterruptedException {
+        BloomDuplicateFilter filter = new BloomDuplicateFilter(1 << 16, 1000, WINDOW);
+        assertFalse(filter.isDuplicate("dev", 0));
+        Thread.sleep(2 * WINDOW + 50);
+        assertFalse(filter.isDuplicate("dev", 0));
+    }
+
+    @Test
+    public void resetHoldsAcrossTheNextWindow() throws InterruptedException {
+        BloomDuplicateFilter filter = new BloomDuplicateFilter(1 << 16, 1000, WINDOW);
+        for (int counter = 0; counter < 10; counter++) {
+            filter.isDuplicate("dev", counter);
+        }
+        Thread.sleep(WINDOW + 50);
+        filter.reset("dev");
+        for (int counter = 0; counter < 5; counter++) {
+            assertFalse("The previous window only holds the old session", filter.isDuplicate("dev", counter));
+        }
+        Thread.sleep(WINDOW + 50);
+        for (int counter = 0; counter < 5; counter++) {
+            assertTrue("Repeats of the new session are still dropped", filter.isDuplicate("dev", counter));
+        }
+        for (int counter = 5; counter < 10; counter++) {
+            assertFalse(filter.isDuplicate("dev", counter));
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dedup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecentCountersFilterTest {
+
+    @Test
+    public void dropsRepeats() {
+        RecentCountersFilter filter = new RecentCountersFilter(10);
+        assertFalse(filter.isDuplicate("dev", 5));
+        assertTrue(filter.isDuplicate("dev", 5));
+        assertFalse(filter.isDuplicate("other", 5));
+        assertFalse(filter.isDuplicate("dev", 6));
+    }
+
+    @Test
+    public void counterZeroIsNotTakenForAnEmptySlot() {
+        RecentCountersFilter filter = new RecentCountersFilter(10);
+        assertFalse(filter.isDuplicate("dev", 0));
+        assertTrue(filter.isDuplicate("dev", 0));
+        assertFalse(filter.isDuplicate("other", 0));
+    }
+
+    @Test
+    public void forgetsCountersOnceTheRingWraps() {
+        RecentCountersFilter filter = new RecentCountersFilter(10, 4);
+        for (int counter = 0; counter < 4; counter++) {
+            assertFalse(filter.isDuplicate("dev", counter));
+        }
+        for (int counter = 0; counter < 4; counter++) {
+            assertTrue(filter.isDuplicate("dev", counter));
+        }
+        assertFalse(filter.isDuplicate("dev", 4));
+        assertFalse("The oldest counter was overwritten", filter.isDuplicate("dev", 0));
+        assertTrue(filter.isDuplicate("dev", 3));
+        assertTrue(filter.isDuplicate("dev", 4));
+    }
+
+    @Test
+    public void resetStartsOver() {
+        RecentCountersFilter filter = new RecentCountersFilter(10);
+        for (int counter = 0; counter < 3; counter++) {
+            filter.isDuplicate("dev", counter);
+        }
+        filter.reset("dev");
+        for (int counter = 0; counter < 3; counter++) {
+            assertFalse(filter.isDuplicate("dev", counter));
+        }
+        assertTrue(filter.isDuplicate("dev", 2));
+    }
+
+    @Test
+    public void forgetsTheLeastRecentlySeenDevices() {
+        RecentCountersFilter filter = new RecentCountersFilter(2);
+        filter.isDuplicate("a", 1);
+        filter.isDuplicate("b", 1);
+        filter.isDuplicate("a", 2);
+        filter.isDuplicate("c", 1);
+        assertEquals(2, filter.getDevices());
+        assertTrue(filter.isDuplicate("a", 1));
+        assertFalse(filter.isDuplicate("b", 1));
+    }
+
+    @Test
+    public void resetKeepsTheOtherDevices() {
+        RecentCountersFilter filter = new RecentCountersFilter(5000, 4);
+        for (int i = 0; i < 3000; i++) {
+            assertFalse(filter.isDuplicate("dev-" + i, i));
+        }
+        for (int i = 0; i < 3000; i += 2) {
+            filter.reset("dev-" + i);
+        }
+        assertEquals(1500, filter.getDevices());
+        for (int i = 0; i < 3000; i++) {
+            assertEquals("dev-" + i, i % 2 == 1, filter.isDuplicate("dev-" + i, i));
+        }
+    }
+
+    @Test
+    public void staysWithinMaxDevices() {
+        RecentCountersFilter filter = new RecentCountersFilter(100);
+        for (int i = 0; i < 10000; i++) {
+            filter.isDuplicate("hot", i);
+            filter.isDuplicate("dev-" + i, 1);
+        }
+        assertEquals(100, filter.getDevices());
+        assertTrue("Devices seen again are kept", filter.isDuplicate("hot", 9999));
+    }
+
+}
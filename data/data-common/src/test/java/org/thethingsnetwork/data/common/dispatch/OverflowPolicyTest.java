@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OverflowPolicyTest {
+
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> dropped = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void dropOldestEvictsTheOldestQueuedTask() throws InterruptedException {
+        BoundedDispatcher dispatcher = new BoundedDispatcher(1, 2, OverflowPolicy.DROP_OLDEST);
+        CountDownLatch release = block(dispatcher);
+        dispatch(dispatcher, "a");
+        dispatch(dispatcher, "b");
+        dispatch(dispatcher, "c");
+        release.countDown();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("b", "c"), ran);
+        assertEquals(Arrays.asList("a"), dropped);
+        assertEquals(1, dispatcher.getDropped());
+    }
+
+    @Test
+    public void dropNewestRefusesTheNewTask() throws InterruptedException {
+        BoundedDispatcher dispatcher = new BoundedDispatcher(1, 2, OverflowPolicy.DROP_NEWEST);
+        CountDownLatch release = block(dispatcher);
+        dispatch(dispatcher, "a");
+        dispatch(dispatcher, "b");
+        dispatch(dispatcher, "c");
+        release.countDown();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("a", "b"), ran);
+        assertEquals(Arrays.asList("c"), dropped);
+        assertEquals(1, dispatcher.getDropped());
+    }
+
+    @Test
+    public void dropNewestRunsTheDropCallbackOrThrows() throws InterruptedException {
+        BoundedDispatcher dispatcher = new BoundedDispatcher(1, 1, OverflowPolicy.DROP_NEWEST);
+        CountDownLatch release = block(dispatcher);
+        dispatch(dispatcher, "a");
+        dispatch(dispatcher, "b");
+        try {
+            dispatcher.dispatch(null, () -> ran.add("c"));
+            fail("A full queue must refuse tasks without drop callback");
+        } catch (RejectedExecutionException ex) {
+            /**
+             * Expected
+             */
+        }
+        release.countDown();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("a"), ran);
+        assertEquals(Arrays.asList("b"), dropped);
+        assertEquals(2, dispatcher.getDropped());
+    }
+
+    @Test
+    public void blockWaitsForRoom() throws InterruptedException {
+        BoundedDispatcher dispatcher = new BoundedDispatcher(1, 1, OverflowPolicy.BLOCK);
+        CountDownLatch release = block(dispatcher);
+        dispatch(dispatcher, "a");
+        Thread producer = new Thread(() -> dispatch(dispatcher, "b"));
+        producer.start();
+        producer.join(200);
+        assertTrue("The producer must wait while the queue is full", producer.isAlive());
+        release.countDown();
+        producer.join(5000);
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("a", "b"), ran);
+        assertTrue(dropped.isEmpty());
+        assertEquals(0, dispatcher.getDropped());
+    }
+
+    @Test
+    public void stripedDispatcherAppliesThePolicyPerStripe() throws InterruptedException {
+        StripedDispatcher dispatcher = new StripedDispatcher(1, 1, OverflowPolicy.DROP_NEWEST);
+        CountDownLatch release = block(dispatcher);
+        dispatch(dispatcher, "a");
+        dispatch(dispatcher, "b");
+        release.countDown();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("a"), ran);
+        assertEquals(Arrays.asList("b"), dropped);
+        assertEquals(1, dispatcher.getDropped());
+    }
+
+    @Test
+    public void refusingExecutorsRunTheDropCallback() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        ExecutorDispatcher dispatcher = new ExecutorDispatcher(executor);
+        dispatch(dispatcher, "a");
+
+        assertTrue(ran.isEmpty());
+        assertEquals(Arrays.asList("a"), dropped);
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    private void dispatch(Dispatcher _dispatcher, String _name) {
+        _dispatcher.dispatch("dev", () -> ran.add(_name), () -> dropped.add(_name));
+    }
+
+    /**
+     * Occupy the only worker until the returned latch is released
+     */
+    private CountDownLatch block(Dispatcher _dispatcher) throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        _dispatcher.dispatch("dev", () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StripedDispatcherTest {
+
+    @Test
+    public void tasksOfADeviceRunInDispatchOrder() throws InterruptedException {
+        StripedDispatcher dispatcher = new StripedDispatcher(4);
+        Map<String, List<Integer>> runs = new ConcurrentHashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            String devId = "dev-" + (i % 16);
+            int sequence = i;
+            dispatcher.dispatch(devId, () -> runs.computeIfAbsent(devId, (String k) -> new ArrayList<>()).add(sequence));
+        }
+        assertTrue(dispatcher.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(16, runs.size());
+        for (List<Integer> sequences : runs.values()) {
+            assertEquals(625, sequences.size());
+            for (int i = 1; i < sequences.size(); i++) {
+                assertTrue(sequences.get(i - 1) < sequences.get(i));
+            }
+        }
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    public void tasksWithoutDeviceAreSpreadOverTheStripes() throws InterruptedException {
+        StripedDispatcher dispatcher = new StripedDispatcher(4);
+        Map<String, Integer> threads = new ConcurrentHashMap<>();
+        for (int i = 0; i < 400; i++) {
+            dispatcher.dispatch(null, () -> threads.merge(Thread.currentThread().getName(), 1, Integer::sum));
+        }
+        assertTrue(dispatcher.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(4, threads.size());
+        for (int count : threads.values()) {
+            assertEquals(100, count);
+        }
+    }
+
+}
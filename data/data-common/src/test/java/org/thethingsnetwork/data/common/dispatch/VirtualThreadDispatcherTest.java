@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.dispatch;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualThreadDispatcherTest {
+
+    @Test
+    public void supportFollowsTheRuntimeVersion() {
+        assertEquals(VirtualThreadDispatcher.getFeatureVersion() >= 21, VirtualThreadDispatcher.isSupported());
+    }
+
+    @Test
+    public void legacyVersionsAreParsed() {
+        String version = System.getProperty("java.specification.version");
+        try {
+            System.setProperty("java.specification.version", "1.8");
+            assertEquals(8, VirtualThreadDispatcher.getFeatureVersion());
+            System.setProperty("java.specification.version", "20");
+            assertEquals(20, VirtualThreadDispatcher.getFeatureVersion());
+        } finally {
+            System.setProperty("java.specification.version", version);
+        }
+    }
+
+    @Test
+    public void tasksRunOnEveryRuntime() throws InterruptedException {
+        VirtualThreadDispatcher dispatcher = new VirtualThreadDispatcher();
+        CountDownLatch ran = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            dispatcher.dispatch("dev", ran::countDown);
+        }
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+}
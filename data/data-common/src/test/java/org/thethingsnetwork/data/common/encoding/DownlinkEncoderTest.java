@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.encoding;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.messages.DownlinkMessage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class DownlinkEncoderTest {
+
+    @Test
+    public void encodesLikeTheMapper() throws Exception {
+        DownlinkEncoder encoder = new DownlinkEncoder("my-app");
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("led", true);
+        fields.put("level", 3);
+        ByteBuffer direct = ByteBuffer.allocateDirect(3);
+        direct.put(new byte[]{1, 2, 3}).flip();
+        DownlinkMessage[] messages = {
+            new DownlinkMessage(1, new byte[]{1, 2, 3}),
+            new DownlinkMessage(2, "AQID"),
+            new DownlinkMessage(3, ByteBuffer.wrap(new byte[]{1, 2, 3})),
+            new DownlinkMessage(4, direct),
+            new DownlinkMessage(5, (Object) fields)
+        };
+        for (DownlinkMessage message : messages) {
+            byte[] expected = AbstractClient.MAPPER.writeValueAsBytes(message);
+            assertArrayEquals(expected, encoder.encode(message));
+            assertArrayEquals("The reused buffer must not leak into the next message", expected, encoder.encode(message));
+        }
+    }
+
+    @Test
+    public void encodedMessagesAreNotShared() throws Exception {
+        DownlinkEncoder encoder = new DownlinkEncoder("my-app");
+        byte[] first = encoder.encode(new DownlinkMessage(1, new byte[]{1}));
+        byte[] copy = first.clone();
+        byte[] second = encoder.encode(new DownlinkMessage(2, new byte[]{2, 2, 2, 2}));
+        assertNotSame(first, second);
+        assertArrayEquals(copy, first);
+    }
+
+    @Test
+    public void cachesTopicsUpToTheLimit() {
+        DownlinkEncoder encoder = new DownlinkEncoder("my-app", 64);
+        String hot = encoder.topic("hot");
+        assertEquals("my-app/devices/hot/down", hot);
+        for (int i = 0; i < 10000; i++) {
+            assertEquals("my-app/devices/dev-" + i + "/down", encoder.topic("dev-" + i));
+            assertSame(hot, encoder.topic("hot"));
+        }
+        assertEquals(64, encoder.getCachedTopics());
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.thethingsnetwork.data.common.Lazy;
+import org.thethingsnetwork.data.common.messages.DataMessage;
+import org.thethingsnetwork.data.common.messages.DeviceMessage;
+import org.thethingsnetwork.data.common.messages.RawMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchUplinkHandlerTest {
+
+    private final List<List<DeviceMessage>> batches = new ArrayList<>();
+
+    @Test
+    public void fullBatchesAreDeliveredInOrder() {
+        BatchUplinkHandler handler = handler(3);
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 7; i++) {
+            handler.add("dev-" + i, uplink(i), done::incrementAndGet);
+        }
+
+        assertEquals(2, batches.size());
+        assertEquals("dev-0", batches.get(0).get(0).getDevId());
+        assertEquals("dev-5", batches.get(1).get(2).getDevId());
+        assertEquals(6, done.get());
+
+        handler.flush();
+        assertEquals(3, batches.size());
+        assertEquals(1, batches.get(2).size());
+        assertEquals(7, done.get());
+    }
+
+    @Test
+    public void droppedBatchesReleaseTheirUplinks() {
+        BatchUplinkHandler handler = handler(2);
+        handler.start((Runnable _task, Runnable _dropped) -> _dropped.run(), (Throwable _error) -> {
+        });
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            handler.add("dev-" + i, uplink(i), done::incrementAndGet);
+        }
+
+        assertEquals(0, batches.size());
+        assertEquals(4, done.get());
+    }
+
+    @Test
+    public void batchesAreDeliveredOneAtATime() throws InterruptedException {
+        List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        BatchUplinkHandler handler = new TestHandler(2, 0) {
+            @Override
+            public void handleBatch(List<DeviceMessage> _batch) {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                for (DeviceMessage message : _batch) {
+                    delivered.add(Integer.parseInt(message.getDevId()));
+                }
+                running.decrementAndGet();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch done = new CountDownLatch(40);
+        handler.start((Runnable _task, Runnable _dropped) -> executor.execute(_task), (Throwable _error) -> {
+        });
+        for (int i = 0; i < 40; i++) {
+            handler.add(Integer.toString(i), uplink(i), done::countDown);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(0, overlaps.get());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i, (int) delivered.get(i));
+        }
+    }
+
+    @Test
+    public void aTimerFiredDuringAFlushLeavesTheNextBatch() throws InterruptedException {
+        TestHandler handler = new TestHandler(2, 50);
+        handler.add("dev-0", uplink(0), null);
+        /**
+         * The timer of the first batch fires while the second uplink fills it, and waits for the lock
+         */
+        handler.slow = true;
+        handler.add("dev-1", uplink(1), null);
+        handler.delay = 10000;
+        handler.add("dev-2", uplink(2), null);
+        Thread.sleep(200);
+
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        handler.flush();
+        assertEquals(2, batches.size());
+        assertEquals("dev-2", batches.get(1).get(0).getDevId());
+    }
+
+    private BatchUplinkHandler handler(int _maxSize) {
+        return new TestHandler(_maxSize, 0);
+    }
+
+    private static Lazy<DataMessage> uplink(int _value) {
+        return new Lazy<>(() -> RawMessage.wrap(Integer.toString(_value).getBytes()));
+    }
+
+    private class TestHandler extends BatchUplinkHandler {
+
+        private final int maxSize;
+        private volatile long delay;
+        private volatile boolean slow;
+
+        private TestHandler(int _maxSize, long _delay) {
+            maxSize = _maxSize;
+            delay = _delay;
+        }
+
+        @Override
+        public void handleBatch(List<DeviceMessage> _batch) {
+            batches.add(_batch);
+        }
+
+        /**
+         * Called while the batch is locked, once slow it holds the lock long enough for the timer to fire
+         */
+        @Override
+        public int getMaxSize() {
+            if (slow) {
+                slow = false;
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return maxSize;
+        }
+
+        @Override
+        public long getMaxDelay() {
+            return delay;
+        }
+
+        @Override
+        public String getDevId() {
+            return null;
+        }
+
+        @Override
+        public String getField() {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.flow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.thethingsnetwork.data.common.Lazy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessagePublisherTest {
+
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger done = new AtomicInteger();
+
+    @Test
+    public void fullWindowBlocksTheProducerUntilDemand() throws InterruptedException {
+        MessagePublisher<String> publisher = new MessagePublisher<>(2);
+        Recorder subscriber = new Recorder(0);
+        publisher.subscribe(subscriber);
+        Thread producer = produce(publisher, 3);
+        producer.join(200);
+        assertTrue("The producer must wait while the window is full", producer.isAlive());
+        assertEquals(2, publisher.getBuffered());
+
+        subscriber.subscription.request(1);
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(Arrays.asList("m0"), received);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(Arrays.asList("m0", "m1", "m2"), received);
+        assertEquals(3, done.get());
+    }
+
+    @Test
+    public void drainsRunOnTheExecutor() throws InterruptedException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        MessagePublisher<String> publisher = new MessagePublisher<>(2);
+        publisher.start(executor, (Throwable _error) -> {
+        });
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        publisher.subscribe(new Recorder(Long.MAX_VALUE) {
+            @Override
+            public void onNext(String _message) {
+                threads.add(Thread.currentThread().getName());
+                super.onNext(_message);
+            }
+        });
+        Thread producer = produce(publisher, 100);
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        publisher.complete();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(100, received.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("m" + i, received.get(i));
+        }
+        assertFalse(threads.contains(producer.getName()));
+        assertEquals(100, done.get());
+    }
+
+    @Test
+    public void refusedDrainsRunOnTheCaller() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        MessagePublisher<String> publisher = new MessagePublisher<>(2);
+        publisher.start(executor, (Throwable _error) -> {
+        });
+        publisher.subscribe(new Recorder(Long.MAX_VALUE));
+
+        Thread producer = produce(publisher, 10);
+        producer.join(5000);
+        assertFalse("A refused drain must not stall the producer", producer.isAlive());
+        assertEquals(10, received.size());
+        assertEquals(10, done.get());
+    }
+
+    @Test
+    public void cancelAndMissingSubscribersReleaseTheMessages() throws InterruptedException {
+        MessagePublisher<String> publisher = new MessagePublisher<>(4);
+        publisher.offer(new Lazy<>(() -> "ignored"), done::incrementAndGet);
+        assertEquals(1, done.get());
+
+        Recorder subscriber = new Recorder(0);
+        publisher.subscribe(subscriber);
+        produce(publisher, 3).join(5000);
+        assertEquals(1, done.get());
+        subscriber.subscription.cancel();
+        assertEquals(4, done.get());
+        assertEquals(0, publisher.getBuffered());
+        assertTrue(received.isEmpty());
+    }
+
+    private Thread produce(MessagePublisher<String> _publisher, int _count) {
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < _count; i++) {
+                String message = "m" + i;
+                _publisher.offer(new Lazy<>(() -> message), done::incrementAndGet);
+            }
+        });
+        producer.start();
+        return producer;
+    }
+
+    private class Recorder implements Subscriber<String> {
+
+        private final long initial;
+        private volatile Subscription subscription;
+
+        public Recorder(long _initial) {
+            initial = _initial;
+        }
+
+        @Override
+        public void onSubscribe(Subscription _subscription) {
+            subscription = _subscription;
+            if (initial > 0) {
+                _subscription.request(initial);
+            }
+        }
+
+        @Override
+        public void onNext(String _message) {
+            received.add(_message);
+        }
+
+        @Override
+        public void onError(Throwable _error) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UplinkJournalTest {
+
+    private static final long NOW = 1500000000000L;
+    private static final long HOUR = 3600 * 1000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() {
+        directory = folder.getRoot().toPath().resolve("journal");
+    }
+
+    @Test
+    public void replaysTheAppendedDeliveries() throws Exception {
+        try (UplinkJournal journal = open(0)) {
+            assertEquals(0, journal.append("my-app/devices/a/up", NOW, payload(0)));
+            assertEquals(1, journal.append("my-app/devices/b/up", NOW + 1, payload(1)));
+            journal.commit();
+            assertEquals(2, journal.getCommitted());
+        }
+        List<String> entries = new ArrayList<>();
+        long next = UplinkJournal.replay(directory, 0, (long _sequence, String _topic, long _timestamp, byte[] _payload) -> {
+            entries.add(_sequence + " " + _topic + " " + (_timestamp - NOW) + " " + new String(_payload, StandardCharsets.UTF_8));
+        });
+        assertEquals(2, next);
+        assertEquals(2, entries.size());
+        assertEquals("0 my-app/devices/a/up 0 uplink-0", entries.get(0));
+        assertEquals("1 my-app/devices/b/up 1 uplink-1", entries.get(1));
+    }
+
+    @Test
+    public void reopeningContinuesTheSequence() throws Exception {
+        try (UplinkJournal journal = open(0)) {
+            append(journal, 0, 3);
+        }
+        try (UplinkJournal journal = open(0)) {
+            assertEquals(3, journal.getSequence());
+            append(journal, 3, 2);
+        }
+        assertReplay(0, 5);
+    }
+
+    @Test
+    public void reopensAfterAnEmptySession() throws Exception {
+        try (UplinkJournal journal = open(0)) {
+            append(journal, 0, 3);
+        }
+        for (int i = 0; i < 2; i++) {
+            try (UplinkJournal journal = open(0)) {
+                assertEquals(3, journal.getSequence());
+            }
+        }
+        try (UplinkJournal journal = open(0)) {
+            append(journal, 3, 1);
+        }
+        assertReplay(0, 4);
+        assertEquals(2, segments());
+    }
+
+    @Test
+    public void reopensAnEmptyJournal() throws Exception {
+        try (UplinkJournal journal = open(0)) {
+            assertEquals(0, journal.getSequence());
+        }
+        try (UplinkJournal journal = open(0)) {
+            assertEquals(0, journal.getSequence());
+            append(journal, 0, 1);
+        }
+        assertReplay(0, 1);
+    }
+
+    @Test
+    public void dropsATornTail() throws Exception {
+        Path last;
+        try (UplinkJournal journal = open(0)) {
+            append(journal, 0, 3);
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            last = files.sorted().reduce((Path _a, Path _b) -> _b).get();
+        }
+        long size = Files.size(last);
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            ByteBuffer partial = ByteBuffer.allocate(12);
+            partial.putInt(200).putInt(0).putInt(42).flip();
+            channel.write(partial, size);
+        }
+        try (UplinkJournal journal = open(0)) {
+            assertEquals(3, journal.getSequence());
+            assertEquals(size, Files.size(last));
+            append(journal, 3, 1);
+        }
+        assertReplay(0, 4);
+    }
+
+    @Test
+    public void dropsACorruptedDelivery() throws Exception {
+        try (UplinkJournal journal = open(0)) {
+            append(journal, 0, 3);
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.sorted().findFirst().get();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), channel.size() - 1);
+        }
+        try (UplinkJournal journal = open(0)) {
+            assertEquals(2, journal.getSequence());
+        }
+        assertReplay(0, 2);
+    }
+
+    @Test
+    public void deletesTheSegmentsBeyondTheSizeLimit() throws Exception {
+        try (UplinkJournal journal = new UplinkJournal(directory, 4096, 0, 3 * 4096, 0)) {
+            /**
+             * 1000 bytes per delivery, 4 per segment
+             */
+            for (int i = 0; i < 40; i++) {
+                journal.append("t", NOW, new byte[981]);
+            }
+            assertEquals(3, segments());
+            assertEquals(28, journal.getFirstSequence());
+            long first = UplinkJournal.replay(directory, 0, (long _sequence, String _topic, long _timestamp, byte[] _payload) -> {
+                assertTrue(_sequence >= 28);
+            });
+            assertEquals(40, first);
+        }
+    }
+
+    @Test
+    public void deletesTheSegmentsPastTheRetention() throws Exception {
+        try (UplinkJournal journal = new UplinkJournal(directory, 4096, HOUR, 0, 0)) {
+            for (int i = 0; i < 8; i++) {
+                journal.append("t", NOW, new byte[981]);
+            }
+            assertEquals(0, journal.getFirstSequence());
+            for (int i = 0; i < 4; i++) {
+                journal.append("t", NOW + 2 * HOUR, new byte[981]);
+            }
+            assertEquals(1, segments());
+            journal.append("t", NOW + 2 * HOUR, new byte[981]);
+            assertEquals(8, journal.getFirstSequence());
+        }
+    }
+
+    @Test
+    public void reportsTheBackgroundFailuresToTheErrorHandler() throws Exception {
+        try (UplinkJournal journal = new UplinkJournal(directory, 4096, 1, 0, 100)) {
+            BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+            journal.setErrorHandler(errors::add);
+            blockRetention(journal);
+            Throwable error = errors.poll(5, TimeUnit.SECONDS);
+            assertTrue("The retention can not delete a directory", error instanceof DirectoryNotEmptyException);
+            journal.commit();
+        }
+    }
+
+    @Test
+    public void throwsTheBackgroundFailuresFromTheNextCommit() throws Exception {
+        try (UplinkJournal journal = new UplinkJournal(directory, 4096, 1, 0, 100)) {
+            blockRetention(journal);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (true) {
+                try {
+                    journal.commit();
+                } catch (IOException ex) {
+                    assertTrue(ex.getCause() instanceof DirectoryNotEmptyException);
+                    break;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    fail("The background failure must be thrown by commit()");
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    /**
+     * Roll over once, then replace the full segment with a directory the retention can not delete
+     */
+    private void blockRetention(UplinkJournal _journal) throws IOException {
+        for (int i = 0; i < 5; i++) {
+            _journal.append("t", NOW, new byte[981]);
+        }
+        Path segment = directory.resolve(String.format("%020d", 0) + ".journal");
+        Files.delete(segment);
+        Files.createDirectory(segment);
+        Files.createFile(segment.resolve("blocker"));
+    }
+
+    private UplinkJournal open(long _maxBytes) throws IOException {
+        return new UplinkJournal(directory, 4096, 0, _maxBytes, 0);
+    }
+
+    private static void append(UplinkJournal _journal, int _from, int _count) throws IOException {
+        for (int i = _from; i < _from + _count; i++) {
+            assertEquals(i, _journal.append("my-app/devices/dev/up", NOW + i, payload(i)));
+        }
+    }
+
+    private void assertReplay(long _from, long _next) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        long next = UplinkJournal.replay(directory, _from, (long _sequence, String _topic, long _timestamp, byte[] _payload) -> {
+            assertEquals(NOW + _sequence, _timestamp);
+            assertArrayEquals(payload((int) _sequence), _payload);
+            sequences.add(_sequence);
+        });
+        assertEquals(_next, next);
+        assertEquals(_next - _from, sequences.size());
+        for (int i = 0; i < sequences.size(); i++) {
+            assertEquals(_from + i, (long) sequences.get(i));
+        }
+    }
+
+    private long segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] payload(int _sequence) {
+        return ("uplink-" + _sequence).getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.messages;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class ByteRawMessageTest {
+
+    public static class Reading {
+
+        private double temp;
+
+    }
+
+    @Test
+    public void parsesLikeTheJdk() {
+        String[] numbers = {"0", "-12", "+7", "2147483647", "-2147483648", "21.5", "-0.001", "1e3", "1.25E-2", "123456789012345678"};
+        for (String number : numbers) {
+            RawMessage message = RawMessage.wrap(number.getBytes(StandardCharsets.UTF_8));
+            assertEquals(number, Double.parseDouble(number), message.asDouble(), 0);
+            if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0 && number.length() < 12) {
+                assertEquals(number, Integer.parseInt(number), message.asInt());
+            }
+        }
+        assertTrue(RawMessage.wrap("TRUE".getBytes(StandardCharsets.UTF_8)).asBoolean());
+        assertEquals("é", RawMessage.wrap("é".getBytes(StandardCharsets.UTF_8)).asString());
+    }
+
+    @Test
+    public void bindsANewInstanceOnEveryCall() throws Exception {
+        RawMessage message = RawMessage.wrap("{\"temp\":21.5}".getBytes(StandardCharsets.UTF_8));
+        Reading first = message.as(Reading.class);
+        first.temp = 0;
+        Reading second = message.as(Reading.class);
+        assertNotSame(first, second);
+        assertEquals(21.5, second.temp, 0);
+    }
+
+}
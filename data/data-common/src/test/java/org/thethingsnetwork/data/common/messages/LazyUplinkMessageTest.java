@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.messages;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.decoding.LazyDecoder;
+import org.thethingsnetwork.data.common.decoding.MapperDecoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class LazyUplinkMessageTest {
+
+    private static final byte[] UPLINK = ("{\"app_id\":\"my-app\",\"dev_id\":\"my-uno\",\"hardware_serial\":\"0004A30B001B7AD2\",\"port\":1,\"counter\":10,"
+            + "\"is_retry\":true,\"payload_raw\":\"AQID\",\"payload_fields\":{\"led\":true,\"temp\":21.5,\"n\":{\"x\":[1,2]}},"
+            + "\"metadata\":{\"time\":\"2016-09-07T12:50:07.068771281Z\",\"frequency\":868.1,\"modulation\":\"LORA\",\"data_rate\":\"SF7BW125\","
+            + "\"coding_rate\":\"4/5\",\"gateways\":[{\"gtw_id\":\"eui-0000024b08060112\",\"timestamp\":3955426155,\"channel\":4,\"rssi\":-109,\"snr\":5.8}]},"
+            + "\"unknown\":{\"a\":[1]}}").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] NO_FIELDS = "{\"app_id\":\"my-app\",\"dev_id\":\"my-uno\",\"port\":2,\"counter\":0,\"payload_raw\":\"\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void serializesLikeTheMapperDecoderOutput() throws Exception {
+        assertSameJson(UPLINK);
+        assertSameJson(NO_FIELDS);
+    }
+
+    @Test
+    public void serializesOnlyThePublicFields() throws Exception {
+        JsonNode tree = AbstractClient.MAPPER.valueToTree(new LazyDecoder().decodeUplink(UPLINK));
+        for (String internal : new String[]{"json", "fields", "payload_fields_offset", "payload_fields_length", "loader", "loaded", "value", "error"}) {
+            assertFalse(internal, tree.has(internal));
+        }
+        assertFalse(tree.get("metadata").has("loader"));
+        assertEquals(true, tree.get("payload_fields").get("led").asBoolean());
+    }
+
+    @Test
+    public void serializedFormReadsBackToTheSameMessage() throws Exception {
+        byte[] json = AbstractClient.MAPPER.writeValueAsBytes(new LazyDecoder().decodeUplink(UPLINK));
+        UplinkMessage lazy = new LazyDecoder().decodeUplink(json);
+        UplinkMessage mapper = new MapperDecoder().decodeUplink(UPLINK);
+        assertEquals(mapper.getDevId(), lazy.getDevId());
+        assertEquals(mapper.getCounter(), lazy.getCounter());
+        assertEquals(mapper.getPayloadFields(), lazy.getPayloadFields());
+        assertEquals(mapper.getMetadata().getGateways().get(0).getRssi(), lazy.getMetadata().getGateways().get(0).getRssi(), 0);
+    }
+
+    private static void assertSameJson(byte[] _json) throws Exception {
+        JsonNode expected = AbstractClient.MAPPER.valueToTree(new MapperDecoder().decodeUplink(_json));
+        JsonNode actual = AbstractClient.MAPPER.valueToTree(new LazyDecoder().decodeUplink(_json));
+        assertEquals(expected, actual);
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.messages;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.thethingsnetwork.data.common.AbstractClient;
+
+import static org.junit.Assert.assertEquals;
+
+public class PayloadFieldsTest {
+
+    private static final String JSON = "{\"led\":true,\"off\":false,\"temp\":21.5,\"n\":-3,\"big\":5000000000,\"name\":\"uno\",\"none\":null,\"nested\":{\"x\":[1,2.5,\"a\"]}}";
+
+    @Test
+    public void serializesAsTheNameToValueObject() throws Exception {
+        PayloadFields fields = AbstractClient.MAPPER.readerFor(PayloadFields.class).readValue(JSON);
+        assertEquals(JSON, AbstractClient.MAPPER.writeValueAsString(fields));
+        assertEquals(AbstractClient.MAPPER.writeValueAsString(fields.toMap()), AbstractClient.MAPPER.writeValueAsString(fields));
+    }
+
+    @Test
+    public void roundTripsThroughTheMapShape() throws Exception {
+        PayloadFields fields = AbstractClient.MAPPER.readerFor(PayloadFields.class).readValue(JSON);
+        Map<String, Object> map = AbstractClient.MAPPER.readValue(AbstractClient.MAPPER.writeValueAsBytes(fields), new TypeReference<Map<String, Object>>() {
+        });
+        assertEquals(fields.toMap(), map);
+    }
+
+    @Test
+    public void serializesFieldsBeyondTheNameTable() throws Exception {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < FieldNames.MAX_NAMES + 10; i++) {
+            map.put("f" + i, i);
+        }
+        PayloadFields fields = PayloadFields.of(FieldNames.forApplication("payload-fields-test-overflow"), map);
+        assertEquals(AbstractClient.MAPPER.writeValueAsString(map), AbstractClient.MAPPER.writeValueAsString(fields));
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.messages;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.thethingsnetwork.data.common.decoding.Decoder;
+import org.thethingsnetwork.data.common.decoding.LazyDecoder;
+import org.thethingsnetwork.data.common.decoding.MapperDecoder;
+import org.thethingsnetwork.data.common.decoding.StreamingDecoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class UplinkMessageTest {
+
+    private static final byte[] UPLINK = ("{\"app_id\":\"my-app\",\"dev_id\":\"my-uno\",\"port\":1,\"counter\":10,\"payload_raw\":\"AQID\","
+            + "\"payload_fields\":{\"led\":true,\"temp\":21.5,\"big_count\":5000000000,\"name\":\"uno\",\"samples\":[1,2,3],\"unknown\":{\"a\":1}}}").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] NO_FIELDS = "{\"app_id\":\"my-app\",\"dev_id\":\"my-uno\",\"port\":1,\"counter\":10,\"payload_raw\":\"AQID\"}".getBytes(StandardCharsets.UTF_8);
+
+    public static class Reading {
+
+        private boolean led;
+        private double temp;
+        private long bigCount;
+        private String name;
+        private List<Integer> samples;
+
+    }
+
+    @Test
+    public void bindsPayloadFieldsWithEveryDecoder() throws Exception {
+        for (Decoder decoder : new Decoder[]{new MapperDecoder(), new StreamingDecoder(), new LazyDecoder()}) {
+            UplinkMessage uplink = decoder.decodeUplink(UPLINK);
+            Reading reading = uplink.getPayloadFields(Reading.class);
+            String name = decoder.getClass().getSimpleName();
+            assertEquals(name, true, reading.led);
+            assertEquals(name, 21.5, reading.temp, 0);
+            assertEquals(name, 5000000000L, reading.bigCount);
+            assertEquals(name, "uno", reading.name);
+            assertEquals(name, Arrays.asList(1, 2, 3), reading.samples);
+            assertSame(name, reading, uplink.getPayloadFields(Reading.class));
+        }
+    }
+
+    @Test
+    public void bindsNothingWithoutPayloadFields() throws Exception {
+        for (Decoder decoder : new Decoder[]{new MapperDecoder(), new StreamingDecoder(), new LazyDecoder()}) {
+            assertNull(decoder.decodeUplink(NO_FIELDS).getPayloadFields(Reading.class));
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.metrics;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClientMetricsTest {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final ClientMetrics metrics = new ClientMetrics(registry, () -> 0);
+
+    @Test
+    public void handlerCallsWaitFromTheReception() throws InterruptedException {
+        long received = System.nanoTime();
+        Thread.sleep(20);
+        long start = metrics.started(received);
+        Thread.sleep(20);
+        metrics.handled(start);
+
+        Histogram wait = registry.histogram("dispatch.wait");
+        Histogram handler = registry.histogram("handler");
+        assertEquals(1, wait.getCount());
+        assertEquals(1, handler.getCount());
+        assertTrue(wait.getMax() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(handler.getMax() >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void timedCallsRecordBothHistograms() {
+        int[] runs = new int[1];
+        Runnable task = metrics.timed(() -> runs[0]++);
+        task.run();
+        assertEquals(1, runs[0]);
+        assertEquals(1, registry.histogram("dispatch.wait").getCount());
+        assertEquals(1, registry.histogram("handler").getCount());
+    }
+
+    @Test
+    public void failingCallsAreStillTimed() {
+        Runnable task = metrics.timed(() -> {
+            throw new IllegalStateException();
+        });
+        try {
+            task.run();
+        } catch (IllegalStateException ex) {
+            /**
+             * Expected
+             */
+        }
+        assertEquals(1, registry.histogram("handler").getCount());
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.data.common.state;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.thethingsnetwork.data.common.decoding.Decoder;
+import org.thethingsnetwork.data.common.decoding.LazyDecoder;
+import org.thethingsnetwork.data.common.decoding.MapperDecoder;
+import org.thethingsnetwork.data.common.decoding.StreamingDecoder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeviceStateStoreTest {
+
+    private static final byte[] UPLINK = ("{\"app_id\":\"my-app\",\"dev_id\":\"my-uno\",\"port\":2,\"counter\":10,\"payload_raw\":\"AQID\","
+            + "\"payload_fields\":{\"led\":true},\"metadata\":{\"time\":\"2016-09-07T12:50:07.068771281Z\",\"gateways\":["
+            + "{\"gtw_id\":\"a\",\"rssi\":-109,\"snr\":5.8,\"extra\":{\"rssi\":0}},null,{\"gtw_id\":\"b\",\"snr\":9.5,\"rssi\":-90},"
+            + "{\"gtw_id\":\"c\",\"rssi\":-120,\"snr\":-2}],\"frequency\":868.1}}").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] ACTIVATION = "{\"app_eui\":\"70B3D57EF0000001\",\"dev_eui\":\"0004A30B001B7AD2\",\"dev_addr\":\"26012345\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] FIELDS = "{\"led\":true}".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsTheBestGatewayWithEveryDecoder() throws Exception {
+        for (Decoder decoder : new Decoder[]{new MapperDecoder(), new StreamingDecoder(), new LazyDecoder()}) {
+            DeviceStateStore store = DeviceStateStore.allocate(16, DeviceStateStore.DEFAULT_FIELDS_SIZE);
+            store.update("my-uno", decoder.decodeUplink(UPLINK));
+            DeviceState state = store.get("my-uno");
+            assertEquals(-90, state.getRssi(), 0);
+            assertEquals(9.5, state.getSnr(), 0.0001);
+            assertEquals(3, state.getGateways());
+            assertEquals(10, state.getCounter());
+            assertEquals(2, state.getPort());
+            assertEquals(1, state.getUplinks());
+            assertArrayEquals(FIELDS, state.getPayloadFieldsJson());
+        }
+    }
+
+    @Test
+    public void keepsActivations() throws Exception {
+        DeviceStateStore store = DeviceStateStore.allocate(16, 0);
+        store.update("my-uno", new MapperDecoder().decodeActivation(ACTIVATION));
+        DeviceState state = store.get("my-uno");
+        assertEquals(1, state.getActivations());
+        assertEquals("26012345", state.getDevAddr());
+        assertEquals("0004A30B001B7AD2", state.getDevEui());
+        assertNull(state.getPayloadFieldsJson());
+    }
+
+    @Test
+    public void refusesDevIdsTooLong() throws Exception {
+        DeviceStateStore store = DeviceStateStore.allocate(16, 0);
+        StringBuilder devId = new StringBuilder();
+        for (int i = 0; i < 26; i++) {
+            devId.append('é');
+        }
+        store.update(devId.toString(), new MapperDecoder().decodeUplink(UPLINK));
+        assertEquals(devId.toString(), store.get(devId.toString()).getDevId());
+        try {
+            store.update(devId.append('a').toString(), new MapperDecoder().decodeUplink(UPLINK));
+            fail();
+        } catch (IllegalArgumentException ex) {
+            /**
+             * Expected
+             */
+        }
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void refusesDevicesWhenFull() throws Exception {
+        DeviceStateStore store = DeviceStateStore.allocate(2, 0);
+        store.update("a", new MapperDecoder().decodeUplink(UPLINK));
+        store.update("b", new MapperDecoder().decodeUplink(UPLINK));
+        store.update("a", new MapperDecoder().decodeUplink(UPLINK));
+        try {
+            store.update("c", new MapperDecoder().decodeUplink(UPLINK));
+            fail();
+        } catch (IllegalStateException ex) {
+            /**
+             * Expected
+             */
+        }
+        assertEquals(2, store.get("a").getUplinks());
+    }
+
+    @Test
+    public void removeKeepsTheOtherDevicesReachable() throws Exception {
+        /**
+         * Filled to the limit, so that the records form long clusters
+         */
+        DeviceStateStore store = DeviceStateStore.allocate(300, 0);
+        for (int i = 0; i < 300; i++) {
+            store.update("dev-" + i, new MapperDecoder().decodeUplink(UPLINK));
+        }
+        Set<String> removed = new HashSet<>();
+        for (int i = 0; i < 300; i += 3) {
+            assertTrue(store.remove("dev-" + i));
+            removed.add("dev-" + i);
+        }
+        assertFalse(store.remove("dev-0"));
+        assertEquals(200, store.size());
+        for (int i = 0; i < 300; i++) {
+            String devId = "dev-" + i;
+            if (removed.contains(devId)) {
+                assertNull(store.get(devId));
+            } else {
+                assertEquals(devId, store.get(devId).getDevId());
+            }
+        }
+        Set<String> seen = new HashSet<>();
+        store.forEach((DeviceState _state) -> seen.add(_state.getDevId()));
+        assertEquals(200, seen.size());
+        for (String devId : removed) {
+            store.update(devId, new MapperDecoder().decodeUplink(UPLINK));
+        }
+        assertEquals(300, store.size());
+    }
+
+    @Test
+    public void snapshotsLoadAsTheyWere() throws Exception {
+        DeviceStateStore store = DeviceStateStore.allocate(64, DeviceStateStore.DEFAULT_FIELDS_SIZE);
+        fill(store);
+        Path file = folder.getRoot().toPath().resolve("devices.snapshot");
+        store.snapshot(file);
+        store.update("extra", new MapperDecoder().decodeUplink(UPLINK));
+
+        DeviceStateStore loaded = DeviceStateStore.load(file);
+        assertEquals(64, loaded.getDevices());
+        assertEquals(DeviceStateStore.DEFAULT_FIELDS_SIZE, loaded.getFieldsSize());
+        assertFilled(loaded);
+        assertNull(loaded.get("extra"));
+
+        try (DeviceStateStore opened = DeviceStateStore.open(file, 64, DeviceStateStore.DEFAULT_FIELDS_SIZE)) {
+            assertFilled(opened);
+        }
+    }
+
+    @Test
+    public void openKeepsTheDevicesAcrossRestarts() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("devices.db");
+        try (DeviceStateStore store = DeviceStateStore.open(file, 64, DeviceStateStore.DEFAULT_FIELDS_SIZE)) {
+            fill(store);
+        }
+        try (DeviceStateStore store = DeviceStateStore.open(file, 64, DeviceStateStore.DEFAULT_FIELDS_SIZE)) {
+            assertFilled(store);
+            assertTrue(store.remove("dev-3"));
+        }
+        try (DeviceStateStore store = DeviceStateStore.open(file, 64, DeviceStateStore.DEFAULT_FIELDS_SIZE)) {
+            assertEquals(19, store.size());
+            assertNull(store.get("dev-3"));
+        }
+        try {
+            DeviceStateStore.open(file, 128, DeviceStateStore.DEFAULT_FIELDS_SIZE);
+            fail();
+        } catch (IOException ex) {
+            /**
+             * Expected
+             */
+        }
+    }
+
+    private static void fill(DeviceStateStore _store) throws IOException {
+        for (int i = 0; i < 20; i++) {
+            _store.update("dev-" + i, new LazyDecoder().decodeUplink(UPLINK));
+        }
+        _store.update("dev-0", new MapperDecoder().decodeActivation(ACTIVATION));
+    }
+
+    private static void assertFilled(DeviceStateStore _store) throws IOException {
+        assertEquals(20, _store.size());
+        for (int i = 0; i < 20; i++) {
+            DeviceState state = _store.get("dev-" + i);
+            assertNotNull(state);
+            assertEquals(10, state.getCounter());
+            assertEquals(-90, state.getRssi(), 0);
+            assertArrayEquals(FIELDS, state.getPayloadFieldsJson());
+        }
+        assertEquals("26012345", _store.get("dev-0").getDevAddr());
+    }
+
+}
@@ -23,16 +23,20 @@
  */
 package org.thethingsnetwork.data.mqtt;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
@@ -45,19 +49,36 @@ import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.thethingsnetwork.data.common.AbstractClient;
 import org.thethingsnetwork.data.common.Connection;
+import org.thethingsnetwork.data.common.Lazy;
+import org.thethingsnetwork.data.common.Router;
 import org.thethingsnetwork.data.common.Subscribable;
 import org.thethingsnetwork.data.common.TriConsumer;
+import org.thethingsnetwork.data.common.decoding.Decoder;
+import org.thethingsnetwork.data.common.decoding.LazyDecoder;
+import org.thethingsnetwork.data.common.dedup.DuplicateFilter;
+import org.thethingsnetwork.data.common.dispatch.CachedDispatcher;
+import org.thethingsnetwork.data.common.dispatch.Dispatcher;
+import org.thethingsnetwork.data.common.dispatch.ErrorChannel;
+import org.thethingsnetwork.data.common.encoding.DownlinkEncoder;
 import org.thethingsnetwork.data.common.events.AbstractEventHandler;
 import org.thethingsnetwork.data.common.events.ActivationHandler;
+import org.thethingsnetwork.data.common.events.BatchUplinkHandler;
 import org.thethingsnetwork.data.common.events.ConnectHandler;
 import org.thethingsnetwork.data.common.events.ErrorHandler;
 import org.thethingsnetwork.data.common.events.EventHandler;
 import org.thethingsnetwork.data.common.events.UplinkHandler;
+import org.thethingsnetwork.data.common.flow.ActivationPublisher;
+import org.thethingsnetwork.data.common.journal.UplinkJournal;
+import org.thethingsnetwork.data.common.flow.DevicePublisher;
+import org.thethingsnetwork.data.common.flow.MessagePublisher;
+import org.thethingsnetwork.data.common.flow.UplinkPublisher;
 import org.thethingsnetwork.data.common.messages.ActivationMessage;
 import org.thethingsnetwork.data.common.messages.DataMessage;
 import org.thethingsnetwork.data.common.messages.DownlinkMessage;
 import org.thethingsnetwork.data.common.messages.RawMessage;
 import org.thethingsnetwork.data.common.messages.UplinkMessage;
+import org.thethingsnetwork.data.common.metrics.ClientMetrics;
+import org.thethingsnetwork.data.common.metrics.MetricsRegistry;
 
 /**
  * This is the base class to be used to interact with The Things Network Handler
@@ -70,20 +91,31 @@ public class Client extends AbstractClient {
      * Connection settings
      */
     private final String broker;
-    private final String appId;
     private MqttClientPersistence persistence = new MemoryPersistence();
     private final MqttConnectOptions connOpts;
 
     /**
      * Event settings
      */
-    private final ExecutorService executor = Executors.newCachedThreadPool();
-    private final Map<Class, List<EventHandler>> handlers = new HashMap<>();
+    private Dispatcher dispatcher = new CachedDispatcher();
+    private Decoder decoder = new LazyDecoder();
+    private DuplicateFilter duplicates;
+    private UplinkJournal journal;
+    private final ClientMetrics metrics = new ClientMetrics(new MetricsRegistry(), () -> dispatcher.getQueueDepth());
+    private final RejectedExecutionException dropError = new RejectedExecutionException("Dispatch queue full, a handler call was dropped");
+    private final Runnable reportDropped = this::reportDropped;
+    private final DownlinkEncoder encoder;
+    private final Router router = new Router();
+    private ErrorChannel errors = new ErrorChannel(router.getErrorHandlers());
+    private int maxInflight = 1024;
 
     /**
      * Runtime vars
      */
     private MqttClient mqttClient;
+    private Semaphore inflight;
+    private ExecutorService drains;
+    private final Map<IMqttDeliveryToken, CompletableFuture<Void>> sending = new ConcurrentHashMap<>();
 
     /**
      * Create a new Client from a custom broker
@@ -108,7 +140,7 @@ public class Client extends AbstractClient {
      */
     public Client(String _broker, String _appId, String _appAccessKey, MqttConnectOptions _connOpts) throws URISyntaxException {
         broker = validateBroker(_broker);
-        appId = _appId;
+        encoder = new DownlinkEncoder(_appId);
         if (_connOpts != null) {
             connOpts = _connOpts;
         } else {
@@ -155,125 +187,257 @@ public class Client extends AbstractClient {
         return this;
     }
 
+    /**
+     * Change the dispatcher running the event handlers. Defaults to a cached thread pool.
+     * Use a StripedDispatcher to keep the messages of each device in order, and a bounded dispatcher to limit memory under load.
+     *
+     * @param _dispatcher A custom dispatcher
+     * @return the Client instance
+     */
+    public Client setDispatcher(Dispatcher _dispatcher) {
+        if (mqttClient != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        if (_dispatcher == null) {
+            throw new NullPointerException();
+        }
+        dispatcher = _dispatcher;
+        return this;
+    }
+
+    /**
+     * Change the decoder turning received json into messages. Defaults to a LazyDecoder.
+     *
+     * @param _decoder A custom decoder
+     * @return the Client instance
+     */
+    public Client setDecoder(Decoder _decoder) {
+        if (mqttClient != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        if (_decoder == null) {
+            throw new NullPointerException();
+        }
+        decoder = _decoder;
+        return this;
+    }
+
+    /**
+     * Drop the uplinks already received, identified by device and frame counter. Disabled by default.
+     * Uplinks of field topics carry no counter and are never dropped.
+     *
+     * @param _filter The filter remembering the received uplinks, or null to disable
+     * @return the Client instance
+     */
+    public Client setDuplicateFilter(DuplicateFilter _filter) {
+        if (mqttClient != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        duplicates = _filter;
+        return this;
+    }
+
+    /**
+     * Append every uplink to a journal as received, before dispatching it. Disabled by default.
+     * The failures of its background commits are reported to the error handlers.
+     *
+     * @param _journal The journal, or null to disable
+     * @return the Client instance
+     */
+    public Client setJournal(UplinkJournal _journal) {
+        if (mqttClient != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        if (_journal != null) {
+            _journal.setErrorHandler(this::notifyError);
+        }
+        journal = _journal;
+        return this;
+    }
+
+    /**
+     * Change the number of downlinks sendAsync can have in flight. Defaults to 1024.
+     *
+     * @param _maxInflight The size of the in-flight window
+     * @return the Client instance
+     */
+    public Client setMaxInflight(int _maxInflight) {
+        if (mqttClient != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        if (_maxInflight < 1) {
+            throw new IllegalArgumentException("The in-flight window must be positive");
+        }
+        maxInflight = _maxInflight;
+        return this;
+    }
+
+    /**
+     * Change how errors are coalesced. By default, identical errors are delivered at most once per second, along with their count.
+     *
+     * @param _window The coalescing window, in ms
+     * @param _capacity The number of errors waiting for delivery
+     * @return the Client instance
+     */
+    public Client setErrorWindow(long _window, int _capacity) {
+        if (mqttClient != null) {
+            throw new RuntimeException("Can not be called while client is running");
+        }
+        errors = new ErrorChannel(router.getErrorHandlers(), _window, _capacity);
+        return this;
+    }
+
+    /**
+     * Get the metrics of this client, to export them or register them with JMX
+     *
+     * @return the metrics registry
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics.getRegistry();
+    }
+
     @Override
     public Client start() throws MqttException, Exception {
         if (mqttClient != null) {
             throw new RuntimeException("Already connected");
         }
+        inflight = new Semaphore(maxInflight);
         mqttClient = new MqttClient(broker, MqttClient.generateClientId(), persistence);
         mqttClient.connect(connOpts);
         mqttClient.setCallback(new MqttCallback() {
             @Override
             public void connectionLost(Throwable cause) {
                 mqttClient = null;
-                if (handlers.containsKey(ErrorHandler.class)) {
-                    handlers.get(ErrorHandler.class).stream().forEach((handler) -> {
-                        executor.submit(() -> {
-                            ((ErrorHandler) handler).safelyHandle(cause);
-                        });
-                    });
-                }
+                abortSending(cause);
+                notifyError(cause);
             }
 
             @Override
             public void messageArrived(String topic, MqttMessage message) throws Exception {
+                long received = System.nanoTime();
+                try {
+                    route(topic, message, received);
+                } finally {
+                    metrics.received(received);
+                }
+            }
+
+            private void route(String topic, MqttMessage message, long received) {
                 String[] tokens = topic.split("\\/");
+                metrics.parsed(received);
                 if (tokens.length < 4) {
+                    metrics.ignored();
                     return;
                 }
                 switch (tokens[3]) {
                     case "up":
-                        if (handlers.containsKey(UplinkHandler.class)) {
-                            String field;
-                            if (tokens.length > 4) {
-                                field = concat(4, tokens);
-                            } else {
-                                field = null;
+                        metrics.uplink();
+                        journal(topic, message.getPayload());
+                        String field;
+                        if (tokens.length > 4) {
+                            field = concat(4, tokens);
+                        } else {
+                            field = null;
+                        }
+                        List<UplinkHandler> uplinkHandlers = router.getUplinkHandlers(tokens[2], field);
+                        if (uplinkHandlers.isEmpty()) {
+                            break;
+                        }
+                        if (field == null && isDuplicate(tokens[2], message.getPayload())) {
+                            metrics.duplicate();
+                            break;
+                        }
+                        /**
+                         * Decoded at most once, by the first handler to run, then shared
+                         */
+                        Lazy<DataMessage> uplink;
+                        if (field != null) {
+                            uplink = new Lazy<>(() -> RawMessage.wrap(message.getPayload()));
+                        } else {
+                            uplink = new Lazy<>(() -> {
+                                long decoding = System.nanoTime();
+                                UplinkMessage decoded = decoder.decodeUplink(message.getPayload());
+                                metrics.decoded(decoding);
+                                return decoded;
+                            });
+                        }
+                        AtomicInteger remaining = new AtomicInteger(uplinkHandlers.size());
+                        Runnable done = () -> {
+                            if (remaining.decrementAndGet() == 0) {
+                                release(uplink);
                             }
-                            handlers.get(UplinkHandler.class).stream()
-                                    .forEach((handler) -> {
-                                        executor.submit(() -> {
-                                            try {
-                                                UplinkHandler uh = (UplinkHandler) handler;
-                                                if (uh.matches(tokens[2], field)) {
-                                                    if (uh.isField()) {
-                                                        uh.handle(tokens[2], new RawMessage() {
-                                                            String str = new String(message.getPayload());
-
-                                                            @Override
-                                                            public String asString() {
-                                                                return str;
-                                                            }
-                                                        });
-                                                    } else {
-                                                        uh.handle(tokens[2], MAPPER.readValue(message.getPayload(), UplinkMessage.class));
-                                                    }
-                                                }
-                                            } catch (Exception ex) {
-                                                if (handlers.containsKey(ErrorHandler.class)) {
-                                                    handlers.get(ErrorHandler.class).stream().forEach((handler1) -> {
-                                                        executor.submit(() -> {
-                                                            ((ErrorHandler) handler1).safelyHandle(ex);
-                                                        });
-                                                    });
-                                                }
-                                            }
-                                        });
-                                    });
+                        };
+                        for (UplinkHandler handler : uplinkHandlers) {
+                            if (handler instanceof BatchUplinkHandler) {
+                                ((BatchUplinkHandler) handler).add(tokens[2], uplink, done);
+                                continue;
+                            }
+                            if (handler instanceof UplinkPublisher) {
+                                ((UplinkPublisher) handler).add(tokens[2], uplink, done);
+                                continue;
+                            }
+                            dispatch(tokens[2], () -> {
+                                long start = metrics.started(received);
+                                try {
+                                    handler.handle(tokens[2], uplink.get());
+                                } catch (Exception ex) {
+                                    notifyError(ex);
+                                } finally {
+                                    metrics.handled(start);
+                                    done.run();
+                                }
+                            }, done);
                         }
                         break;
                     case "events":
                         if (tokens.length > 5) {
                             switch (tokens[4]) {
                                 case "activations":
-                                    if (handlers.containsKey(ActivationHandler.class)) {
-                                        handlers.get(ActivationHandler.class).stream().forEach((handler) -> {
-                                            executor.submit(() -> {
-                                                try {
-                                                    ActivationHandler ah = (ActivationHandler) handler;
-                                                    if (ah.matches(tokens[2])) {
-                                                        ah.handle(tokens[2], MAPPER.readValue(message.getPayload(), ActivationMessage.class));
-                                                    }
-                                                } catch (Exception ex) {
-                                                    if (handlers.containsKey(ErrorHandler.class)) {
-                                                        handlers.get(ErrorHandler.class).stream().forEach((handler1) -> {
-                                                            executor.submit(() -> {
-                                                                ((ErrorHandler) handler1).safelyHandle(ex);
-                                                            });
-                                                        });
-                                                    }
-                                                }
-                                            });
+                                    metrics.activation();
+                                    if (duplicates != null) {
+                                        duplicates.reset(tokens[2]);
+                                    }
+                                    Lazy<ActivationMessage> activation = new Lazy<>(() -> {
+                                        long decoding = System.nanoTime();
+                                        ActivationMessage decoded = decoder.decodeActivation(message.getPayload());
+                                        metrics.decoded(decoding);
+                                        return decoded;
+                                    });
+                                    for (ActivationHandler handler : router.getActivationHandlers(tokens[2])) {
+                                        if (handler instanceof ActivationPublisher) {
+                                            ((ActivationPublisher) handler).add(tokens[2], activation);
+                                            continue;
+                                        }
+                                        dispatch(tokens[2], () -> {
+                                            long start = metrics.started(received);
+                                            try {
+                                                handler.handle(tokens[2], activation.get());
+                                            } catch (Exception ex) {
+                                                notifyError(ex);
+                                            } finally {
+                                                metrics.handled(start);
+                                            }
                                         });
                                     }
                                     break;
                                 default:
-                                    if (handlers.containsKey(AbstractEventHandler.class)) {
-                                        handlers.get(AbstractEventHandler.class).stream().forEach((handler) -> {
-                                            executor.submit(() -> {
-                                                try {
-                                                    AbstractEventHandler aeh = (AbstractEventHandler) handler;
-                                                    String event = concat(4, tokens);
-                                                    if (aeh.matches(tokens[2], event)) {
-                                                        aeh.handle(tokens[2], event, new RawMessage() {
-                                                            String str = new String(message.getPayload());
-
-                                                            @Override
-                                                            public String asString() {
-                                                                return str;
-                                                            }
-                                                        });
-                                                    }
-                                                } catch (Exception ex) {
-                                                    if (handlers.containsKey(ErrorHandler.class)) {
-                                                        handlers.get(ErrorHandler.class).stream().forEach((handler1) -> {
-                                                            executor.submit(() -> {
-                                                                ((ErrorHandler) handler1).safelyHandle(ex);
-                                                            });
-                                                        });
-                                                    }
-                                                }
-                                            });
+                                    metrics.event();
+                                    String event = concat(4, tokens);
+                                    RawMessage raw = RawMessage.wrap(message.getPayload());
+                                    for (AbstractEventHandler handler : router.getEventHandlers(tokens[2], event)) {
+                                        if (handler instanceof DevicePublisher) {
+                                            handler.handle(tokens[2], event, raw);
+                                            continue;
+                                        }
+                                        dispatch(tokens[2], () -> {
+                                            long start = metrics.started(received);
+                                            try {
+                                                handler.handle(tokens[2], event, raw);
+                                            } catch (Exception ex) {
+                                                notifyError(ex);
+                                            } finally {
+                                                metrics.handled(start);
+                                            }
                                         });
                                     }
                             }
@@ -284,58 +448,64 @@ public class Client extends AbstractClient {
 
             @Override
             public void deliveryComplete(IMqttDeliveryToken token) {
-                /**
-                 * Not supported for now
-                 */
+                completeSending(token);
             }
         });
 
-        for (List<EventHandler> ehl : handlers.values()) {
-            for (EventHandler eh : ehl) {
-                eh.subscribe(new Subscribable() {
+        /**
+         * Publishers drain on their own threads: a drain queued behind, or dropped by, the dispatcher would keep the receiving thread blocked
+         */
+        if (!router.getPublishers().isEmpty()) {
+            drains = Executors.newCachedThreadPool((Runnable _task) -> {
+                Thread thread = new Thread(_task, "ttn-publisher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        for (MessagePublisher<?> publisher : router.getPublishers()) {
+            publisher.start(drains, this::notifyError);
+        }
+
+        for (BatchUplinkHandler handler : router.getBatchHandlers()) {
+            handler.start((Runnable _task, Runnable _release) -> dispatch(handler.getDevId(), metrics.timed(_task), _release), this::notifyError);
+        }
 
-                    private static final String WILDCARD_WORD = "+";
-                    private static final String WILDCARD_PATH = "#";
+        for (EventHandler eh : router.getHandlers()) {
+            eh.subscribe(new Subscribable() {
 
-                    @Override
-                    public void subscribe(String[] _key) throws Exception {
-                        StringJoiner sj = new StringJoiner("/");
-                        for (String key : _key) {
-                            sj.add(key);
-                        }
-                        mqttClient.subscribe(sj.toString());
-                    }
+                private static final String WILDCARD_WORD = "+";
+                private static final String WILDCARD_PATH = "#";
 
-                    @Override
-                    public String getWordWildcard() {
-                        return WILDCARD_WORD;
+                @Override
+                public void subscribe(String[] _key) throws Exception {
+                    StringJoiner sj = new StringJoiner("/");
+                    for (String key : _key) {
+                        sj.add(key);
                     }
+                    mqttClient.subscribe(sj.toString());
+                }
 
-                    @Override
-                    public String getPathWildcard() {
-                        return WILDCARD_PATH;
-                    }
-                });
-            }
-        }
+                @Override
+                public String getWordWildcard() {
+                    return WILDCARD_WORD;
+                }
 
-        if (handlers.containsKey(ConnectHandler.class)) {
-            handlers.get(ConnectHandler.class).stream().forEach((handler) -> {
-                executor.submit(() -> {
-                    try {
-                        ((ConnectHandler) handler).handle(() -> mqttClient);
-                    } catch (Exception ex) {
-                        if (handlers.containsKey(ErrorHandler.class)) {
-                            handlers.get(ErrorHandler.class).stream().forEach((handler1) -> {
-                                executor.submit(() -> {
-                                    ((ErrorHandler) handler1).safelyHandle(ex);
-                                });
-                            });
-                        }
-                    }
-                });
+                @Override
+                public String getPathWildcard() {
+                    return WILDCARD_PATH;
+                }
             });
         }
+
+        for (ConnectHandler handler : router.getConnectHandlers()) {
+            dispatch(null, metrics.timed(() -> {
+                try {
+                    handler.handle(() -> mqttClient);
+                } catch (Exception ex) {
+                    notifyError(ex);
+                }
+            }));
+        }
         return this;
     }
 
@@ -347,6 +517,75 @@ public class Client extends AbstractClient {
         return sj.toString();
     }
 
+    private void dispatch(String _devId, Runnable _task) {
+        dispatcher.dispatch(_devId, _task, reportDropped);
+    }
+
+    /**
+     * Dispatch a task holding resources, released by the task itself or in its place if the dispatcher drops it
+     */
+    private void dispatch(String _devId, Runnable _task, Runnable _release) {
+        dispatcher.dispatch(_devId, _task, () -> {
+            reportDropped();
+            _release.run();
+        });
+    }
+
+    /**
+     * Overloaded dispatcher: spill to the error channel, where identical errors are coalesced
+     */
+    private void reportDropped() {
+        metrics.dropped();
+        notifyError(dropError);
+    }
+
+    /**
+     * Check an uplink against the duplicate filter, reading only its counter
+     */
+    private boolean isDuplicate(String _devId, byte[] _uplink) {
+        if (duplicates == null) {
+            return false;
+        }
+        try {
+            long counter = decoder.decodeCounter(_uplink);
+            return counter >= 0 && duplicates.isDuplicate(_devId, counter);
+        } catch (IOException ex) {
+            /**
+             * Let the handlers get the decoding error
+             */
+            return false;
+        }
+    }
+
+    /**
+     * Append an uplink to the journal, if any. A failing journal does not stop the delivery.
+     */
+    private void journal(String _topic, byte[] _uplink) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(_topic, System.currentTimeMillis(), _uplink);
+        } catch (IOException | RuntimeException ex) {
+            notifyError(ex);
+        }
+    }
+
+    /**
+     * Give a decoded uplink back to the decoder, once every handler is done with it
+     */
+    private void release(Lazy<DataMessage> _uplink) {
+        DataMessage message = _uplink.peek();
+        if (message instanceof UplinkMessage) {
+            decoder.release((UplinkMessage) message);
+        }
+    }
+
+    private void notifyError(Throwable _error) {
+        metrics.error();
+        errors.report(_error);
+    }
+
     @Override
     public Client end() throws MqttException, InterruptedException {
         if (mqttClient == null) {
@@ -360,7 +599,18 @@ public class Client extends AbstractClient {
         if (mqttClient == null) {
             throw new RuntimeException("Not connected");
         }
-        executor.awaitTermination(_timeout, TimeUnit.MILLISECONDS);
+        for (BatchUplinkHandler handler : router.getBatchHandlers()) {
+            handler.flush();
+        }
+        for (MessagePublisher<?> publisher : router.getPublishers()) {
+            publisher.complete();
+        }
+        dispatcher.awaitTermination(_timeout, TimeUnit.MILLISECONDS);
+        if (drains != null) {
+            drains.shutdown();
+            drains.awaitTermination(_timeout, TimeUnit.MILLISECONDS);
+            drains = null;
+        }
         mqttClient.disconnect(_timeout);
         if (!mqttClient.isConnected()) {
             mqttClient = null;
@@ -373,14 +623,85 @@ public class Client extends AbstractClient {
         if (mqttClient == null) {
             throw new RuntimeException("Not connected");
         }
+        for (MessagePublisher<?> publisher : router.getPublishers()) {
+            publisher.complete();
+        }
+        if (drains != null) {
+            drains.shutdownNow();
+            drains = null;
+        }
         mqttClient.disconnectForcibly(0, 0);
         mqttClient = null;
+        abortSending(new IllegalStateException("Client stopped"));
         return this;
     }
 
     @Override
     public void send(String _devId, DownlinkMessage _payload) throws Exception {
-        mqttClient.publish(appId + "/devices/" + _devId + "/down", MAPPER.writeValueAsBytes(_payload), 0, false);
+        long start = System.nanoTime();
+        try {
+            mqttClient.publish(encoder.topic(_devId), encoder.encode(_payload), 0, false);
+            metrics.sent(start, null);
+        } catch (Exception ex) {
+            metrics.sent(start, ex);
+            throw ex;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(String _devId, DownlinkMessage _payload) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        MqttClient client = mqttClient;
+        if (client == null) {
+            future.completeExceptionally(new IllegalStateException("Not connected"));
+            return future;
+        }
+        try {
+            MqttMessage message = new MqttMessage(encoder.encode(_payload));
+            message.setQos(0);
+            inflight.acquire();
+            long start = System.nanoTime();
+            future.whenComplete((Void _result, Throwable _error) -> {
+                inflight.release();
+                metrics.sent(start, _error);
+            });
+            /**
+             * Publishing on a topic does not wait for the delivery, which is reported to deliveryComplete.
+             * This is why the client keeps the synchronous MqttClient instead of an MqttAsyncClient: the connection, subscriptions and send() stay as they are.
+             */
+            IMqttDeliveryToken token = client.getTopic(encoder.topic(_devId)).publish(message);
+            sending.put(token, future);
+            if (token.isComplete()) {
+                completeSending(token);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(ex);
+        } catch (Exception ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    private void completeSending(IMqttDeliveryToken _token) {
+        CompletableFuture<Void> future = sending.remove(_token);
+        if (future == null) {
+            return;
+        }
+        if (_token.getException() != null) {
+            future.completeExceptionally(_token.getException());
+        } else {
+            future.complete(null);
+        }
+    }
+
+    private void abortSending(Throwable _cause) {
+        for (IMqttDeliveryToken token : sending.keySet()) {
+            CompletableFuture<Void> future = sending.remove(token);
+            if (future != null) {
+                future.completeExceptionally(_cause);
+            }
+        }
     }
 
     @Override
@@ -388,10 +709,7 @@ public class Client extends AbstractClient {
         if (mqttClient != null) {
             throw new RuntimeException("Already connected");
         }
-        if (!handlers.containsKey(ConnectHandler.class)) {
-            handlers.put(ConnectHandler.class, new LinkedList<>());
-        }
-        handlers.get(ConnectHandler.class).add(new ConnectHandler() {
+        router.add(new ConnectHandler() {
             @Override
             public void handle(Connection _client) {
                 _handler.accept(_client);
@@ -405,10 +723,7 @@ public class Client extends AbstractClient {
         if (mqttClient != null) {
             throw new RuntimeException("Already connected");
         }
-        if (!handlers.containsKey(ErrorHandler.class)) {
-            handlers.put(ErrorHandler.class, new LinkedList<>());
-        }
-        handlers.get(ErrorHandler.class).add(new ErrorHandler() {
+        router.add(new ErrorHandler() {
             @Override
             public void handle(Throwable _error) {
                 _handler.accept(_error);
@@ -422,10 +737,7 @@ public class Client extends AbstractClient {
         if (mqttClient != null) {
             throw new RuntimeException("Already connected");
         }
-        if (!handlers.containsKey(UplinkHandler.class)) {
-            handlers.put(UplinkHandler.class, new LinkedList<>());
-        }
-        handlers.get(UplinkHandler.class).add(new UplinkHandler() {
+        router.add(new UplinkHandler() {
             @Override
             public void handle(String _devId, DataMessage _data) {
                 _handler.accept(_devId, _data);
@@ -459,10 +771,7 @@ public class Client extends AbstractClient {
         if (mqttClient != null) {
             throw new RuntimeException("Already connected");
         }
-        if (!handlers.containsKey(ActivationHandler.class)) {
-            handlers.put(ActivationHandler.class, new LinkedList<>());
-        }
-        handlers.get(ActivationHandler.class).add(new ActivationHandler() {
+        router.add(new ActivationHandler() {
             @Override
             public void handle(String _devId, ActivationMessage _data) {
                 _handler.accept(_devId, _data);
@@ -486,10 +795,7 @@ public class Client extends AbstractClient {
         if (mqttClient != null) {
             throw new RuntimeException("Already connected");
         }
-        if (!handlers.containsKey(AbstractEventHandler.class)) {
-            handlers.put(AbstractEventHandler.class, new LinkedList<>());
-        }
-        handlers.get(AbstractEventHandler.class).add(new AbstractEventHandler() {
+        router.add(new AbstractEventHandler() {
             @Override
             public void handle(String _devId, String _event, RawMessage _data) {
                 _handler.accept(_devId, _event, _data);
@@ -518,4 +824,31 @@ public class Client extends AbstractClient {
         return onDevice(null, null, _handler);
     }
 
+    @Override
+    protected Client register(UplinkHandler _handler) {
+        if (mqttClient != null) {
+            throw new RuntimeException("Already connected");
+        }
+        router.add(_handler);
+        return this;
+    }
+
+    @Override
+    protected Client register(ActivationHandler _handler) {
+        if (mqttClient != null) {
+            throw new RuntimeException("Already connected");
+        }
+        router.add(_handler);
+        return this;
+    }
+
+    @Override
+    protected Client register(AbstractEventHandler _handler) {
+        if (mqttClient != null) {
+            throw new RuntimeException("Already connected");
+        }
+        router.add(_handler);
+        return this;
+    }
+
 }
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.loadtest.brokers;
+
+import io.moquette.BrokerConstants;
+import io.moquette.broker.Server;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+import org.apache.qpid.server.SystemLauncher;
+import org.apache.qpid.server.model.ConfiguredObject;
+import org.apache.qpid.server.model.SystemConfig;
+
+/**
+ * Runs a broker of the load tests until its standard input is closed: an in-memory Moquette broker accepting any credentials for MQTT,
+ * or an in-memory Qpid broker speaking AMQP 0-9-1 for AMQP.
+ * The load test starts it in its own JVM, so that the newer Jackson of Qpid never replaces the one of the clients under test.
+ */
+public class BrokerServer {
+
+    public static final String READY = "ready";
+    public static final String USAGE = "Usage: java -jar loadtest-brokers.jar mqtt|amqp <port> <appId> <accessKey>";
+
+    public static void main(String[] _args) throws Exception {
+        if (_args.length != 4 || !("mqtt".equals(_args[0]) || "amqp".equals(_args[0]))) {
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        int port = Integer.parseInt(_args[1]);
+        AutoCloseable broker;
+        if ("amqp".equals(_args[0])) {
+            broker = startQpid(port, _args[2], _args[3]);
+        } else {
+            broker = startMoquette(port);
+        }
+        System.out.println(READY);
+        System.out.flush();
+        try {
+            while (System.in.read() >= 0) {
+                /**
+                 * Nothing is expected on stdin, the load test only closes it
+                 */
+            }
+        } finally {
+            broker.close();
+        }
+        System.exit(0);
+    }
+
+    private static AutoCloseable startMoquette(int _port) throws IOException {
+        Server server = new Server();
+        Properties config = new Properties();
+        config.setProperty(BrokerConstants.HOST_PROPERTY_NAME, "127.0.0.1");
+        config.setProperty(BrokerConstants.PORT_PROPERTY_NAME, Integer.toString(_port));
+        config.setProperty(BrokerConstants.WEB_SOCKET_PORT_PROPERTY_NAME, BrokerConstants.DISABLED_PORT_BIND);
+        config.setProperty(BrokerConstants.PERSISTENT_STORE_PROPERTY_NAME, "");
+        config.setProperty(BrokerConstants.ALLOW_ANONYMOUS_PROPERTY_NAME, "true");
+        config.setProperty(BrokerConstants.NETTY_MAX_BYTES_PROPERTY_NAME, "65536");
+        config.setProperty(BrokerConstants.IMMEDIATE_BUFFER_FLUSH_PROPERTY_NAME, "true");
+        server.startServer(config);
+        return server::stopServer;
+    }
+
+    private static AutoCloseable startQpid(int _port, String _appId, String _accessKey) throws Exception {
+        SystemLauncher launcher = new SystemLauncher();
+        Path work = Files.createTempDirectory("ttn-qpid");
+        Map<String, String> context = new HashMap<>();
+        context.put("qpid.work_dir", work.toString());
+        context.put("loadtest.amqp_port", Integer.toString(_port));
+        context.put("loadtest.app_id", _appId);
+        context.put("loadtest.access_key", _accessKey);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(ConfiguredObject.TYPE, "Memory");
+        attributes.put(ConfiguredObject.CONTEXT, context);
+        attributes.put(SystemConfig.INITIAL_CONFIGURATION_LOCATION, BrokerServer.class.getResource("/qpid.json").toExternalForm());
+        attributes.put(SystemConfig.STARTUP_LOGGED_TO_SYSTEM_OUT, false);
+        launcher.startup(attributes);
+        return () -> {
+            launcher.shutdown();
+            try (Stream<Path> files = Files.walk(work)) {
+                files.sorted(Comparator.reverseOrder()).forEach((Path file) -> file.toFile().delete());
+            }
+        };
+    }
+
+}
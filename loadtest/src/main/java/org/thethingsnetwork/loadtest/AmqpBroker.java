@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.loadtest;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+import org.thethingsnetwork.data.amqp.Client;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.decoding.Decoder;
+import org.thethingsnetwork.data.common.dispatch.Dispatcher;
+
+/**
+ * An in-memory Qpid broker speaking AMQP 0-9-1, running in its own JVM, with the ttn.handler topic exchange of the handler
+ */
+public class AmqpBroker implements Broker {
+
+    private static final String EXCHANGE = "ttn.handler";
+
+    private final String jar;
+    private BrokerProcess process;
+    private int port;
+
+    /**
+     * Create a Qpid broker
+     *
+     * @param _jar The path of the loadtest-brokers jar
+     */
+    public AmqpBroker(String _jar) {
+        jar = _jar;
+    }
+
+    @Override
+    public void start() throws Exception {
+        port = MqttBroker.freePort();
+        process = new BrokerProcess(jar, "amqp", port);
+
+        /**
+         * The handler owns the exchange, the client only binds its queue to it
+         */
+        try (Connection connection = factory().newConnection()) {
+            Channel channel = connection.createChannel();
+            channel.exchangeDeclare(EXCHANGE, "topic");
+        }
+    }
+
+    @Override
+    public UplinkSender sender() throws IOException, TimeoutException {
+        Connection connection = factory().newConnection();
+        Channel channel = connection.createChannel();
+        return new UplinkSender() {
+            @Override
+            public void send(String _devId, byte[] _uplink) throws IOException {
+                channel.basicPublish(EXCHANGE, APP_ID + ".devices." + _devId + ".up", null, _uplink);
+            }
+
+            @Override
+            public void close() throws IOException {
+                connection.close();
+            }
+        };
+    }
+
+    @Override
+    public AbstractClient client(Dispatcher _dispatcher, Decoder _decoder) throws Exception {
+        Client client = new Client("127.0.0.1", APP_ID, ACCESS_KEY, EXCHANGE)
+                .setDispatcher(_dispatcher)
+                .setDecoder(_decoder);
+        client.getConnectionFactory().setPort(port);
+        return client;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (process != null) {
+            process.close();
+        }
+    }
+
+    private ConnectionFactory factory() {
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost("127.0.0.1");
+        factory.setPort(port);
+        factory.setUsername(APP_ID);
+        factory.setPassword(ACCESS_KEY);
+        return factory;
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.loadtest;
+
+import java.io.IOException;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.decoding.Decoder;
+import org.thethingsnetwork.data.common.dispatch.Dispatcher;
+
+/**
+ * A local broker the clients under test connect to
+ */
+public interface Broker extends AutoCloseable {
+
+    public static final String APP_ID = "load-test";
+    public static final String ACCESS_KEY = "ttn-account-v2.load-test";
+
+    /**
+     * Start the broker on a free local port
+     *
+     * @throws Exception in case something goes wrong
+     */
+    public void start() throws Exception;
+
+    /**
+     * Connect a new uplink sender, playing the role of the handler
+     *
+     * @return the sender
+     * @throws Exception in case something goes wrong
+     */
+    public UplinkSender sender() throws Exception;
+
+    /**
+     * Create a client of this broker, not started yet
+     *
+     * @param _dispatcher The dispatcher running the event handlers
+     * @param _decoder The uplink decoder
+     * @return the client
+     * @throws Exception in case something goes wrong
+     */
+    public AbstractClient client(Dispatcher _dispatcher, Decoder _decoder) throws Exception;
+
+    /**
+     * Stop the broker
+     *
+     * @throws IOException in case something goes wrong
+     */
+    @Override
+    public void close() throws IOException;
+
+}
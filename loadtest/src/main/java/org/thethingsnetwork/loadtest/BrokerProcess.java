@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.loadtest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A broker of the loadtest-brokers jar, running in its own JVM until its standard input is closed.
+ * The brokers need a newer Jackson than the SDK, keeping them out of this JVM keeps the clients on the Jackson they ship with.
+ */
+public class BrokerProcess implements AutoCloseable {
+
+    private static final long READY_TIMEOUT = 60;
+
+    private final Process process;
+
+    /**
+     * Start a broker and wait for it to accept connections
+     *
+     * @param _jar The path of the loadtest-brokers jar
+     * @param _type The broker type, mqtt or amqp
+     * @param _port The local port to listen on
+     * @throws IOException in case the broker could not be started
+     */
+    public BrokerProcess(String _jar, String _type, int _port) throws IOException {
+        if (!new File(_jar).isFile()) {
+            throw new IOException("Broker jar not found: " + _jar + ", build it with mvn -pl loadtest-brokers package");
+        }
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        process = new ProcessBuilder(java, "-jar", _jar, _type, Integer.toString(_port), Broker.APP_ID, Broker.ACCESS_KEY)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        CompletableFuture<String> ready = CompletableFuture.supplyAsync(() -> {
+            try {
+                return output.readLine();
+            } catch (IOException ex) {
+                return null;
+            }
+        });
+        String line;
+        try {
+            line = ready.get(READY_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException ex) {
+            process.destroyForcibly();
+            throw new IOException("Broker did not start", ex);
+        }
+        if (!"ready".equals(line)) {
+            process.destroyForcibly();
+            throw new IOException("Broker did not start: " + line);
+        }
+    }
+
+    /**
+     * Stop the broker, closing its standard input
+     *
+     * @throws IOException in case something goes wrong
+     */
+    @Override
+    public void close() throws IOException {
+        process.getOutputStream().close();
+        try {
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException ex) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.loadtest;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.thethingsnetwork.data.common.AbstractClient;
+
+/**
+ * Publishes synthetic uplinks of many devices at a fixed rate, one thread and connection per publisher.
+ * Each uplink carries its intended send time in payload_fields.sent, so that a stalled publisher does not hide the latency it causes.
+ */
+public class Generator {
+
+    private final Broker broker;
+    private final Options options;
+    private final ObjectNode template;
+    private final List<Thread> threads = new ArrayList<>();
+    private final LongAdder sent = new LongAdder();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean running;
+
+    public Generator(Broker _broker, Options _options) throws IOException {
+        broker = _broker;
+        options = _options;
+        try (InputStream is = Generator.class.getResourceAsStream("/uplink.json")) {
+            template = (ObjectNode) AbstractClient.MAPPER.readTree(is);
+        }
+    }
+
+    /**
+     * Connect the publishers and start sending
+     *
+     * @throws Exception in case a publisher can not connect
+     */
+    public void start() throws Exception {
+        running = true;
+        for (int i = 0; i < options.getPublishers(); i++) {
+            UplinkSender sender = broker.sender();
+            int index = i;
+            Thread thread = new Thread(() -> run(index, sender), "ttn-load-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    /**
+     * Stop sending and disconnect the publishers
+     *
+     * @throws InterruptedException if interrupted while waiting for the publishers
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    /**
+     * @return the first error of a publisher, or null
+     */
+    public Throwable getFailure() {
+        return failure.get();
+    }
+
+    private void run(int _index, UplinkSender _sender) {
+        int publishers = options.getPublishers();
+        List<String> devIds = new ArrayList<>();
+        for (int d = _index; d < options.getDevices(); d += publishers) {
+            devIds.add("dev-" + d);
+        }
+        ObjectNode uplink = template.deepCopy();
+        ObjectNode fields = (ObjectNode) uplink.get("payload_fields");
+        long interval = options.getRate() == 0 ? 0 : publishers * 1_000_000_000L / options.getRate();
+        long next = System.nanoTime();
+        try {
+            for (long n = 0; running; n++) {
+                long intended;
+                if (interval > 0) {
+                    intended = next;
+                    next += interval;
+                    long wait = intended - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    intended = System.nanoTime();
+                }
+                String devId = devIds.get((int) (n % devIds.size()));
+                uplink.put("dev_id", devId);
+                uplink.put("counter", (int) (n / devIds.size()) & 0xFFFF);
+                fields.put("sent", intended);
+                _sender.send(devId, AbstractClient.MAPPER.writeValueAsBytes(uplink));
+                sent.increment();
+            }
+        } catch (Exception ex) {
+            failure.compareAndSet(null, ex);
+        } finally {
+            try {
+                _sender.close();
+            } catch (Exception ex) {
+                failure.compareAndSet(null, ex);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.loadtest;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.messages.DataMessage;
+import org.thethingsnetwork.data.common.messages.UplinkMessage;
+import org.thethingsnetwork.data.common.metrics.Histogram;
+
+/**
+ * End-to-end load test of a client: a local broker in its own JVM, synthetic uplinks from many devices, and a report of the sustained
+ * throughput, the latency from the intended send time to the handler, and the heap growth over the measurement
+ */
+public class LoadTest {
+
+    private static final long DRAIN_TIMEOUT = 5000;
+
+    private final Options options;
+    private final PrintStream out;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private volatile Histogram latency = new Histogram();
+    private volatile long since = Long.MIN_VALUE;
+
+    public LoadTest(Options _options, PrintStream _out) {
+        options = _options;
+        out = _out;
+    }
+
+    public static void main(String[] _args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(_args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(Options.USAGE);
+            System.exit(1);
+            return;
+        }
+        try (Broker broker = options.createBroker()) {
+            broker.start();
+            new LoadTest(options, System.out).run(broker);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Run the load test against a started broker and print the report
+     *
+     * @param _broker The broker
+     * @throws Exception in case something goes wrong
+     */
+    public void run(Broker _broker) throws Exception {
+        AbstractClient client = _broker.client(options.createDispatcher(), options.createDecoder());
+        client.onError((Throwable _error) -> {
+            errors.increment();
+        });
+        client.onMessage((String _devId, DataMessage _data) -> {
+            long sent = ((Number) ((UplinkMessage) _data).getPayloadFields().get("sent")).longValue();
+            if (sent >= since) {
+                latency.recordSince(sent);
+            }
+            received.increment();
+        });
+        client.start();
+        Generator generator = new Generator(_broker, options);
+        generator.start();
+        try {
+            out.printf("%s client, %s dispatcher, %s decoder, %d devices, %s%n", options.getClient(), options.getDispatcher(), options.getDecoder(),
+                    options.getDevices(), options.getRate() == 0 ? "unpaced" : options.getRate() + " uplinks/s");
+            progress("warmup", options.getWarmup(), generator);
+
+            /**
+             * Only the uplinks sent during the measurement are sampled, not the backlog of the warmup
+             */
+            latency = new Histogram();
+            since = System.nanoTime();
+            long heapStart = heapAfterGc();
+            long sentStart = generator.getSent();
+            long receivedStart = received.sum();
+            long start = System.nanoTime();
+            long peak = progress("measure", options.getDuration(), generator);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long sentEnd = generator.getSent();
+            long receivedEnd = received.sum();
+            Histogram measured = latency;
+            long heapEnd = heapAfterGc();
+
+            generator.stop();
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+            while (received.sum() < generator.getSent() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            out.println();
+            out.printf("offered     %.1f uplinks/s%n", (sentEnd - sentStart) / elapsed);
+            out.printf("sustained   %.1f uplinks/s over %.1f s%n", (receivedEnd - receivedStart) / elapsed, elapsed);
+            out.printf("latency     p50 %s, p90 %s, p99 %s, p99.9 %s, max %s (%d samples)%n", millis(measured.getPercentile(50)), millis(measured.getPercentile(90)),
+                    millis(measured.getPercentile(99)), millis(measured.getPercentile(99.9)), millis(measured.getMax()), measured.getCount());
+            out.printf("heap        %s after GC at start, %s at end, %+.1f MB, peak %s%n", megabytes(heapStart), megabytes(heapEnd),
+                    (heapEnd - heapStart) / 1048576.0, megabytes(peak));
+            out.printf("lost        %d of %d uplinks sent during the whole run%n", generator.getSent() - received.sum(), generator.getSent());
+            out.printf("errors      %d%n", errors.sum());
+        } finally {
+            generator.stop();
+            client.end();
+        }
+    }
+
+    /**
+     * Print the rates every second
+     *
+     * @return the peak heap usage seen
+     */
+    private long progress(String _phase, int _seconds, Generator _generator) throws Exception {
+        long peak = 0;
+        long sent = _generator.getSent();
+        long rcvd = received.sum();
+        long next = System.nanoTime();
+        for (int i = 1; i <= _seconds; i++) {
+            next += TimeUnit.SECONDS.toNanos(1);
+            TimeUnit.NANOSECONDS.sleep(next - System.nanoTime());
+            if (_generator.getFailure() != null) {
+                throw new Exception("Publisher failed", _generator.getFailure());
+            }
+            long heap = memory.getHeapMemoryUsage().getUsed();
+            peak = Math.max(peak, heap);
+            long nowSent = _generator.getSent();
+            long nowRcvd = received.sum();
+            out.printf("%-8s %3d s  sent %8d/s  received %8d/s  backlog %8d  heap %s%n", _phase, i, nowSent - sent, nowRcvd - rcvd, nowSent - nowRcvd, megabytes(heap));
+            sent = nowSent;
+            rcvd = nowRcvd;
+        }
+        return peak;
+    }
+
+    private long heapAfterGc() {
+        memory.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static String millis(long _nanos) {
+        return String.format("%.3f ms", _nanos / 1e6);
+    }
+
+    private static String megabytes(long _bytes) {
+        return String.format("%.1f MB", _bytes / 1048576.0);
+    }
+
+}
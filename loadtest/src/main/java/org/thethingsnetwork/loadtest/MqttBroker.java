@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.loadtest;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.thethingsnetwork.data.common.AbstractClient;
+import org.thethingsnetwork.data.common.decoding.Decoder;
+import org.thethingsnetwork.data.common.dispatch.Dispatcher;
+import org.thethingsnetwork.data.mqtt.Client;
+
+/**
+ * An in-memory Moquette broker accepting any credentials, running in its own JVM
+ */
+public class MqttBroker implements Broker {
+
+    private final String jar;
+    private BrokerProcess process;
+    private int port;
+
+    /**
+     * Create a Moquette broker
+     *
+     * @param _jar The path of the loadtest-brokers jar
+     */
+    public MqttBroker(String _jar) {
+        jar = _jar;
+    }
+
+    @Override
+    public void start() throws IOException {
+        port = freePort();
+        process = new BrokerProcess(jar, "mqtt", port);
+    }
+
+    @Override
+    public UplinkSender sender() throws MqttException {
+        MqttClient mqttClient = new MqttClient(url(), MqttClient.generateClientId(), new MemoryPersistence());
+        MqttConnectOptions connOpts = new MqttConnectOptions();
+        connOpts.setCleanSession(true);
+        mqttClient.connect(connOpts);
+        return new UplinkSender() {
+            @Override
+            public void send(String _devId, byte[] _uplink) throws MqttException {
+                mqttClient.publish(APP_ID + "/devices/" + _devId + "/up", _uplink, 0, false);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    mqttClient.disconnect();
+                    mqttClient.close();
+                } catch (MqttException ex) {
+                    throw new IOException(ex);
+                }
+            }
+        };
+    }
+
+    @Override
+    public AbstractClient client(Dispatcher _dispatcher, Decoder _decoder) throws Exception {
+        return new Client(url(), APP_ID, ACCESS_KEY)
+                .setDispatcher(_dispatcher)
+                .setDecoder(_decoder);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (process != null) {
+            process.close();
+        }
+    }
+
+    private String url() {
+        return "tcp://127.0.0.1:" + port;
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+}
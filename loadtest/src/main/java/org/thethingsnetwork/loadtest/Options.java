@@ -0,0 +1,211 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Things Network
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.thethingsnetwork.loadtest;
+
+import org.thethingsnetwork.data.common.decoding.Decoder;
+import org.thethingsnetwork.data.common.decoding.LazyDecoder;
+import org.thethingsnetwork.data.common.decoding.MapperDecoder;
+import org.thethingsnetwork.data.common.decoding.PooledDecoder;
+import org.thethingsnetwork.data.common.decoding.StreamingDecoder;
+import org.thethingsnetwork.data.common.dispatch.BoundedDispatcher;
+import org.thethingsnetwork.data.common.dispatch.CachedDispatcher;
+import org.thethingsnetwork.data.common.dispatch.Dispatcher;
+import org.thethingsnetwork.data.common.dispatch.OverflowPolicy;
+import org.thethingsnetwork.data.common.dispatch.StripedDispatcher;
+import org.thethingsnetwork.data.common.dispatch.VirtualThreadDispatcher;
+
+/**
+ * Command line options of a load test
+ */
+public class Options {
+
+    public static final String USAGE = "Usage: java -jar loadtest.jar [options]\n"
+            + "  --client mqtt|amqp                             the client under test (default mqtt)\n"
+            + "  --devices <n>                                  the number of simulated devices (default 1000)\n"
+            + "  --rate <n>                                     the uplinks per second, 0 for as fast as possible (default 5000)\n"
+            + "  --publishers <n>                               the number of publishing connections (default 1)\n"
+            + "  --warmup <s>                                   the warmup, in seconds (default 5)\n"
+            + "  --duration <s>                                 the measurement, in seconds (default 30)\n"
+            + "  --dispatcher cached|striped|bounded|virtual    the dispatcher of the client (default cached)\n"
+            + "  --decoder mapper|streaming|lazy|pooled         the decoder of the client (default lazy)\n"
+            + "  --brokers <jar>                                the loadtest-brokers jar (default loadtest-brokers/target/loadtest-brokers.jar)";
+
+    private String client = "mqtt";
+    private int devices = 1000;
+    private int rate = 5000;
+    private int publishers = 1;
+    private int warmup = 5;
+    private int duration = 30;
+    private String dispatcher = "cached";
+    private String decoder = "lazy";
+    private String brokers = "loadtest-brokers/target/loadtest-brokers.jar";
+
+    private Options() {
+
+    }
+
+    /**
+     * Parse command line arguments
+     *
+     * @param _args The arguments
+     * @return the options
+     * @throws IllegalArgumentException if an argument is unknown or invalid
+     */
+    public static Options parse(String[] _args) {
+        Options options = new Options();
+        for (int i = 0; i < _args.length; i += 2) {
+            if (i + 1 >= _args.length) {
+                throw new IllegalArgumentException("Missing value for " + _args[i]);
+            }
+            String value = _args[i + 1];
+            switch (_args[i]) {
+                case "--client":
+                    options.client = oneOf(value, "mqtt", "amqp");
+                    break;
+                case "--devices":
+                    options.devices = positive(_args[i], value, 1);
+                    break;
+                case "--rate":
+                    options.rate = positive(_args[i], value, 0);
+                    break;
+                case "--publishers":
+                    options.publishers = positive(_args[i], value, 1);
+                    break;
+                case "--warmup":
+                    options.warmup = positive(_args[i], value, 0);
+                    break;
+                case "--duration":
+                    options.duration = positive(_args[i], value, 1);
+                    break;
+                case "--dispatcher":
+                    options.dispatcher = oneOf(value, "cached", "striped", "bounded", "virtual");
+                    break;
+                case "--decoder":
+                    options.decoder = oneOf(value, "mapper", "streaming", "lazy", "pooled");
+                    break;
+                case "--brokers":
+                    options.brokers = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + _args[i]);
+            }
+        }
+        if (options.publishers > options.devices) {
+            throw new IllegalArgumentException("Can not have more publishers than devices");
+        }
+        if ("virtual".equals(options.dispatcher) && !VirtualThreadDispatcher.isSupported()) {
+            throw new IllegalArgumentException("Virtual threads are not supported by this JVM");
+        }
+        return options;
+    }
+
+    private static String oneOf(String _value, String... _allowed) {
+        for (String allowed : _allowed) {
+            if (allowed.equals(_value)) {
+                return _value;
+            }
+        }
+        throw new IllegalArgumentException("Unknown value " + _value);
+    }
+
+    private static int positive(String _option, String _value, int _min) {
+        int value;
+        try {
+            value = Integer.parseInt(_value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid value for " + _option + ": " + _value);
+        }
+        if (value < _min) {
+            throw new IllegalArgumentException(_option + " must be at least " + _min);
+        }
+        return value;
+    }
+
+    public Broker createBroker() {
+        return "amqp".equals(client) ? new AmqpBroker(brokers) : new MqttBroker(brokers);
+    }
+
+    public Dispatcher createDispatcher() {
+        switch (dispatcher) {
+            case "striped":
+                return new StripedDispatcher();
+            case "bounded":
+                return new BoundedDispatcher(10000, OverflowPolicy.BLOCK);
+            case "virtual":
+                return new VirtualThreadDispatcher();
+            default:
+                return new CachedDispatcher();
+        }
+    }
+
+    public Decoder createDecoder() {
+        switch (decoder) {
+            case "streaming":
+                return new StreamingDecoder();
+            case "mapper":
+                return new MapperDecoder();
+            case "pooled":
+                return new PooledDecoder();
+            default:
+                return new LazyDecoder();
+        }
+    }
+
+    public String getClient() {
+        return client;
+    }
+
+    public int getDevices() {
+        return devices;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getPublishers() {
+        return publishers;
+    }
+
+    public int getWarmup() {
+        return warmup;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public String getDispatcher() {
+        return dispatcher;
+    }
+
+    public String getDecoder() {
+        return decoder;
+    }
+
+    public String getBrokers() {
+        return brokers;
+    }
+
+}